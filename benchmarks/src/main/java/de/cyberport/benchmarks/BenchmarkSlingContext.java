@@ -0,0 +1,19 @@
+package de.cyberport.benchmarks;
+
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+
+/**
+ * Sling mock context that can be started and stopped outside of a JUnit extension, from JMH setup methods.
+ */
+final class BenchmarkSlingContext extends SlingContextImpl {
+
+    void start() {
+        setResourceResolverType(ResourceResolverType.RESOURCERESOLVER_MOCK);
+        setUp();
+    }
+
+    void stop() {
+        tearDown();
+    }
+}
@@ -0,0 +1,57 @@
+package de.cyberport.benchmarks;
+
+import de.cyberport.core.dto.Film;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic film catalogs with roughly the value distribution of oscars.json.
+ */
+public final class FilmCatalog {
+
+    public static final String CONTAINER_PATH = "/content/oscars";
+    public static final String CONTAINER_RESOURCE_TYPE = "test/filmEntryContainer";
+    public static final String FILM_RESOURCE_TYPE = "test/filmEntry";
+
+    private static final long SEED = 1929L;
+
+    private static final String[] WORDS = { "The", "Last", "King", "Green", "Book", "Parasite", "Night", "River",
+            "Spider", "Verse", "West", "Side", "Story", "Great", "Escape", "Moon", "Light", "Dove", "Old", "Arizona" };
+
+    private FilmCatalog() {
+    }
+
+    public static List<Film> generate(int size) {
+        final Random random = new Random(SEED);
+        final List<Film> films = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            Film film = new Film();
+            film.setTitle(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i);
+            film.setYear(1927 + random.nextInt(94));
+            film.setAwards(1 + random.nextInt(random.nextInt(11) + 1));
+            film.setNominations(film.getAwards() + random.nextInt(6));
+            film.setBestPicture(random.nextInt(20) == 0);
+            film.setNumberOfReferences(random.nextInt(10000));
+            films.add(film);
+        }
+
+        return films;
+    }
+
+    public static Map<String, Object> toProperties(Film film) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("title", film.getTitle());
+        properties.put("year", film.getYear());
+        properties.put("awards", film.getAwards());
+        properties.put("nominations", film.getNominations());
+        properties.put("isBestPicture", film.isBestPicture());
+        properties.put("numberOfReferences", film.getNumberOfReferences());
+        properties.put("sling:resourceType", FILM_RESOURCE_TYPE);
+        return properties;
+    }
+}
@@ -0,0 +1,60 @@
+package de.cyberport.benchmarks;
+
+import de.cyberport.core.index.FilmIndex;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by a {@link FilmIndex} once the films it was built from are gone, reported as the secondary
+ * result "retainedBytes" next to the build time. Only the sort orders of the single columns are counted; the
+ * sort orders of several keys and the title search index are built on first use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FootprintBenchmark {
+
+    private static final int GC_RUNS = 3;
+
+    @Param({ "100000", "1000000" })
+    public int catalogSize;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        public long retainedBytes;
+    }
+
+    @Benchmark
+    public FilmIndex buildIndex(Footprint footprint) {
+        final long usedBefore = usedHeapAfterGc();
+        final FilmIndex filmIndex = FilmIndex.of(FilmCatalog.CONTAINER_PATH, FilmCatalog.generate(catalogSize));
+        footprint.retainedBytes = usedHeapAfterGc() - usedBefore;
+        return filmIndex;
+    }
+
+    private static long usedHeapAfterGc() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < GC_RUNS; i++) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
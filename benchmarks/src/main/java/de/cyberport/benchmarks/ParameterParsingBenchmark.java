@@ -0,0 +1,74 @@
+package de.cyberport.benchmarks;
+
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.utils.SearchParameterParser;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning the request parameters into a {@link SearchDTO}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterParsingBenchmark {
+
+    @Param({ "", "year=2019&minAwards=4", "minYear=2018&minAwards=3&sortBy=nominations&limit=4",
+            "title=Ford v Ferrari&year=2019&minYear=2000&maxYear=2020&minAwards=1&maxAwards=5&nominations=4"
+                    + "&isBestPicture=false&sortBy=awards&limit=10" })
+    public String queryString;
+
+    private BenchmarkSlingContext context;
+    private MockSlingHttpServletRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchmarkSlingContext();
+        context.start();
+
+        request = context.request();
+        request.setParameterMap(parseQueryString(queryString));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public SearchDTO createSearchDTO() {
+        final SearchDTO searchDTO = new SearchDTO();
+        SearchParameterParser.parse(request, searchDTO);
+        return searchDTO;
+    }
+
+    static Map<String, Object> parseQueryString(String queryString) {
+        final Map<String, Object> parameters = new LinkedHashMap<>();
+        for (String parameter : queryString.split("&")) {
+            final int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+            }
+        }
+        return parameters;
+    }
+}
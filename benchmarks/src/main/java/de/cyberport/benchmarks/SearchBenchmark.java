@@ -0,0 +1,85 @@
+package de.cyberport.benchmarks;
+
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.services.SearchManagerService;
+import de.cyberport.core.services.impl.SearchManagerServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtering and sorting on an already built {@link FilmIndex}, for each supported sort order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+
+    private static final int LIMIT = 20;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int catalogSize;
+
+    @Param({ "title", "year", "awards", "nominations", "awards:desc,year,title" })
+    public String sortBy;
+
+    private SortOrder sortOrder;
+
+    private final SearchManagerService searchManagerService = new SearchManagerServiceImpl();
+
+    private FilmIndex filmIndex;
+    private SearchDTO searchDTO;
+    private BitSet matchingFilms;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filmIndex = FilmIndex.of(FilmCatalog.CONTAINER_PATH, FilmCatalog.generate(catalogSize));
+
+        searchDTO = new SearchDTO();
+        searchDTO.setMinYear(2018);
+        searchDTO.setMinAwards(3);
+        sortOrder = SortOrder.parse(sortBy);
+        searchDTO.setSortOrder(sortOrder);
+
+        matchingFilms = searchManagerService.findMatchingFilms(filmIndex, searchDTO);
+    }
+
+    @Benchmark
+    public BitSet filter() {
+        return searchManagerService.findMatchingFilms(filmIndex, searchDTO);
+    }
+
+    @Benchmark
+    public int[] sortWithLimit() {
+        return searchManagerService.sortFilms(filmIndex, matchingFilms, sortOrder, LIMIT);
+    }
+
+    @Benchmark
+    public int[] sortWithoutLimit() {
+        return searchManagerService.sortFilms(filmIndex, matchingFilms, sortOrder, null);
+    }
+
+    @Benchmark
+    public int[] sortAllFilmsWithLimit() {
+        final BitSet allFilms = new BitSet(filmIndex.size());
+        allFilms.set(0, filmIndex.size());
+        return searchManagerService.sortFilms(filmIndex, allFilms, sortOrder, LIMIT);
+    }
+}
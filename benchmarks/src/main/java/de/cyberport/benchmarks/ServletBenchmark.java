@@ -0,0 +1,106 @@
+package de.cyberport.benchmarks;
+
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.services.impl.FilmIndexServiceImpl;
+import de.cyberport.core.services.impl.SearchManagerServiceImpl;
+import de.cyberport.core.servlets.OscarFilmContainerServlet;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end GET requests against {@link OscarFilmContainerServlet}, wired with its services in the OSGi mock
+ * and reading from a Sling mock resource tree. The 1M catalog is left out here because the mock resource tree
+ * would need several gigabytes of heap; {@link SearchBenchmark} covers that size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ServletBenchmark {
+
+    private static final String FILM_CLASS_PACKAGE_NAME = "de.cyberport.core.dto";
+
+    @Param({ "1000", "100000" })
+    public int catalogSize;
+
+    @Param({ "", "year=2019&minAwards=4", "minYear=2018&minAwards=3&sortBy=nominations&limit=4" })
+    public String queryString;
+
+    private BenchmarkSlingContext context;
+    private FilmIndexServiceImpl filmIndexService;
+    private OscarFilmContainerServlet servlet;
+    private Resource container;
+    private Map<String, Object> parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchmarkSlingContext();
+        context.start();
+        context.addModelsForPackage(FILM_CLASS_PACKAGE_NAME);
+
+        container = context.create().resource(FilmCatalog.CONTAINER_PATH,
+                Collections.singletonMap("sling:resourceType", FilmCatalog.CONTAINER_RESOURCE_TYPE));
+        final List<Film> films = FilmCatalog.generate(catalogSize);
+        for (int i = 0; i < films.size(); i++) {
+            context.create().resource(container, String.valueOf(i), FilmCatalog.toProperties(films.get(i)));
+        }
+
+        context.registerInjectActivateService(new SearchManagerServiceImpl());
+        filmIndexService = context.registerInjectActivateService(new FilmIndexServiceImpl());
+        servlet = context.registerInjectActivateService(new OscarFilmContainerServlet());
+
+        parameters = ParameterParsingBenchmark.parseQueryString(queryString);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    /** Steady state: the film index of the container is already built. */
+    @Benchmark
+    public String doGet() throws IOException {
+        return execute();
+    }
+
+    /** First request after a change: the film index is rebuilt from the resource tree. */
+    @Benchmark
+    public String doGetAfterContentChange() throws IOException {
+        filmIndexService.invalidate(FilmCatalog.CONTAINER_PATH);
+        return execute();
+    }
+
+    private String execute() throws IOException {
+        final MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setResource(container);
+        request.setParameterMap(parameters);
+        final MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        servlet.doGet(request, response);
+
+        return response.getOutputAsString();
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
 
 import javax.inject.Inject;
+import java.util.Objects;
 
 @Model(adaptables = Resource.class)
 public class Film {
@@ -54,6 +55,26 @@ public class Film {
         return numberOfReferences;
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Film)) {
+            return false;
+        }
+
+        final Film film = (Film) other;
+        return year == film.year && awards == film.awards && nominations == film.nominations
+                && isBestPicture == film.isBestPicture && numberOfReferences == film.numberOfReferences
+                && Objects.equals(title, film.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(title, year, awards, nominations, isBestPicture, numberOfReferences);
+    }
+
     @Override
     public String toString() {
         return "Film{" +
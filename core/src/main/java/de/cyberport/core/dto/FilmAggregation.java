@@ -0,0 +1,112 @@
+package de.cyberport.core.dto;
+
+import java.util.Map;
+
+/**
+ * Facet counts over the films matching a search. Histograms map a value, or the first year of a decade,
+ * to the number of films with it, in ascending order and without empty buckets. Facets that were not
+ * requested are null.
+ */
+public class FilmAggregation {
+
+    private final int total;
+
+    private Map<Integer, Integer> years;
+
+    private Map<Integer, Integer> decades;
+
+    private Map<Integer, Integer> awards;
+
+    private Map<Integer, Integer> nominations;
+
+    private Integer bestPictureCount;
+
+    private Long referencesSum;
+
+    private Integer referencesMax;
+
+    public FilmAggregation(int total) {
+        this.total = total;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public Map<Integer, Integer> getYears() {
+        return years;
+    }
+
+    public void setYears(Map<Integer, Integer> years) {
+        this.years = years;
+    }
+
+    public Map<Integer, Integer> getDecades() {
+        return decades;
+    }
+
+    public void setDecades(Map<Integer, Integer> decades) {
+        this.decades = decades;
+    }
+
+    public Map<Integer, Integer> getAwards() {
+        return awards;
+    }
+
+    public void setAwards(Map<Integer, Integer> awards) {
+        this.awards = awards;
+    }
+
+    public Map<Integer, Integer> getNominations() {
+        return nominations;
+    }
+
+    public void setNominations(Map<Integer, Integer> nominations) {
+        this.nominations = nominations;
+    }
+
+    /** Number of best picture winners; the other films of the total did not win. */
+    public Integer getBestPictureCount() {
+        return bestPictureCount;
+    }
+
+    public void setBestPictureCount(Integer bestPictureCount) {
+        this.bestPictureCount = bestPictureCount;
+    }
+
+    public Long getReferencesSum() {
+        return referencesSum;
+    }
+
+    public void setReferencesSum(Long referencesSum) {
+        this.referencesSum = referencesSum;
+    }
+
+    /** Null when no film matches. */
+    public Integer getReferencesMax() {
+        return referencesMax;
+    }
+
+    public void setReferencesMax(Integer referencesMax) {
+        this.referencesMax = referencesMax;
+    }
+
+    /** Null when no film matches or the references were not requested. */
+    public Double getReferencesAverage() {
+        return (referencesSum != null && total > 0) ? (double) referencesSum / total : null;
+    }
+
+    @Override
+    public String toString() {
+        return "FilmAggregation{" +
+                "total=" + total +
+                ", years=" + years +
+                ", decades=" + decades +
+                ", awards=" + awards +
+                ", nominations=" + nominations +
+                ", bestPictureCount=" + bestPictureCount +
+                ", referencesSum=" + referencesSum +
+                ", referencesMax=" + referencesMax +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+package de.cyberport.core.dto;
+
+/**
+ * A request parameter that cannot be searched with, answered as a 400 Bad Request. The parameter and its value
+ * are null when the error is not about a single parameter, e.g. for a batch body that is no valid JSON. The query
+ * is the id of the batch query the error is about, or null.
+ */
+public final class ParameterError {
+
+    private final String query;
+    private final String parameter;
+    private final String value;
+    private final String message;
+
+    public ParameterError(String parameter, String value, String message) {
+        this(null, parameter, value, message);
+    }
+
+    public ParameterError(String query, String parameter, String value, String message) {
+        this.query = query;
+        this.parameter = parameter;
+        this.value = value;
+        this.message = message;
+    }
+
+    /** The same error about the batch query of the given id. */
+    public ParameterError withQuery(String query) {
+        return new ParameterError(query, parameter, value, message);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterError{" +
+                "query='" + query + '\'' +
+                ", parameter='" + parameter + '\'' +
+                ", value='" + value + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,166 @@
+package de.cyberport.core.dto;
+
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Stateless position in the sorted films of a container: the sort values of the last film of a page plus its
+ * ordinal as tiebreaker. The next page starts with the first film sorted after these values, so it is found by
+ * a binary search in the sorted index. Titles are kept as strings, because title ranks change with the content.
+ */
+public final class SearchCursor {
+
+    /** Cursor before the first film, sent as an empty cursor parameter to ask for paging from the start. */
+    public static final SearchCursor START = new SearchCursor(null, -1, new int[0], null);
+
+    private static final char SEPARATOR = '|';
+    private static final char VALUE_SEPARATOR = ',';
+    private static final char TITLE_KEY = 't';
+    private static final char NULL_TITLE_KEY = 'n';
+
+    private final SortOrder sortOrder;
+    private final int ordinal;
+    private final int[] values;
+    private final String title;
+
+    private SearchCursor(SortOrder sortOrder, int ordinal, int[] values, String title) {
+        this.sortOrder = sortOrder;
+        this.ordinal = ordinal;
+        this.values = values;
+        this.title = title;
+    }
+
+    /** Cursor pointing right after the given film in the given sort order. */
+    public static SearchCursor after(FilmIndex filmIndex, SortOrder sortOrder, int ordinal) {
+        final int[] values = new int[sortOrder.size()];
+        for (int key = 0; key < values.length; key++) {
+            if (!SortOrder.isTitle(sortOrder.getColumn(key))) {
+                values[key] = filmIndex.getSortValue(sortOrder.getColumn(key), ordinal);
+            }
+        }
+        return new SearchCursor(sortOrder, ordinal, values, filmIndex.getTitle(ordinal));
+    }
+
+    /** Position in the sort order of the index of the first film after this cursor. */
+    public int seek(FilmIndex filmIndex) {
+        if (this == START) {
+            return 0;
+        }
+        return filmIndex.positionAfter(sortOrder, values, title, ordinal);
+    }
+
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    public String encode() {
+        if (this == START) {
+            return "";
+        }
+
+        final StringBuilder cursor = new StringBuilder();
+        cursor.append(sortOrder).append(SEPARATOR).append(ordinal).append(SEPARATOR);
+        for (int key = 0; key < values.length; key++) {
+            if (key > 0) {
+                cursor.append(VALUE_SEPARATOR);
+            }
+            cursor.append(values[key]);
+        }
+        cursor.append(SEPARATOR);
+        if (title != null) {
+            cursor.append(TITLE_KEY).append(title);
+        } else {
+            cursor.append(NULL_TITLE_KEY);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String encodedCursor) throws IllegalArgumentException {
+        final SearchCursor cursor = tryDecode(encodedCursor);
+        if (cursor == null) {
+            throw new IllegalArgumentException("Invalid cursor " + encodedCursor);
+        }
+        return cursor;
+    }
+
+    /** Same as {@link #decode(String)}, but returns null for an invalid cursor instead of throwing. */
+    public static SearchCursor tryDecode(String encodedCursor) {
+        if (encodedCursor == null || encodedCursor.isEmpty()) {
+            return START;
+        }
+        if (!isBase64(encodedCursor)) {
+            return null;
+        }
+
+        final String cursor = new String(Base64.getUrlDecoder().decode(encodedCursor), StandardCharsets.UTF_8);
+        final int ordinalStart = cursor.indexOf(SEPARATOR) + 1;
+        final int valuesStart = cursor.indexOf(SEPARATOR, ordinalStart) + 1;
+        final int titleStart = cursor.indexOf(SEPARATOR, valuesStart) + 1;
+        if (ordinalStart == 0 || valuesStart == 0 || titleStart == 0 || titleStart == cursor.length()) {
+            return null;
+        }
+
+        final SortOrder sortOrder = SortOrder.tryParse(cursor.substring(0, ordinalStart - 1));
+        final long ordinal = Utils.parseInt(cursor, ordinalStart, valuesStart - 1);
+        if (sortOrder == null || ordinal == Utils.NOT_AN_INT) {
+            return null;
+        }
+
+        final int[] values = new int[sortOrder.size()];
+        int valueStart = valuesStart;
+        for (int key = 0; key < values.length; key++) {
+            int valueEnd = cursor.indexOf(VALUE_SEPARATOR, valueStart);
+            if (valueEnd < 0 || valueEnd > titleStart - 1) {
+                valueEnd = titleStart - 1;
+            }
+            final long value = Utils.parseInt(cursor, valueStart, valueEnd);
+            if (value == Utils.NOT_AN_INT || (key < values.length - 1) == (valueEnd == titleStart - 1)) {
+                return null;
+            }
+            values[key] = (int) value;
+            valueStart = valueEnd + 1;
+        }
+
+        switch (cursor.charAt(titleStart)) {
+            case TITLE_KEY:
+                return new SearchCursor(sortOrder, (int) ordinal, values, cursor.substring(titleStart + 1));
+            case NULL_TITLE_KEY:
+                return new SearchCursor(sortOrder, (int) ordinal, values, null);
+            default:
+                return null;
+        }
+    }
+
+    /** Whether the URL safe Base64 decoder takes the text without throwing. */
+    private static boolean isBase64(String text) {
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == '=') {
+            length--;
+        }
+        final int padding = text.length() - length;
+        if (length % 4 == 1 || (padding > 0 && (text.length() % 4 != 0 || padding > 2))) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCursor{" +
+                "sortOrder=" + sortOrder +
+                ", ordinal=" + ordinal +
+                ", title='" + title + '\'' +
+                '}';
+    }
+}
@@ -1,14 +1,17 @@
 package de.cyberport.core.dto;
 
-import de.cyberport.core.services.SearchFilter;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.index.TitleSearchIndex;
+import de.cyberport.core.services.CompiledSearchFilter;
 import de.cyberport.core.utils.Constants;
+import org.apache.commons.lang.StringUtils;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.EnumSet;
 
 public class SearchDTO {
     private String title;
+    private String titlePrefix;
+    private String titleContains;
     private Integer year;
     private Integer minYear;
     private Integer maxYear;
@@ -16,21 +19,61 @@ public class SearchDTO {
     private Integer maxAwards;
     private Integer nominations;
     private Boolean isBestPicture;
-    private Constants.SUPPORTED_SORT_BY sortBy = Constants.SUPPORTED_SORT_BY.TITLE;
+    private SortOrder sortOrder = SortOrder.DEFAULT;
     private Integer limit;
+    private Integer offset;
+    private SearchCursor cursor;
+    private boolean withTotal;
+    private EnumSet<Constants.SUPPORTED_AGGREGATE> aggregations;
+    private EnumSet<Constants.SUPPORTED_FIELD> fields;
+
+    private CompiledSearchFilter compiledSearchFilter;
+
+    /** All the search filters fused into one predicate, compiled once per change of the filters. */
+    public CompiledSearchFilter getCompiledSearchFilter() {
+        if (compiledSearchFilter == null) {
+            compiledSearchFilter = CompiledSearchFilter.compile(this);
+        }
+        return compiledSearchFilter;
+    }
 
-    private final Map<String, SearchFilter> searchFilters = new HashMap<>();
+    /**
+     * Canonical form of the search: two DTOs with the same query key return the same films,
+     * no matter in which order or how often the request parameters were sent.
+     */
+    public String getQueryKey() {
+        final StringBuilder queryKey = new StringBuilder();
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.TITLE, title);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.TITLE_PREFIX, titlePrefix);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.TITLE_CONTAINS, titleContains);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.YEAR, year);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.MIN_YEAR, minYear);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.MAX_YEAR, maxYear);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.MIN_AWARDS, minAwards);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.MAX_AWARDS, maxAwards);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.NOMINATIONS, nominations);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.IS_BEST_PICTURE, isBestPicture);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.SORT_BY, sortOrder);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.LIMIT, limit);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.OFFSET, offset);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.CURSOR, (cursor != null) ? cursor.encode() : null);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.TOTAL, withTotal ? Boolean.TRUE : null);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.AGGREGATE, aggregations);
+        appendQueryKeyPart(queryKey, Constants.SupportedRequestParams.FIELDS, fields);
+        return queryKey.toString();
+    }
 
-    private void updateSearchFilters(String key, SearchFilter filter) {
-        if (filter != null) {
-            searchFilters.put(key, filter);
-        } else {
-            searchFilters.remove(key);
+    private static void appendQueryKeyPart(StringBuilder queryKey, String name, Object value) {
+        if (value == null) {
+            return;
         }
-    }
 
-    public Collection<SearchFilter> getSearchFilters() {
-        return searchFilters.values();
+        queryKey.append(name).append('=');
+        if (value instanceof String) {
+            // the length prefix keeps separators inside the title from being read as the next parameter
+            queryKey.append(((String) value).length()).append(':');
+        }
+        queryKey.append(value).append(';');
     }
 
     public String getTitle() {
@@ -39,12 +82,27 @@ public class SearchDTO {
 
     public void setTitle(String title) {
         this.title = title;
+        compiledSearchFilter = null;
+    }
+
+    /** Normalized, see {@link TitleSearchIndex#normalize(String)}, or null when not restricted. */
+    public String getTitlePrefix() {
+        return titlePrefix;
+    }
+
+    public void setTitlePrefix(String titlePrefix) {
+        this.titlePrefix = StringUtils.isEmpty(titlePrefix) ? null : TitleSearchIndex.normalize(titlePrefix);
+        compiledSearchFilter = null;
+    }
 
-        final SearchFilter filter = (title == null) ? null : (film) -> {
-            return film.getTitle() != null && film.getTitle().equals(this.title);
-        };
+    /** Normalized, see {@link TitleSearchIndex#normalize(String)}, or null when not restricted. */
+    public String getTitleContains() {
+        return titleContains;
+    }
 
-        updateSearchFilters(Constants.SupportedRequestParams.TITLE, filter);
+    public void setTitleContains(String titleContains) {
+        this.titleContains = StringUtils.isEmpty(titleContains) ? null : TitleSearchIndex.normalize(titleContains);
+        compiledSearchFilter = null;
     }
 
     public Integer getYear() {
@@ -53,12 +111,7 @@ public class SearchDTO {
 
     public void setYear(Integer year) {
         this.year = year;
-
-        final SearchFilter filter = (year == null) ? null : (film) -> {
-            return film.getYear() == this.year;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.YEAR, filter);
+        compiledSearchFilter = null;
     }
 
     public Integer getMinYear() {
@@ -67,12 +120,7 @@ public class SearchDTO {
 
     public void setMinYear(Integer minYear) {
         this.minYear = minYear;
-
-        final SearchFilter filter = (minYear == null) ? null : (film) -> {
-            return film.getYear() >= this.minYear;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.MIN_YEAR, filter);
+        compiledSearchFilter = null;
     }
 
     public Integer getMaxYear() {
@@ -81,12 +129,7 @@ public class SearchDTO {
 
     public void setMaxYear(Integer maxYear) {
         this.maxYear = maxYear;
-
-        final SearchFilter filter = (maxYear == null) ? null : (film) -> {
-            return film.getYear() <= this.maxYear;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.MAX_YEAR, filter);
+        compiledSearchFilter = null;
     }
 
     public Integer getMinAwards() {
@@ -99,12 +142,7 @@ public class SearchDTO {
         }
 
         this.minAwards = minAwards;
-
-        final SearchFilter filter = (minAwards == null) ? null : (film) -> {
-            return film.getAwards() >= this.minAwards;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.MIN_AWARDS, filter);
+        compiledSearchFilter = null;
     }
 
     public Integer getMaxAwards() {
@@ -117,12 +155,7 @@ public class SearchDTO {
         }
 
         this.maxAwards = maxAwards;
-
-        final SearchFilter filter = (maxAwards == null) ? null : (film) -> {
-            return film.getAwards() <= this.maxAwards;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.MAX_AWARDS, filter);
+        compiledSearchFilter = null;
     }
 
     public Integer getNominations() {
@@ -135,12 +168,7 @@ public class SearchDTO {
         }
 
         this.nominations = nominations;
-
-        final SearchFilter filter = (nominations == null) ? null : (film) -> {
-            return film.getNominations() == this.nominations;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.NOMINATIONS, filter);
+        compiledSearchFilter = null;
     }
 
     public Boolean isBestPicture() {
@@ -149,20 +177,24 @@ public class SearchDTO {
 
     public void setIsBestPicture(Boolean isBestPicture) throws IllegalArgumentException {
         this.isBestPicture = isBestPicture;
-
-        final SearchFilter filter = (isBestPicture == null) ? null : (film) -> {
-            return film.isBestPicture() == this.isBestPicture;
-        };
-
-        updateSearchFilters(Constants.SupportedRequestParams.IS_BEST_PICTURE, filter);
+        compiledSearchFilter = null;
     }
 
+    /** The first key of the sort order. */
     public Constants.SUPPORTED_SORT_BY getSortBy() {
-        return sortBy;
+        return sortOrder.getColumn(0);
     }
 
     public void setSortBy(Constants.SUPPORTED_SORT_BY sortBy) {
-        this.sortBy = sortBy;
+        this.sortOrder = SortOrder.of(sortBy);
+    }
+
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    public void setSortOrder(SortOrder sortOrder) {
+        this.sortOrder = sortOrder;
     }
 
     public Integer getLimit() {
@@ -176,4 +208,59 @@ public class SearchDTO {
 
         this.limit = limit;
     }
+
+    public Integer getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Integer offset) throws IllegalArgumentException {
+        if (offset != null && offset < 0) {
+            throw new IllegalArgumentException("offset cannot be less than 0");
+        }
+
+        this.offset = offset;
+    }
+
+    public SearchCursor getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(SearchCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /** True when a page of the result is requested by offset or cursor. */
+    public boolean isPaged() {
+        return offset != null || cursor != null;
+    }
+
+    public boolean isWithTotal() {
+        return withTotal;
+    }
+
+    public void setWithTotal(boolean withTotal) {
+        this.withTotal = withTotal;
+    }
+
+    /** Facets to count instead of returning films, or null for a normal search. */
+    public EnumSet<Constants.SUPPORTED_AGGREGATE> getAggregations() {
+        return aggregations;
+    }
+
+    public void setAggregations(EnumSet<Constants.SUPPORTED_AGGREGATE> aggregations) {
+        this.aggregations = aggregations;
+    }
+
+    public boolean isAggregate() {
+        return aggregations != null;
+    }
+
+    /** Film properties to return, or null for all of them. */
+    public EnumSet<Constants.SUPPORTED_FIELD> getFields() {
+        return fields;
+    }
+
+    public void setFields(EnumSet<Constants.SUPPORTED_FIELD> fields) {
+        this.fields = fields;
+    }
 }
@@ -1,19 +1,59 @@
 package de.cyberport.core.dto;
 
+import de.cyberport.core.utils.Constants;
+
+import java.util.EnumSet;
 import java.util.List;
 
 public class SearchResult {
 
     private List<Film> result;
 
+    private String nextCursor;
+
+    private Integer total;
+
+    /** How the films are written, not a part of the response itself. */
+    private transient EnumSet<Constants.SUPPORTED_FIELD> fields;
+
     public SearchResult(List<Film> result) {
         this.result = result;
     }
 
+    public SearchResult(List<Film> result, String nextCursor, Integer total) {
+        this.result = result;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    public SearchResult(List<Film> result, String nextCursor, Integer total, EnumSet<Constants.SUPPORTED_FIELD> fields) {
+        this(result, nextCursor, total);
+        this.fields = fields;
+    }
+
+    public List<Film> getResult() {
+        return result;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public Integer getTotal() {
+        return total;
+    }
+
+    /** Film properties to write, or null for all of them. */
+    public EnumSet<Constants.SUPPORTED_FIELD> getFields() {
+        return fields;
+    }
+
     @Override
     public String toString() {
         return "SearchResult{" +
                 "result=" + result +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", total=" + total +
                 '}';
     }
 }
@@ -0,0 +1,80 @@
+package de.cyberport.core.dto;
+
+import de.cyberport.core.services.SearchMetrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A request that took longer than the slow request threshold of the {@link SearchMetrics}: what was asked
+ * for, how it was answered and where the time went. The plan and the cache outcome are null when they do
+ * not apply, e.g. without a cache, or when the response came from the cache.
+ */
+public final class SlowRequest {
+
+    private final long time;
+    private final String path;
+    private final String query;
+    private final String plan;
+    private final Boolean cacheHit;
+    private final long scannedFilms;
+    private final long durationNanos;
+    private final Map<SearchMetrics.Stage, Long> stageNanos;
+
+    public SlowRequest(long time, String path, String query, String plan, Boolean cacheHit, long scannedFilms,
+            long durationNanos, Map<SearchMetrics.Stage, Long> stageNanos) {
+        this.time = time;
+        this.path = path;
+        this.query = query;
+        this.plan = plan;
+        this.cacheHit = cacheHit;
+        this.scannedFilms = scannedFilms;
+        this.durationNanos = durationNanos;
+        this.stageNanos = Collections.unmodifiableMap(stageNanos);
+    }
+
+    /** Start of the request, in milliseconds since the epoch. */
+    public long getTime() {
+        return time;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /** The normalized search, see {@link SearchDTO#getQueryKey()}. */
+    public String getQuery() {
+        return query;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public Boolean getCacheHit() {
+        return cacheHit;
+    }
+
+    public long getScannedFilms() {
+        return scannedFilms;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /** Durations of the stages that ran, in the order they ran. */
+    public Map<SearchMetrics.Stage, Long> getStageNanos() {
+        return stageNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowRequest{" +
+                "path='" + path + '\'' +
+                ", query='" + query + '\'' +
+                ", plan='" + plan + '\'' +
+                ", durationNanos=" + durationNanos +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package de.cyberport.core.index;
+
+/**
+ * Keeps the first {@code capacity} film ordinals of a sorted order in O(capacity) memory.
+ * The heap root is the worst of the kept films, so every further film is either dropped
+ * after one comparison or replaces the root in O(log capacity).
+ */
+public final class BoundedOrdinalHeap {
+
+    private final SortedIntIndex sortIndex;
+    private final int[] heap;
+    private int size;
+
+    public BoundedOrdinalHeap(SortedIntIndex sortIndex, int capacity) {
+        this.sortIndex = sortIndex;
+        this.heap = new int[capacity];
+    }
+
+    public void offer(int ordinal) {
+        if (size < heap.length) {
+            heap[size] = ordinal;
+            siftUp(size++);
+        } else if (size > 0 && sortIndex.compare(ordinal, heap[0]) < 0) {
+            heap[0] = ordinal;
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Empties the heap and returns the kept ordinals in sorted order. */
+    public int[] drainSorted() {
+        final int[] sorted = new int[size];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(0);
+        }
+        return sorted;
+    }
+
+    private void siftUp(int position) {
+        final int ordinal = heap[position];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (sortIndex.compare(ordinal, heap[parent]) <= 0) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = ordinal;
+    }
+
+    private void siftDown(int position) {
+        if (size == 0) {
+            return;
+        }
+
+        final int ordinal = heap[position];
+        final int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && sortIndex.compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (sortIndex.compare(ordinal, heap[child]) >= 0) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = ordinal;
+    }
+}
@@ -0,0 +1,629 @@
+package de.cyberport.core.index;
+
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.utils.Constants;
+import org.apache.sling.api.resource.Resource;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, column oriented snapshot of all the films stored below a film container resource.
+ * The ordinal of a film is its position between the container children, so ordering by ordinal
+ * keeps the repository order. Only the sort orders derived from the columns are added on first use.
+ * The index keeps no {@link Film} objects: they are created from the columns when they are asked for, e.g. to
+ * be serialized, so every film is held once, and an index read from a {@link FilmIndexSnapshot} keeps its int
+ * columns in the mapped file. The popularity score of every film, see {@link FilmScore}, is kept as a column
+ * of its own, computed when the films are indexed. Changes of single films are applied by
+ * {@link #update(Resource, Set)}, which creates a new index and leaves readers of this one undisturbed.
+ */
+public final class FilmIndex {
+
+    private static final Comparator<String> TITLE_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /** Sort orders beyond this many are built for every request instead of being kept with the index. */
+    private static final int MAX_CACHED_SORT_ORDERS = 32;
+
+    private static final int NEW_FILM = -1;
+
+    private static final long HASH_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private final String path;
+    private final long version;
+    private final long lastModified;
+    private final int size;
+    /** Names of the film resources, null when the index was created from films alone. */
+    private final String[] names;
+    private final String[] titles;
+    private final IntColumn years;
+    private final IntColumn awards;
+    private final IntColumn nominations;
+    private final IntColumn references;
+    private final BitSet bestPictures;
+    private final int bestPictureCount;
+    private final SortedIntIndex yearIndex;
+    private final SortedIntIndex awardsIndex;
+    private final SortedIntIndex nominationsIndex;
+    private final SortedIntIndex referencesIndex;
+    private final SortedIntIndex titleIndex;
+    private final FilmScore filmScore;
+    private final SortedIntIndex scoreIndex;
+
+    /** Built on first use, since only title lookups need it; a race only builds it twice. */
+    private volatile TitleSearchIndex titleSearchIndex;
+    private final ConcurrentMap<SortOrder, SortedIntIndex> sortIndexes = new ConcurrentHashMap<>();
+
+    FilmIndex(String path, long version, long lastModified, String[] names, String[] titles, IntColumn years,
+            IntColumn awards, IntColumn nominations, IntColumn references, BitSet bestPictures,
+            SortedIntIndex yearIndex, SortedIntIndex awardsIndex, SortedIntIndex nominationsIndex,
+            SortedIntIndex referencesIndex, SortedIntIndex titleIndex, FilmScore filmScore, SortedIntIndex scoreIndex) {
+        this.path = path;
+        this.version = version;
+        this.lastModified = lastModified;
+        this.size = titles.length;
+        this.names = names;
+        this.titles = titles;
+        this.years = years;
+        this.awards = awards;
+        this.nominations = nominations;
+        this.references = references;
+        this.bestPictures = bestPictures;
+        this.bestPictureCount = bestPictures.cardinality();
+        this.yearIndex = yearIndex;
+        this.awardsIndex = awardsIndex;
+        this.nominationsIndex = nominationsIndex;
+        this.referencesIndex = referencesIndex;
+        this.titleIndex = titleIndex;
+        this.filmScore = filmScore;
+        this.scoreIndex = scoreIndex;
+    }
+
+    /**
+     * Hash of the content and of the score weights, the same for every index of the same films scored the same
+     * way however the index was created.
+     */
+    private static long version(String[] titles, int[] years, int[] awards, int[] nominations, int[] references,
+            BitSet bestPictures, FilmScore filmScore) {
+        long contentHash = HASH_OFFSET_BASIS;
+        for (int i = 0; i < titles.length; i++) {
+            contentHash = hash(contentHash, titles[i]);
+            contentHash = hash(contentHash, years[i]);
+            contentHash = hash(contentHash, awards[i]);
+            contentHash = hash(contentHash, nominations[i]);
+            contentHash = hash(contentHash, references[i]);
+            contentHash = hash(contentHash, bestPictures.get(i) ? 1 : 0);
+        }
+        contentHash = hash(contentHash, filmScore.hashCode());
+        return hash(contentHash, titles.length);
+    }
+
+    private static long hash(long hash, int value) {
+        return (hash ^ value) * HASH_PRIME;
+    }
+
+    /** Hashes the characters of the title, as titles like "Aa" and "BB" share their {@link String#hashCode}. */
+    private static long hash(long hash, String title) {
+        if (title == null) {
+            return hash(hash, -1);
+        }
+        long titleHash = hash(hash, title.length());
+        for (int i = 0; i < title.length(); i++) {
+            titleHash = hash(titleHash, title.charAt(i));
+        }
+        return titleHash;
+    }
+
+    /** Replaces every title by its position between the distinct titles, so titles compare as ints. */
+    private static int[] rankTitles(String[] titles) {
+        final Integer[] order = new Integer[titles.length];
+        for (int i = 0; i < titles.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> TITLE_ORDER.compare(titles[first], titles[second]));
+
+        final int[] ranks = new int[titles.length];
+        int rank = 0;
+        for (int i = 1; i < order.length; i++) {
+            if (TITLE_ORDER.compare(titles[order[i - 1]], titles[order[i]]) != 0) {
+                rank++;
+            }
+            ranks[order[i]] = rank;
+        }
+        return ranks;
+    }
+
+    public static FilmIndex build(Resource rootResource) {
+        return build(rootResource, FilmScore.DEFAULT);
+    }
+
+    public static FilmIndex build(Resource rootResource, FilmScore filmScore) {
+        if (rootResource == null) {
+            return null;
+        }
+
+        final List<String> names = new ArrayList<>();
+        final List<Film> films = new ArrayList<>();
+        long lastModified = rootResource.getResourceMetadata().getModificationTime();
+        for (Resource child : rootResource.getChildren()) {
+            names.add(child.getName());
+            films.add(child.adaptTo(Film.class));
+            lastModified = Math.max(lastModified, child.getResourceMetadata().getModificationTime());
+        }
+
+        return of(rootResource.getPath(), names, films, toLastModified(lastModified), filmScore);
+    }
+
+    /** The latest modification time of the container and its children, or now when the repository does not tell. */
+    private static long toLastModified(long lastModified) {
+        return (lastModified > 0) ? lastModified : System.currentTimeMillis();
+    }
+
+    public static FilmIndex of(String path, List<Film> parsedFilms) {
+        return of(path, parsedFilms, System.currentTimeMillis());
+    }
+
+    /** Builds the index from already adapted films; null entries, e.g. from non film children, are skipped. */
+    public static FilmIndex of(String path, List<Film> parsedFilms, long lastModified) {
+        return of(path, null, parsedFilms, lastModified, FilmScore.DEFAULT);
+    }
+
+    public static FilmIndex of(String path, List<Film> parsedFilms, FilmScore filmScore) {
+        return of(path, null, parsedFilms, System.currentTimeMillis(), filmScore);
+    }
+
+    private static FilmIndex of(String path, List<String> childNames, List<Film> parsedFilms, long lastModified,
+            FilmScore filmScore) {
+        final List<Film> films = new ArrayList<>(parsedFilms.size());
+        final List<String> names = new ArrayList<>(parsedFilms.size());
+        for (int i = 0; i < parsedFilms.size(); i++) {
+            if (parsedFilms.get(i) != null) {
+                films.add(parsedFilms.get(i));
+                names.add((childNames != null) ? childNames.get(i) : null);
+            }
+        }
+
+        final int size = films.size();
+        final String[] titles = new String[size];
+        final int[] years = new int[size];
+        final int[] awards = new int[size];
+        final int[] nominations = new int[size];
+        final int[] references = new int[size];
+        final int[] scores = new int[size];
+        final BitSet bestPictures = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            final Film film = films.get(i);
+            titles[i] = (film.getTitle() != null) ? film.getTitle().intern() : null;
+            years[i] = film.getYear();
+            awards[i] = film.getAwards();
+            nominations[i] = film.getNominations();
+            references[i] = film.getNumberOfReferences();
+            scores[i] = filmScore.scoreOf(film);
+            bestPictures.set(i, film.isBestPicture());
+        }
+
+        return new FilmIndex(path, version(titles, years, awards, nominations, references, bestPictures, filmScore),
+                lastModified, (childNames != null) ? names.toArray(new String[0]) : null, titles,
+                new IntColumn(years), new IntColumn(awards), new IntColumn(nominations), new IntColumn(references),
+                bestPictures, new SortedIntIndex(years),
+                new SortedIntIndex(awards), new SortedIntIndex(nominations), new SortedIntIndex(references),
+                new SortedIntIndex(rankTitles(titles)), filmScore, new SortedIntIndex(scores));
+    }
+
+    /**
+     * Index of the current children of the container, for which only the films with the given names are adapted
+     * anew. All other films are copied from this index and the sorted indexes are merged instead of sorted again,
+     * so an update costs a walk over the child names instead of adapting every film. Only the adapted films are
+     * scored, with the score weights of this index. This index stays unchanged.
+     *
+     * Falls back to {@link #build(Resource)} when this index does not know the names of its films or when
+     * the films not named as changed are not found in their former order, e.g. after the container was reordered.
+     */
+    public FilmIndex update(Resource rootResource, Set<String> changedNames) {
+        if (names == null || !path.equals(rootResource.getPath())) {
+            return build(rootResource, filmScore);
+        }
+
+        // ordinals in this index of the films of the new index, NEW_FILM for the adapted ones
+        final int maxSize = size + changedNames.size();
+        final int[] previousOrdinals = new int[maxSize];
+        final String[] updatedNames = new String[maxSize];
+        final Film[] adaptedFilms = new Film[maxSize];
+        int updatedSize = 0;
+        int next = 0;
+        long updatedLastModified = rootResource.getResourceMetadata().getModificationTime();
+        for (Resource child : rootResource.getChildren()) {
+            updatedLastModified = Math.max(updatedLastModified, child.getResourceMetadata().getModificationTime());
+            final String name = child.getName();
+            while (next < size && changedNames.contains(names[next])) {
+                next++;
+            }
+
+            if (next < size && names[next].equals(name)) {
+                previousOrdinals[updatedSize] = next++;
+            } else {
+                // a changed film or a child that is no film, such as a jcr:content node
+                final Film film = child.adaptTo(Film.class);
+                if (film == null) {
+                    continue;
+                }
+                if (!changedNames.contains(name) || updatedSize == maxSize) {
+                    return build(rootResource, filmScore);
+                }
+                previousOrdinals[updatedSize] = NEW_FILM;
+                adaptedFilms[updatedSize] = film;
+            }
+            updatedNames[updatedSize++] = name;
+        }
+        while (next < size && changedNames.contains(names[next])) {
+            next++;
+        }
+        if (next < size) {
+            return build(rootResource, filmScore);
+        }
+
+        return update(Arrays.copyOf(updatedNames, updatedSize), Arrays.copyOf(previousOrdinals, updatedSize),
+                adaptedFilms, toLastModified(updatedLastModified));
+    }
+
+    private FilmIndex update(String[] updatedNames, int[] previousOrdinals, Film[] adaptedFilms, long updatedLastModified) {
+        final int updatedSize = updatedNames.length;
+        final String[] updatedTitles = new String[updatedSize];
+        final int[] updatedYears = new int[updatedSize];
+        final int[] updatedAwards = new int[updatedSize];
+        final int[] updatedNominations = new int[updatedSize];
+        final int[] updatedReferences = new int[updatedSize];
+        final int[] updatedScores = new int[updatedSize];
+        final BitSet updatedBestPictures = new BitSet(updatedSize);
+        final int[] updatedOrdinals = new int[size];
+        Arrays.fill(updatedOrdinals, NEW_FILM);
+        final int[] addedOrdinals = new int[updatedSize];
+        int addedCount = 0;
+
+        for (int ordinal = 0; ordinal < updatedSize; ordinal++) {
+            final int previousOrdinal = previousOrdinals[ordinal];
+            if (previousOrdinal == NEW_FILM) {
+                final Film film = adaptedFilms[ordinal];
+                addedOrdinals[addedCount++] = ordinal;
+                updatedTitles[ordinal] = (film.getTitle() != null) ? film.getTitle().intern() : null;
+                updatedYears[ordinal] = film.getYear();
+                updatedAwards[ordinal] = film.getAwards();
+                updatedNominations[ordinal] = film.getNominations();
+                updatedReferences[ordinal] = film.getNumberOfReferences();
+                updatedScores[ordinal] = filmScore.scoreOf(film);
+                updatedBestPictures.set(ordinal, film.isBestPicture());
+            } else {
+                updatedOrdinals[previousOrdinal] = ordinal;
+                updatedTitles[ordinal] = titles[previousOrdinal];
+                updatedYears[ordinal] = years.get(previousOrdinal);
+                updatedAwards[ordinal] = awards.get(previousOrdinal);
+                updatedNominations[ordinal] = nominations.get(previousOrdinal);
+                updatedReferences[ordinal] = references.get(previousOrdinal);
+                updatedScores[ordinal] = scoreIndex.valueOf(previousOrdinal);
+                updatedBestPictures.set(ordinal, bestPictures.get(previousOrdinal));
+            }
+        }
+
+        final int[] added = Arrays.copyOf(addedOrdinals, addedCount);
+        return new FilmIndex(path, version(updatedTitles, updatedYears, updatedAwards, updatedNominations,
+                updatedReferences, updatedBestPictures, filmScore), updatedLastModified, updatedNames, updatedTitles,
+                new IntColumn(updatedYears), new IntColumn(updatedAwards), new IntColumn(updatedNominations),
+                new IntColumn(updatedReferences), updatedBestPictures, yearIndex.update(updatedYears, updatedOrdinals, added),
+                awardsIndex.update(updatedAwards, updatedOrdinals, added),
+                nominationsIndex.update(updatedNominations, updatedOrdinals, added),
+                referencesIndex.update(updatedReferences, updatedOrdinals, added),
+                updateTitleIndex(updatedTitles, updatedOrdinals, added), filmScore,
+                scoreIndex.update(updatedScores, updatedOrdinals, added));
+    }
+
+    /** Merges the added films into the title order and ranks the titles again, as {@link #rankTitles} does. */
+    private SortedIntIndex updateTitleIndex(String[] updatedTitles, int[] updatedOrdinals, int[] added) {
+        final Comparator<Integer> order = (first, second) -> {
+            final int result = TITLE_ORDER.compare(updatedTitles[first], updatedTitles[second]);
+            return (result != 0) ? result : Integer.compare(first, second);
+        };
+        final Integer[] sortedAdded = new Integer[added.length];
+        for (int i = 0; i < added.length; i++) {
+            sortedAdded[i] = added[i];
+        }
+        Arrays.sort(sortedAdded, order);
+
+        final int[] updatedOrder = new int[updatedTitles.length];
+        int position = 0;
+        int nextAdded = 0;
+        for (int previousPosition = 0; previousPosition < size; previousPosition++) {
+            final int ordinal = updatedOrdinals[titleIndex.ordinalAt(previousPosition)];
+            if (ordinal == NEW_FILM) {
+                continue;
+            }
+            while (nextAdded < sortedAdded.length && order.compare(sortedAdded[nextAdded], ordinal) < 0) {
+                updatedOrder[position++] = sortedAdded[nextAdded++];
+            }
+            updatedOrder[position++] = ordinal;
+        }
+        while (nextAdded < sortedAdded.length) {
+            updatedOrder[position++] = sortedAdded[nextAdded++];
+        }
+
+        final int[] ranks = new int[updatedTitles.length];
+        for (position = 1; position < updatedOrder.length; position++) {
+            final int ordinal = updatedOrder[position];
+            final int previous = updatedOrder[position - 1];
+            ranks[ordinal] = ranks[previous]
+                    + ((TITLE_ORDER.compare(updatedTitles[previous], updatedTitles[ordinal]) != 0) ? 1 : 0);
+        }
+        return new SortedIntIndex(ranks, updatedOrder);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /** Hash of the indexed content: two indexes with the same version hold the same films. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Time of the last change of the indexed films, in milliseconds since the epoch. */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Name of the resource of the film, null when the index was created from films alone. */
+    public String getName(int ordinal) {
+        return (names != null) ? names[ordinal] : null;
+    }
+
+    public String getTitle(int ordinal) {
+        return titles[ordinal];
+    }
+
+    public int getYear(int ordinal) {
+        return years.get(ordinal);
+    }
+
+    public int getAwards(int ordinal) {
+        return awards.get(ordinal);
+    }
+
+    public int getNominations(int ordinal) {
+        return nominations.get(ordinal);
+    }
+
+    public int getNumberOfReferences(int ordinal) {
+        return references.get(ordinal);
+    }
+
+    /** Popularity score of the film, weighted by the {@link #getFilmScore() score weights} of this index. */
+    public int getScore(int ordinal) {
+        return scoreIndex.valueOf(ordinal);
+    }
+
+    public boolean isBestPicture(int ordinal) {
+        return bestPictures.get(ordinal);
+    }
+
+    public int getBestPictureCount() {
+        return bestPictureCount;
+    }
+
+    public BitSet getBestPictures() {
+        return (BitSet) bestPictures.clone();
+    }
+
+    public SortedIntIndex getYearIndex() {
+        return yearIndex;
+    }
+
+    public SortedIntIndex getAwardsIndex() {
+        return awardsIndex;
+    }
+
+    public SortedIntIndex getNominationsIndex() {
+        return nominationsIndex;
+    }
+
+    public SortedIntIndex getReferencesIndex() {
+        return referencesIndex;
+    }
+
+    public SortedIntIndex getTitleIndex() {
+        return titleIndex;
+    }
+
+    public FilmScore getFilmScore() {
+        return filmScore;
+    }
+
+    public SortedIntIndex getScoreIndex() {
+        return scoreIndex;
+    }
+
+    public TitleSearchIndex getTitleSearchIndex() {
+        TitleSearchIndex current = titleSearchIndex;
+        if (current == null) {
+            current = new TitleSearchIndex(titles);
+            titleSearchIndex = current;
+        }
+        return current;
+    }
+
+    /**
+     * First position of the given sort order whose film is sorted after a film with the given sort values and
+     * ordinal. The values hold one entry per sort key; for the title key the title is given instead. The film
+     * does not have to be in the index, so positions stay valid after the films have changed.
+     */
+    public int positionAfter(SortOrder sortOrder, int[] values, String title, int ordinal) {
+        final SortedIntIndex sortIndex = getSortIndex(sortOrder);
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final int current = sortIndex.ordinalAt(middle);
+            final int result = compareToSortValues(sortOrder, current, values, title);
+            if (result < 0 || (result == 0 && current <= ordinal)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compareToSortValues(SortOrder sortOrder, int ordinal, int[] values, String title) {
+        for (int key = 0; key < sortOrder.size(); key++) {
+            final Constants.SUPPORTED_SORT_BY column = sortOrder.getColumn(key);
+            final int result = SortOrder.isTitle(column)
+                    ? TITLE_ORDER.compare(titles[ordinal], title)
+                    : Integer.compare(getSortValue(column, ordinal), values[key]);
+            if (result != 0) {
+                return sortOrder.isDescending(key) ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    /** Value of an int sort column; for the title column the rank of the title between all the titles. */
+    public int getSortValue(Constants.SUPPORTED_SORT_BY column, int ordinal) {
+        return getSortIndex(column).valueOf(ordinal);
+    }
+
+    public SortedIntIndex getSortIndex(Constants.SUPPORTED_SORT_BY sortBy) {
+        switch (sortBy) {
+            case AWARDS:
+                return awardsIndex;
+            case NOMINATIONS:
+                return nominationsIndex;
+            case YEAR:
+                return yearIndex;
+            case REFERENCES:
+                return referencesIndex;
+            case SCORE:
+                return scoreIndex;
+            default:
+                return titleIndex;
+        }
+    }
+
+    /**
+     * Films in the given sort order. A single ascending key is served by the index of its column, other
+     * orders are built once by a radix sort over the ranks of the keys and kept with the index.
+     */
+    public SortedIntIndex getSortIndex(SortOrder sortOrder) {
+        if (sortOrder.isSingleAscending()) {
+            return getSortIndex(sortOrder.getColumn(0));
+        }
+
+        SortedIntIndex sortIndex = sortIndexes.get(sortOrder);
+        if (sortIndex == null) {
+            sortIndex = buildSortIndex(sortOrder);
+            if (sortIndexes.size() < MAX_CACHED_SORT_ORDERS) {
+                final SortedIntIndex existing = sortIndexes.putIfAbsent(sortOrder, sortIndex);
+                sortIndex = (existing != null) ? existing : sortIndex;
+            }
+        }
+        return sortIndex;
+    }
+
+    /**
+     * Least significant key first, every key is a stable counting sort of the permutation by the dense rank
+     * of the key, so the result is ordered by all the keys and, for equal keys, by ordinal.
+     */
+    private SortedIntIndex buildSortIndex(SortOrder sortOrder) {
+        final int[][] ranks = new int[sortOrder.size()][];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        int[] sorted = new int[size];
+        for (int key = sortOrder.size() - 1; key >= 0; key--) {
+            final SortedIntIndex columnIndex = getSortIndex(sortOrder.getColumn(key));
+            ranks[key] = denseRanks(columnIndex, sortOrder.isDescending(key));
+
+            final int[] counts = new int[columnIndex.distinctCount() + 1];
+            for (int ordinal : order) {
+                counts[ranks[key][ordinal] + 1]++;
+            }
+            for (int rank = 1; rank < counts.length; rank++) {
+                counts[rank] += counts[rank - 1];
+            }
+            for (int ordinal : order) {
+                sorted[counts[ranks[key][ordinal]]++] = ordinal;
+            }
+
+            final int[] previous = order;
+            order = sorted;
+            sorted = previous;
+        }
+
+        // equal films share a value, so the index compares them by ordinal just like the column indexes
+        final int[] values = new int[size];
+        for (int position = 1; position < size; position++) {
+            values[order[position]] = values[order[position - 1]];
+            for (int[] keyRanks : ranks) {
+                if (keyRanks[order[position]] != keyRanks[order[position - 1]]) {
+                    values[order[position]]++;
+                    break;
+                }
+            }
+        }
+        return new SortedIntIndex(values, order);
+    }
+
+    private int[] denseRanks(SortedIntIndex columnIndex, boolean descending) {
+        final int[] ranks = new int[size];
+        final int maxRank = columnIndex.distinctCount() - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            ranks[ordinal] = descending ? maxRank - columnIndex.rankOf(ordinal) : columnIndex.rankOf(ordinal);
+        }
+        return ranks;
+    }
+
+    /** A new film with the values of the columns, which changes nothing in the index when it is changed. */
+    public Film getFilm(int ordinal) {
+        final Film film = new Film();
+        film.setTitle(titles[ordinal]);
+        film.setYear(years.get(ordinal));
+        film.setAwards(awards.get(ordinal));
+        film.setNominations(nominations.get(ordinal));
+        film.setBestPicture(bestPictures.get(ordinal));
+        film.setNumberOfReferences(references.get(ordinal));
+        return film;
+    }
+
+    /** The films in repository order, created one by one on access. */
+    public List<Film> getFilms() {
+        return new AbstractList<Film>() {
+            @Override
+            public Film get(int ordinal) {
+                return getFilm(ordinal);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "FilmIndex{" +
+                "path='" + path + '\'' +
+                ", version=" + version +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,341 @@
+package de.cyberport.core.index;
+
+import org.apache.sling.api.resource.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Binary file holding a {@link FilmIndex}: a header with the score weights, fixed width int columns including the
+ * scores, the sorted permutations of the int, score and title columns, the best picture bits and tables of the
+ * UTF-8 titles and resource names. The file is memory mapped and the int columns are read straight from the
+ * mapping, so an index is available without reading the repository and without copying its columns to the heap. Only the titles and names are decoded, since every title
+ * comparison needs a string and updates look films up by name.
+ *
+ * The content stamp in the header, see {@link #contentStampOf(Resource)}, tells whether the container changed
+ * since the file was written; files of another format version are rejected when they are mapped.
+ */
+public final class FilmIndexSnapshot {
+
+    /** Stamp of a container whose modification times the repository does not tell, which is never trusted. */
+    public static final long UNKNOWN_CONTENT_STAMP = 0;
+
+    static final int FORMAT_VERSION = 4;
+
+    private static final int MAGIC = 0x4f534352;
+    private static final int HEADER_SIZE = 68;
+    private static final int INT_COLUMNS = 14;
+    private static final int NULL_STRING = -1;
+
+    private static final long HASH_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private final String path;
+    private final long contentStamp;
+    private final FilmIndex filmIndex;
+
+    private FilmIndexSnapshot(String path, long contentStamp, FilmIndex filmIndex) {
+        this.path = path;
+        this.contentStamp = contentStamp;
+        this.filmIndex = filmIndex;
+    }
+
+    /**
+     * Hash over the names and modification times of the children of the container. It changes when a film
+     * is added, removed, reordered or modified, and is computed without adapting a single film. Without
+     * a modification time for every film, changes cannot be told apart and {@link #UNKNOWN_CONTENT_STAMP}
+     * is returned.
+     */
+    public static long contentStampOf(Resource rootResource) {
+        long stamp = HASH_OFFSET_BASIS;
+        for (Resource child : rootResource.getChildren()) {
+            final long modificationTime = child.getResourceMetadata().getModificationTime();
+            if (modificationTime <= 0) {
+                return UNKNOWN_CONTENT_STAMP;
+            }
+            stamp = hash(stamp, child.getName().hashCode());
+            stamp = hash(stamp, modificationTime);
+        }
+        return (stamp != UNKNOWN_CONTENT_STAMP) ? stamp : UNKNOWN_CONTENT_STAMP + 1;
+    }
+
+    private static long hash(long hash, long value) {
+        return ((hash ^ (value >>> 32)) * HASH_PRIME ^ (int) value) * HASH_PRIME;
+    }
+
+    /**
+     * Writes the index to a temporary file next to the target and moves it into place, so a reader never
+     * maps a partly written snapshot.
+     */
+    public static void write(FilmIndex filmIndex, long contentStamp, Path file) throws IOException {
+        final int size = filmIndex.size();
+        final byte[] pathBytes = filmIndex.getPath().getBytes(StandardCharsets.UTF_8);
+        final byte[][] titleBytes = new byte[size][];
+        final byte[][] nameBytes = new byte[size][];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            titleBytes[ordinal] = toBytes(filmIndex.getTitle(ordinal));
+            nameBytes[ordinal] = toBytes(filmIndex.getName(ordinal));
+        }
+        final int titleBytesLength = length(titleBytes);
+        final int nameBytesLength = length(nameBytes);
+        final long[] bestPictureWords = toWords(filmIndex, size);
+        final long length = length(pathBytes.length, size, bestPictureWords.length,
+                (long) titleBytesLength + nameBytesLength);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Film index of " + filmIndex.getPath() + " is too large for a snapshot");
+        }
+
+        final FilmScore filmScore = filmIndex.getFilmScore();
+        final Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(contentStamp).putLong(filmIndex.getVersion())
+                        .putLong(filmIndex.getLastModified()).putInt(size).putInt(pathBytes.length)
+                        .putInt(titleBytesLength).putInt(nameBytesLength).putInt(bestPictureWords.length)
+                        .putInt(filmScore.getAwardsWeight()).putInt(filmScore.getNominationsWeight())
+                        .putInt(filmScore.getBestPictureWeight()).putInt(filmScore.getReferencesWeight());
+                buffer.put(pathBytes);
+                buffer.position((int) align(buffer.position()));
+
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    buffer.putInt(filmIndex.getYear(ordinal));
+                }
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    buffer.putInt(filmIndex.getAwards(ordinal));
+                }
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    buffer.putInt(filmIndex.getNominations(ordinal));
+                }
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    buffer.putInt(filmIndex.getNumberOfReferences(ordinal));
+                }
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    buffer.putInt(filmIndex.getScore(ordinal));
+                }
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    buffer.putInt(filmIndex.getTitleIndex().valueOf(ordinal));
+                }
+                putOrder(buffer, filmIndex.getYearIndex());
+                putOrder(buffer, filmIndex.getAwardsIndex());
+                putOrder(buffer, filmIndex.getNominationsIndex());
+                putOrder(buffer, filmIndex.getReferencesIndex());
+                putOrder(buffer, filmIndex.getScoreIndex());
+                putOrder(buffer, filmIndex.getTitleIndex());
+                putLengths(buffer, titleBytes);
+                putLengths(buffer, nameBytes);
+                buffer.position((int) align(buffer.position()));
+
+                for (long word : bestPictureWords) {
+                    buffer.putLong(word);
+                }
+                putStrings(buffer, titleBytes);
+                putStrings(buffer, nameBytes);
+                buffer.force();
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static byte[] toBytes(String string) {
+        return (string != null) ? string.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int length(byte[][] strings) throws IOException {
+        long length = 0;
+        for (byte[] string : strings) {
+            length += (string != null) ? string.length : 0;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Film index is too large for a snapshot");
+        }
+        return (int) length;
+    }
+
+    private static void putLengths(ByteBuffer buffer, byte[][] strings) {
+        for (byte[] string : strings) {
+            buffer.putInt((string != null) ? string.length : NULL_STRING);
+        }
+    }
+
+    private static void putStrings(ByteBuffer buffer, byte[][] strings) {
+        for (byte[] string : strings) {
+            if (string != null) {
+                buffer.put(string);
+            }
+        }
+    }
+
+    private static long[] toWords(FilmIndex filmIndex, int size) {
+        final long[] words = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (filmIndex.isBestPicture(ordinal)) {
+                words[ordinal / Long.SIZE] |= 1L << (ordinal % Long.SIZE);
+            }
+        }
+        return words;
+    }
+
+    private static void putOrder(ByteBuffer buffer, SortedIntIndex index) {
+        for (int position = 0; position < index.size(); position++) {
+            buffer.putInt(index.ordinalAt(position));
+        }
+    }
+
+    /** Sections start at multiples of 8 bytes, so no int or long of the file straddles a page. */
+    private static long align(long position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static long length(int pathLength, int size, int bestPictureWords, long stringBytesLength) {
+        return align(align(HEADER_SIZE + (long) pathLength) + (long) INT_COLUMNS * Integer.BYTES * size)
+                + (long) bestPictureWords * Long.BYTES + stringBytesLength;
+    }
+
+    /**
+     * Maps a snapshot file read-only. The mapping stays valid after the file has been replaced or deleted.
+     *
+     * @throws IOException when the file cannot be read, is of another format version or is truncated
+     */
+    public static FilmIndexSnapshot map(Path file) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid film index snapshot " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IOException("Film index snapshot " + file + " has another format");
+        }
+        final long contentStamp = buffer.getLong();
+        final long version = buffer.getLong();
+        final long lastModified = buffer.getLong();
+        final int size = buffer.getInt();
+        final int pathLength = buffer.getInt();
+        final int titleBytesLength = buffer.getInt();
+        final int nameBytesLength = buffer.getInt();
+        final int bestPictureWords = buffer.getInt();
+        final int[] weights = { buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt() };
+        if (size < 0 || pathLength < 0 || titleBytesLength < 0 || nameBytesLength < 0
+                || bestPictureWords != (size + Long.SIZE - 1) / Long.SIZE || buffer.capacity()
+                != length(pathLength, size, bestPictureWords, (long) titleBytesLength + nameBytesLength)) {
+            throw new IOException("Film index snapshot " + file + " is truncated");
+        }
+        final FilmScore filmScore;
+        try {
+            filmScore = FilmScore.of(weights[0], weights[1], weights[2], weights[3]);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Film index snapshot " + file + " has invalid score weights");
+        }
+
+        final byte[] pathBytes = new byte[pathLength];
+        buffer.get(pathBytes);
+        buffer.position((int) align(buffer.position()));
+
+        final IntBuffer columns = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        final IntColumn years = column(columns, 0, size);
+        final IntColumn awards = column(columns, 1, size);
+        final IntColumn nominations = column(columns, 2, size);
+        final IntColumn references = column(columns, 3, size);
+        final IntColumn scores = column(columns, 4, size);
+        final IntColumn titleRanks = column(columns, 5, size);
+        final IntColumn yearOrder = column(columns, 6, size);
+        final IntColumn awardsOrder = column(columns, 7, size);
+        final IntColumn nominationsOrder = column(columns, 8, size);
+        final IntColumn referencesOrder = column(columns, 9, size);
+        final IntColumn scoreOrder = column(columns, 10, size);
+        final IntColumn titleOrder = column(columns, 11, size);
+        final IntColumn titleLengths = column(columns, 12, size);
+        final IntColumn nameLengths = column(columns, 13, size);
+        buffer.position((int) align(buffer.position() + (long) INT_COLUMNS * Integer.BYTES * size));
+
+        final long[] words = new long[bestPictureWords];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + bestPictureWords * Long.BYTES);
+
+        final String[] titles = getStrings(buffer, titleLengths, titleBytesLength, file);
+        final String[] names = getStrings(buffer, nameLengths, nameBytesLength, file);
+
+        final String path = new String(pathBytes, StandardCharsets.UTF_8);
+        return new FilmIndexSnapshot(path, contentStamp, new FilmIndex(path, version, lastModified,
+                hasNull(names) ? null : names, titles, years, awards, nominations, references,
+                BitSet.valueOf(words), new SortedIntIndex(years, yearOrder),
+                new SortedIntIndex(awards, awardsOrder), new SortedIntIndex(nominations, nominationsOrder),
+                new SortedIntIndex(references, referencesOrder), new SortedIntIndex(titleRanks, titleOrder),
+                filmScore, new SortedIntIndex(scores, scoreOrder)));
+    }
+
+    private static String[] getStrings(ByteBuffer buffer, IntColumn lengths, int bytesLength, Path file)
+            throws IOException {
+        final String[] strings = new String[lengths.size()];
+        final byte[] bytes = new byte[bytesLength];
+        buffer.get(bytes);
+        int offset = 0;
+        for (int ordinal = 0; ordinal < strings.length; ordinal++) {
+            final int length = lengths.get(ordinal);
+            if (length != NULL_STRING) {
+                if (length < 0 || offset + length > bytesLength) {
+                    throw new IOException("Film index snapshot " + file + " is truncated");
+                }
+                strings[ordinal] = new String(bytes, offset, length, StandardCharsets.UTF_8).intern();
+                offset += length;
+            }
+        }
+        return strings;
+    }
+
+    /** Indexes created from films alone have no names, an index with names has one for every film. */
+    private static boolean hasNull(String[] strings) {
+        for (String string : strings) {
+            if (string == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static IntColumn column(IntBuffer columns, int column, int size) {
+        final IntBuffer slice = columns.duplicate();
+        slice.position(column * size).limit((column + 1) * size);
+        return new IntColumn(slice.slice());
+    }
+
+    /** Path of the film container the snapshot was written for. */
+    public String getPath() {
+        return path;
+    }
+
+    public long getContentStamp() {
+        return contentStamp;
+    }
+
+    public FilmIndex getFilmIndex() {
+        return filmIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "FilmIndexSnapshot{" +
+                "path='" + path + '\'' +
+                ", contentStamp=" + contentStamp +
+                ", filmIndex=" + filmIndex +
+                '}';
+    }
+}
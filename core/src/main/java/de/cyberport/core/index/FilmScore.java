@@ -0,0 +1,93 @@
+package de.cyberport.core.index;
+
+import de.cyberport.core.dto.Film;
+
+/**
+ * Weights of the popularity score of a film, which sums up its awards, nominations, best picture award and
+ * references per thousand, each multiplied by its weight. The {@link FilmIndex} keeps the score of every film
+ * as a sorted column, so searches sort by score like by any other int column.
+ */
+public final class FilmScore {
+
+    public static final FilmScore DEFAULT = new FilmScore(10, 2, 20, 1);
+
+    private static final int REFERENCES_PER_POINT = 1000;
+
+    private final int awardsWeight;
+    private final int nominationsWeight;
+    private final int bestPictureWeight;
+    private final int referencesWeight;
+
+    private FilmScore(int awardsWeight, int nominationsWeight, int bestPictureWeight, int referencesWeight) {
+        this.awardsWeight = awardsWeight;
+        this.nominationsWeight = nominationsWeight;
+        this.bestPictureWeight = bestPictureWeight;
+        this.referencesWeight = referencesWeight;
+    }
+
+    public static FilmScore of(int awardsWeight, int nominationsWeight, int bestPictureWeight, int referencesWeight)
+            throws IllegalArgumentException {
+        if (awardsWeight < 0 || nominationsWeight < 0 || bestPictureWeight < 0 || referencesWeight < 0) {
+            throw new IllegalArgumentException("Score weights must not be negative");
+        }
+        return new FilmScore(awardsWeight, nominationsWeight, bestPictureWeight, referencesWeight);
+    }
+
+    /** Score of a film with the given values, capped at {@link Integer#MAX_VALUE}. */
+    public int scoreOf(int awards, int nominations, boolean bestPicture, int references) {
+        final long score = (long) awardsWeight * awards
+                + (long) nominationsWeight * nominations
+                + (bestPicture ? bestPictureWeight : 0)
+                + (long) referencesWeight * references / REFERENCES_PER_POINT;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, score));
+    }
+
+    public int scoreOf(Film film) {
+        return scoreOf(film.getAwards(), film.getNominations(), film.isBestPicture(), film.getNumberOfReferences());
+    }
+
+    public int getAwardsWeight() {
+        return awardsWeight;
+    }
+
+    public int getNominationsWeight() {
+        return nominationsWeight;
+    }
+
+    public int getBestPictureWeight() {
+        return bestPictureWeight;
+    }
+
+    public int getReferencesWeight() {
+        return referencesWeight;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FilmScore)) {
+            return false;
+        }
+
+        final FilmScore filmScore = (FilmScore) other;
+        return awardsWeight == filmScore.awardsWeight && nominationsWeight == filmScore.nominationsWeight
+                && bestPictureWeight == filmScore.bestPictureWeight && referencesWeight == filmScore.referencesWeight;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((awardsWeight * 31 + nominationsWeight) * 31 + bestPictureWeight) * 31 + referencesWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "FilmScore{" +
+                "awardsWeight=" + awardsWeight +
+                ", nominationsWeight=" + nominationsWeight +
+                ", bestPictureWeight=" + bestPictureWeight +
+                ", referencesWeight=" + referencesWeight +
+                '}';
+    }
+}
@@ -0,0 +1,35 @@
+package de.cyberport.core.index;
+
+import java.nio.IntBuffer;
+
+/**
+ * Read-only int column, held either in an array or in a buffer over a mapped {@link FilmIndexSnapshot}.
+ * Reads from an array skip the bounds and offset bookkeeping of a heap {@link IntBuffer}, which shows in
+ * the scan loops.
+ */
+final class IntColumn {
+
+    private final int[] values;
+    private final IntBuffer buffer;
+    private final int size;
+
+    IntColumn(int[] values) {
+        this.values = values;
+        this.buffer = null;
+        this.size = values.length;
+    }
+
+    IntColumn(IntBuffer buffer) {
+        this.values = null;
+        this.buffer = buffer;
+        this.size = buffer.limit();
+    }
+
+    int get(int index) {
+        return (values != null) ? values[index] : buffer.get(index);
+    }
+
+    int size() {
+        return size;
+    }
+}
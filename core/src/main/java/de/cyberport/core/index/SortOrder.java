@@ -0,0 +1,140 @@
+package de.cyberport.core.index;
+
+import de.cyberport.core.utils.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Sort keys of a search, e.g. {@code awards:desc,year:asc,title}. Keys are ascending unless marked with
+ * {@code :desc}; films equal in all the keys keep their repository order.
+ */
+public final class SortOrder {
+
+    public static final SortOrder DEFAULT = of(Constants.SUPPORTED_SORT_BY.TITLE);
+
+    private static final String KEY_SEPARATOR = ",";
+    private static final String DIRECTION_SEPARATOR = ":";
+    private static final String ASCENDING = "asc";
+    private static final String DESCENDING = "desc";
+
+    private static final Constants.SUPPORTED_SORT_BY[] COLUMNS = Constants.SUPPORTED_SORT_BY.values();
+
+    private final Constants.SUPPORTED_SORT_BY[] columns;
+    private final boolean[] descending;
+
+    private SortOrder(Constants.SUPPORTED_SORT_BY[] columns, boolean[] descending) {
+        this.columns = columns;
+        this.descending = descending;
+    }
+
+    public static SortOrder of(Constants.SUPPORTED_SORT_BY sortBy) {
+        return new SortOrder(new Constants.SUPPORTED_SORT_BY[] { sortBy }, new boolean[] { false });
+    }
+
+    public static SortOrder parse(String sortOrder) throws IllegalArgumentException {
+        final SortOrder parsed = tryParse(sortOrder);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unsupported sort order " + sortOrder);
+        }
+        return parsed;
+    }
+
+    /**
+     * Same as {@link #parse(String)}, but returns null for an unknown column, an unknown direction or a column
+     * used more than once, so invalid request parameters are told apart without an exception.
+     */
+    public static SortOrder tryParse(String sortOrder) {
+        final String[] keys = sortOrder.split(KEY_SEPARATOR, -1);
+        final Constants.SUPPORTED_SORT_BY[] columns = new Constants.SUPPORTED_SORT_BY[keys.length];
+        final boolean[] descending = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final String key = keys[i].trim();
+            final int directionStart = key.indexOf(DIRECTION_SEPARATOR);
+            columns[i] = columnOf((directionStart >= 0) ? key.substring(0, directionStart) : key);
+            if (columns[i] == null) {
+                return null;
+            }
+
+            if (directionStart >= 0) {
+                final String direction = key.substring(directionStart + 1);
+                if (DESCENDING.equalsIgnoreCase(direction)) {
+                    descending[i] = true;
+                } else if (!ASCENDING.equalsIgnoreCase(direction)) {
+                    return null;
+                }
+            }
+
+            for (int j = 0; j < i; j++) {
+                if (isTitle(columns[j]) ? isTitle(columns[i]) : columns[j] == columns[i]) {
+                    return null;
+                }
+            }
+        }
+        return new SortOrder(columns, descending);
+    }
+
+    private static Constants.SUPPORTED_SORT_BY columnOf(String name) {
+        for (Constants.SUPPORTED_SORT_BY column : COLUMNS) {
+            if (column.name().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /** Whether the column sorts by title; unknown columns do, as the default sort order. */
+    public static boolean isTitle(Constants.SUPPORTED_SORT_BY column) {
+        return column == Constants.SUPPORTED_SORT_BY.TITLE || column == Constants.SUPPORTED_SORT_BY.UNKNOWN;
+    }
+
+    public int size() {
+        return columns.length;
+    }
+
+    public Constants.SUPPORTED_SORT_BY getColumn(int key) {
+        return columns[key];
+    }
+
+    public boolean isDescending(int key) {
+        return descending[key];
+    }
+
+    /** True for a single ascending key, which is served by the sorted index of its column. */
+    public boolean isSingleAscending() {
+        return columns.length == 1 && !descending[0];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SortOrder)) {
+            return false;
+        }
+
+        final SortOrder sortOrder = (SortOrder) other;
+        return Arrays.equals(columns, sortOrder.columns) && Arrays.equals(descending, sortOrder.descending);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(columns) + Arrays.hashCode(descending);
+    }
+
+    /** Canonical form, which {@link #parse(String)} reads back to an equal sort order. */
+    @Override
+    public String toString() {
+        final StringBuilder sortOrder = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sortOrder.append(KEY_SEPARATOR);
+            }
+            sortOrder.append(columns[i].name().toLowerCase());
+            if (descending[i]) {
+                sortOrder.append(DIRECTION_SEPARATOR).append(DESCENDING);
+            }
+        }
+        return sortOrder.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package de.cyberport.core.index;
+
+import java.util.Arrays;
+
+/**
+ * Permutation of the film ordinals sorted by one int column. Films with equal values keep their
+ * repository order, so a range of values always maps to one contiguous slice of the permutation.
+ * Values and permutation are {@link IntColumn}s, so an index read from a {@link FilmIndexSnapshot} stays off-heap.
+ */
+public final class SortedIntIndex {
+
+    private final IntColumn values;
+    private final IntColumn order;
+
+    /** Computed on first use; a race only computes the same ranks twice. */
+    private volatile Ranks ranks;
+
+    SortedIntIndex(int[] values) {
+        this(new IntColumn(values), new IntColumn(sortOrdinals(values)));
+    }
+
+    /** Index over an already sorted order, which must be ordered by value and, for equal values, by ordinal. */
+    SortedIntIndex(int[] values, int[] order) {
+        this(new IntColumn(values), new IntColumn(order));
+    }
+
+    SortedIntIndex(IntColumn values, IntColumn order) {
+        this.values = values;
+        this.order = order;
+    }
+
+    private static int[] sortOrdinals(int[] values) {
+        final long[] keys = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = ((long) values[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] order = new int[values.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Index over the values of an updated film list, built from this index without sorting again. The updated
+     * ordinals map every ordinal of this index to its ordinal in the updated list, or to a negative number for
+     * a film that was removed or changed; the relative order of the kept films must be unchanged. The added
+     * ordinals are the films of the updated list that are not in this index.
+     */
+    SortedIntIndex update(int[] updatedValues, int[] updatedOrdinals, int[] addedOrdinals) {
+        final int[] added = new int[addedOrdinals.length];
+        final long[] keys = new long[addedOrdinals.length];
+        for (int i = 0; i < addedOrdinals.length; i++) {
+            keys[i] = ((long) updatedValues[addedOrdinals[i]] << 32) | addedOrdinals[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            added[i] = (int) keys[i];
+        }
+
+        final int[] updatedOrder = new int[updatedValues.length];
+        int position = 0;
+        int nextAdded = 0;
+        for (int previousPosition = 0; previousPosition < order.size(); previousPosition++) {
+            final int ordinal = updatedOrdinals[order.get(previousPosition)];
+            if (ordinal < 0) {
+                continue;
+            }
+            while (nextAdded < added.length && isBefore(updatedValues, added[nextAdded], ordinal)) {
+                updatedOrder[position++] = added[nextAdded++];
+            }
+            updatedOrder[position++] = ordinal;
+        }
+        while (nextAdded < added.length) {
+            updatedOrder[position++] = added[nextAdded++];
+        }
+        return new SortedIntIndex(updatedValues, updatedOrder);
+    }
+
+    private static boolean isBefore(int[] values, int firstOrdinal, int secondOrdinal) {
+        return values[firstOrdinal] < values[secondOrdinal]
+                || (values[firstOrdinal] == values[secondOrdinal] && firstOrdinal < secondOrdinal);
+    }
+
+    public int size() {
+        return order.size();
+    }
+
+    public int valueOf(int ordinal) {
+        return values.get(ordinal);
+    }
+
+    /** Compares two films by their value and, for equal values, by their repository order. */
+    public int compare(int firstOrdinal, int secondOrdinal) {
+        final int result = Integer.compare(values.get(firstOrdinal), values.get(secondOrdinal));
+        return (result != 0) ? result : Integer.compare(firstOrdinal, secondOrdinal);
+    }
+
+    /** Ordinal of the film at the given position of the sorted order. */
+    public int ordinalAt(int position) {
+        return order.get(position);
+    }
+
+    /** First position whose value is greater than or equal to the given value. */
+    public int lowerBound(int value) {
+        int low = 0;
+        int high = order.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (values.get(order.get(middle)) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** First position whose value is greater than the given value. */
+    public int upperBound(int value) {
+        int low = 0;
+        int high = order.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (values.get(order.get(middle)) <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** First position whose film is sorted after a film with the given value and ordinal. */
+    public int positionAfter(int value, int ordinal) {
+        int low = 0;
+        int high = order.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final int current = order.get(middle);
+            if (values.get(current) < value || (values.get(current) == value && current <= ordinal)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int count(int min, int max) {
+        if (min > max) {
+            return 0;
+        }
+        return upperBound(max) - lowerBound(min);
+    }
+
+    /** Position of the value of the film between the distinct values, in ascending order. */
+    public int rankOf(int ordinal) {
+        return getRanks().ranks[ordinal];
+    }
+
+    public int distinctCount() {
+        return getRanks().distinctValues.length;
+    }
+
+    public int distinctValue(int rank) {
+        return getRanks().distinctValues[rank];
+    }
+
+    private Ranks getRanks() {
+        Ranks current = ranks;
+        if (current == null) {
+            current = new Ranks(values, order);
+            ranks = current;
+        }
+        return current;
+    }
+
+    private static final class Ranks {
+
+        private final int[] ranks;
+        private final int[] distinctValues;
+
+        private Ranks(IntColumn values, IntColumn order) {
+            this.ranks = new int[order.size()];
+            final int[] distinct = new int[order.size()];
+            int count = 0;
+            for (int position = 0; position < order.size(); position++) {
+                final int value = values.get(order.get(position));
+                if (count == 0 || distinct[count - 1] != value) {
+                    distinct[count++] = value;
+                }
+                ranks[order.get(position)] = count - 1;
+            }
+            this.distinctValues = Arrays.copyOf(distinct, count);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package de.cyberport.core.index;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Case and diacritic insensitive title lookups. Prefixes are found by a binary search in the films sorted by
+ * normalized title, substrings by intersecting the posting lists of their trigrams, so neither looks at films
+ * whose title cannot match. Substrings shorter than a trigram fall back to checking every title.
+ */
+public final class TitleSearchIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NO_ORDINALS = new int[0];
+
+    private final String[] normalizedTitles;
+    private final int[] prefixOrder;
+    private final String[] sortedTitles;
+    private final Map<Long, int[]> trigramPostings;
+
+    TitleSearchIndex(String[] titles) {
+        this.normalizedTitles = new String[titles.length];
+        int titled = 0;
+        for (int i = 0; i < titles.length; i++) {
+            normalizedTitles[i] = (titles[i] != null) ? normalize(titles[i]).intern() : null;
+            if (normalizedTitles[i] != null) {
+                titled++;
+            }
+        }
+
+        final Integer[] order = new Integer[titled];
+        for (int i = 0, j = 0; i < titles.length; i++) {
+            if (normalizedTitles[i] != null) {
+                order[j++] = i;
+            }
+        }
+        Arrays.sort(order, (first, second) -> normalizedTitles[first].compareTo(normalizedTitles[second]));
+
+        this.prefixOrder = new int[titled];
+        this.sortedTitles = new String[titled];
+        for (int i = 0; i < titled; i++) {
+            prefixOrder[i] = order[i];
+            sortedTitles[i] = normalizedTitles[order[i]];
+        }
+        this.trigramPostings = buildTrigramPostings(normalizedTitles);
+    }
+
+    private static Map<Long, int[]> buildTrigramPostings(String[] normalizedTitles) {
+        final Map<Long, int[]> postings = new HashMap<>();
+        final Map<Long, Integer> sizes = new HashMap<>();
+        for (int ordinal = 0; ordinal < normalizedTitles.length; ordinal++) {
+            final String title = normalizedTitles[ordinal];
+            if (title == null) {
+                continue;
+            }
+
+            for (int i = 0; i + GRAM_LENGTH <= title.length(); i++) {
+                final Long trigram = trigram(title, i);
+                final int size = sizes.getOrDefault(trigram, 0);
+                int[] ordinals = postings.get(trigram);
+                if (size > 0 && ordinals[size - 1] == ordinal) {
+                    continue;
+                }
+                if (ordinals == null || size == ordinals.length) {
+                    ordinals = Arrays.copyOf((ordinals != null) ? ordinals : NO_ORDINALS, Math.max(4, size * 2));
+                    postings.put(trigram, ordinals);
+                }
+                ordinals[size] = ordinal;
+                sizes.put(trigram, size + 1);
+            }
+        }
+
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+        }
+        return postings;
+    }
+
+    private static long trigram(String title, int start) {
+        return ((long) title.charAt(start) << 32) | ((long) title.charAt(start + 1) << 16) | title.charAt(start + 2);
+    }
+
+    /** Lower case form of the title without accents and other combining marks. */
+    public static String normalize(String title) {
+        return COMBINING_MARKS.matcher(Normalizer.normalize(title, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    public String getNormalizedTitle(int ordinal) {
+        return normalizedTitles[ordinal];
+    }
+
+    /** Number of films whose normalized title starts with the given normalized prefix. */
+    public int countByPrefix(String normalizedPrefix) {
+        return prefixEnd(normalizedPrefix) - prefixStart(normalizedPrefix);
+    }
+
+    /** Ordinals of the films whose normalized title starts with the given normalized prefix. */
+    public int[] findByPrefix(String normalizedPrefix) {
+        return Arrays.copyOfRange(prefixOrder, prefixStart(normalizedPrefix), prefixEnd(normalizedPrefix));
+    }
+
+    private int prefixStart(String normalizedPrefix) {
+        int low = 0;
+        int high = sortedTitles.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sortedTitles[middle].compareTo(normalizedPrefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int prefixEnd(String normalizedPrefix) {
+        int low = prefixStart(normalizedPrefix);
+        int high = sortedTitles.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sortedTitles[middle].startsWith(normalizedPrefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Ordinals, in ascending order, of the films whose normalized title contains the given normalized text. */
+    public int[] findBySubstring(String normalizedText) {
+        if (normalizedText.length() < GRAM_LENGTH) {
+            return scan(normalizedText);
+        }
+
+        final int gramCount = normalizedText.length() - GRAM_LENGTH + 1;
+        final int[][] postings = new int[gramCount][];
+        for (int i = 0; i < gramCount; i++) {
+            postings[i] = trigramPostings.get(trigram(normalizedText, i));
+            if (postings[i] == null) {
+                return NO_ORDINALS;
+            }
+        }
+        Arrays.sort(postings, (first, second) -> Integer.compare(first.length, second.length));
+
+        int[] candidates = postings[0];
+        for (int i = 1; i < postings.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, postings[i]);
+        }
+
+        // trigrams may occur in another order or apart from each other, so every candidate is checked
+        final int[] matches = new int[candidates.length];
+        int found = 0;
+        for (int ordinal : candidates) {
+            if (normalizedTitles[ordinal].contains(normalizedText)) {
+                matches[found++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    private int[] scan(String normalizedText) {
+        final int[] matches = new int[normalizedTitles.length];
+        int found = 0;
+        for (int ordinal = 0; ordinal < normalizedTitles.length; ordinal++) {
+            if (normalizedTitles[ordinal] != null && normalizedTitles[ordinal].contains(normalizedText)) {
+                matches[found++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        final int[] intersection = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                intersection[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(intersection, size);
+    }
+}
@@ -0,0 +1,31 @@
+package de.cyberport.core.services;
+
+import de.cyberport.core.dto.SearchDTO;
+import org.apache.sling.api.SlingHttpServletRequest;
+
+import java.util.Collection;
+
+/**
+ * Admission of the requests of the film container servlet before any search work is done, by rate limits per
+ * client and a limit of the requests answered at the same time. Without a registered service every request is
+ * admitted.
+ */
+public interface AdmissionControl {
+
+    /**
+     * Admits or rejects a request for the given searches. An admission must be closed once the request is
+     * answered, so the next request can take its place.
+     */
+    Admission admit(SlingHttpServletRequest req, Collection<SearchDTO> searches);
+
+    interface Admission extends AutoCloseable {
+
+        boolean isAdmitted();
+
+        /** Seconds the client should wait before it sends a rejected request again. */
+        long getRetryAfterSeconds();
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,280 @@
+package de.cyberport.core.services;
+
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.TitleSearchIndex;
+
+import java.util.Arrays;
+
+/**
+ * All the filters of a {@link SearchDTO} fused into one predicate over primitive values.
+ * Bounds on the same property are folded into one inclusive range, e.g. year=2019&minYear=2018
+ * becomes [2019, 2019], and bounds that cannot be met at once make the whole filter empty.
+ */
+public final class CompiledSearchFilter implements SearchFilter {
+
+    private static final int TITLE = 0;
+    private static final int NOMINATIONS = 1;
+    private static final int YEAR = 2;
+    private static final int AWARDS = 3;
+    private static final int BEST_PICTURE = 4;
+    private static final int TITLE_PREFIX = 5;
+    private static final int TITLE_CONTAINS = 6;
+
+    private final String title;
+    private final String titlePrefix;
+    private final String titleContains;
+    private final int minYear;
+    private final int maxYear;
+    private final int minAwards;
+    private final int maxAwards;
+    private final int minNominations;
+    private final int maxNominations;
+    private final boolean bestPictureRestricted;
+    private final boolean bestPicture;
+    private final boolean empty;
+    private final int[] checks;
+
+    private CompiledSearchFilter(SearchDTO searchDTO) {
+        this.title = searchDTO.getTitle();
+        this.titlePrefix = searchDTO.getTitlePrefix();
+        this.titleContains = searchDTO.getTitleContains();
+        this.minYear = max(searchDTO.getYear(), searchDTO.getMinYear(), Integer.MIN_VALUE);
+        this.maxYear = min(searchDTO.getYear(), searchDTO.getMaxYear(), Integer.MAX_VALUE);
+        this.minAwards = max(searchDTO.getMinAwards(), null, Integer.MIN_VALUE);
+        this.maxAwards = min(searchDTO.getMaxAwards(), null, Integer.MAX_VALUE);
+        this.minNominations = max(searchDTO.getNominations(), null, Integer.MIN_VALUE);
+        this.maxNominations = min(searchDTO.getNominations(), null, Integer.MAX_VALUE);
+        this.bestPictureRestricted = searchDTO.isBestPicture() != null;
+        this.bestPicture = bestPictureRestricted && searchDTO.isBestPicture();
+        this.empty = minYear > maxYear || minAwards > maxAwards || minNominations > maxNominations;
+
+        final int[] allChecks = new int[7];
+        int count = 0;
+        if (title != null) {
+            allChecks[count++] = TITLE;
+        }
+        if (titlePrefix != null) {
+            allChecks[count++] = TITLE_PREFIX;
+        }
+        if (isNominationsRestricted()) {
+            allChecks[count++] = NOMINATIONS;
+        }
+        if (isYearRestricted()) {
+            allChecks[count++] = YEAR;
+        }
+        if (isAwardsRestricted()) {
+            allChecks[count++] = AWARDS;
+        }
+        if (bestPictureRestricted) {
+            allChecks[count++] = BEST_PICTURE;
+        }
+        if (titleContains != null) {
+            allChecks[count++] = TITLE_CONTAINS;
+        }
+        this.checks = Arrays.copyOf(allChecks, count);
+    }
+
+    private CompiledSearchFilter(CompiledSearchFilter filter, int[] checks) {
+        this.title = filter.title;
+        this.titlePrefix = filter.titlePrefix;
+        this.titleContains = filter.titleContains;
+        this.minYear = filter.minYear;
+        this.maxYear = filter.maxYear;
+        this.minAwards = filter.minAwards;
+        this.maxAwards = filter.maxAwards;
+        this.minNominations = filter.minNominations;
+        this.maxNominations = filter.maxNominations;
+        this.bestPictureRestricted = filter.bestPictureRestricted;
+        this.bestPicture = filter.bestPicture;
+        this.empty = filter.empty;
+        this.checks = checks;
+    }
+
+    public static CompiledSearchFilter compile(SearchDTO searchDTO) {
+        return new CompiledSearchFilter(searchDTO);
+    }
+
+    /**
+     * Returns the same filter with its checks reordered by the share of films of the index that pass them,
+     * so that most films are rejected by the first check. The exact title always goes first, the substring
+     * check always last, since it is the most expensive one.
+     */
+    public CompiledSearchFilter orderBySelectivity(FilmIndex filmIndex) {
+        final long[] weightedChecks = new long[checks.length];
+        for (int i = 0; i < checks.length; i++) {
+            weightedChecks[i] = ((long) countMatches(filmIndex, checks[i]) << 32) | checks[i];
+        }
+        Arrays.sort(weightedChecks);
+
+        final int[] orderedChecks = new int[checks.length];
+        for (int i = 0; i < weightedChecks.length; i++) {
+            orderedChecks[i] = (int) weightedChecks[i];
+        }
+        return new CompiledSearchFilter(this, orderedChecks);
+    }
+
+    private int countMatches(FilmIndex filmIndex, int check) {
+        switch (check) {
+            case NOMINATIONS:
+                return filmIndex.getNominationsIndex().count(minNominations, maxNominations);
+            case YEAR:
+                return filmIndex.getYearIndex().count(minYear, maxYear);
+            case AWARDS:
+                return filmIndex.getAwardsIndex().count(minAwards, maxAwards);
+            case BEST_PICTURE:
+                final int bestPictures = filmIndex.getBestPictureCount();
+                return bestPicture ? bestPictures : filmIndex.size() - bestPictures;
+            case TITLE_PREFIX:
+                return filmIndex.getTitleSearchIndex().countByPrefix(titlePrefix);
+            case TITLE_CONTAINS:
+                return Integer.MAX_VALUE;
+            default:
+                return 0;
+        }
+    }
+
+    /** True when no film can match, e.g. for minYear > maxYear. */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /** True when every film matches. */
+    public boolean isUnrestricted() {
+        return !empty && checks.length == 0;
+    }
+
+    public String getTitlePrefix() {
+        return titlePrefix;
+    }
+
+    public String getTitleContains() {
+        return titleContains;
+    }
+
+    public boolean isYearRestricted() {
+        return minYear != Integer.MIN_VALUE || maxYear != Integer.MAX_VALUE;
+    }
+
+    public boolean isAwardsRestricted() {
+        return minAwards != Integer.MIN_VALUE || maxAwards != Integer.MAX_VALUE;
+    }
+
+    public boolean isNominationsRestricted() {
+        return minNominations != Integer.MIN_VALUE || maxNominations != Integer.MAX_VALUE;
+    }
+
+    public int getMinYear() {
+        return minYear;
+    }
+
+    public int getMaxYear() {
+        return maxYear;
+    }
+
+    public int getMinAwards() {
+        return minAwards;
+    }
+
+    public int getMaxAwards() {
+        return maxAwards;
+    }
+
+    public int getMinNominations() {
+        return minNominations;
+    }
+
+    public int getMaxNominations() {
+        return maxNominations;
+    }
+
+    @Override
+    public boolean matches(Film film) {
+        if (empty) {
+            return false;
+        }
+
+        return (title == null || title.equals(film.getTitle()))
+                && (titlePrefix == null || matchesNormalized(film.getTitle(), titlePrefix, true))
+                && (titleContains == null || matchesNormalized(film.getTitle(), titleContains, false))
+                && film.getNominations() >= minNominations && film.getNominations() <= maxNominations
+                && film.getYear() >= minYear && film.getYear() <= maxYear
+                && film.getAwards() >= minAwards && film.getAwards() <= maxAwards
+                && (!bestPictureRestricted || film.isBestPicture() == bestPicture);
+    }
+
+    public boolean matches(FilmIndex filmIndex, int ordinal) {
+        if (empty) {
+            return false;
+        }
+
+        for (int check : checks) {
+            switch (check) {
+                case TITLE:
+                    if (!title.equals(filmIndex.getTitle(ordinal))) {
+                        return false;
+                    }
+                    break;
+                case NOMINATIONS:
+                    final int nominations = filmIndex.getNominations(ordinal);
+                    if (nominations < minNominations || nominations > maxNominations) {
+                        return false;
+                    }
+                    break;
+                case YEAR:
+                    final int year = filmIndex.getYear(ordinal);
+                    if (year < minYear || year > maxYear) {
+                        return false;
+                    }
+                    break;
+                case AWARDS:
+                    final int awards = filmIndex.getAwards(ordinal);
+                    if (awards < minAwards || awards > maxAwards) {
+                        return false;
+                    }
+                    break;
+                case TITLE_PREFIX:
+                    final String prefixedTitle = filmIndex.getTitleSearchIndex().getNormalizedTitle(ordinal);
+                    if (prefixedTitle == null || !prefixedTitle.startsWith(titlePrefix)) {
+                        return false;
+                    }
+                    break;
+                case TITLE_CONTAINS:
+                    final String containingTitle = filmIndex.getTitleSearchIndex().getNormalizedTitle(ordinal);
+                    if (containingTitle == null || !containingTitle.contains(titleContains)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (filmIndex.isBestPicture(ordinal) != bestPicture) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesNormalized(String title, String normalizedText, boolean prefix) {
+        if (title == null) {
+            return false;
+        }
+
+        final String normalizedTitle = TitleSearchIndex.normalize(title);
+        return prefix ? normalizedTitle.startsWith(normalizedText) : normalizedTitle.contains(normalizedText);
+    }
+
+    private static int max(Integer first, Integer second, int defaultValue) {
+        if (first == null) {
+            return (second != null) ? second : defaultValue;
+        }
+        return (second != null) ? Math.max(first, second) : first;
+    }
+
+    private static int min(Integer first, Integer second, int defaultValue) {
+        if (first == null) {
+            return (second != null) ? second : defaultValue;
+        }
+        return (second != null) ? Math.min(first, second) : first;
+    }
+}
@@ -0,0 +1,11 @@
+package de.cyberport.core.services;
+
+import de.cyberport.core.index.FilmIndex;
+import org.apache.sling.api.resource.Resource;
+
+public interface FilmIndexService {
+
+    FilmIndex getIndex(Resource rootResource);
+
+    void invalidate(String path);
+}
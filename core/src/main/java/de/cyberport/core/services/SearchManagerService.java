@@ -1,14 +1,40 @@
 package de.cyberport.core.services;
 
 import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.FilmAggregation;
 import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.FilmScore;
+import de.cyberport.core.index.SortOrder;
 import de.cyberport.core.utils.Constants;
 
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.List;
 
 public interface SearchManagerService {
 
     boolean isFilmMatchedToSearchParams(Film film, SearchDTO searchDTO);
 
+    int[] search(FilmIndex filmIndex, SearchDTO searchDTO);
+
+    int[][] searchBatch(FilmIndex filmIndex, List<SearchDTO> searchDTOs);
+
+    int count(FilmIndex filmIndex, SearchDTO searchDTO);
+
+    int getScanSize(FilmIndex filmIndex, SearchDTO searchDTO);
+
+    FilmAggregation aggregate(FilmIndex filmIndex, SearchDTO searchDTO);
+
+    String explain(FilmIndex filmIndex, SearchDTO searchDTO);
+
+    List<String> explainBatch(FilmIndex filmIndex, List<SearchDTO> searchDTOs);
+
+    BitSet findMatchingFilms(FilmIndex filmIndex, SearchDTO searchDTO);
+
+    int[] sortFilms(FilmIndex filmIndex, BitSet films, SortOrder sortOrder, Integer limit);
+
     Comparator<Film> getFilmComparator(Constants.SUPPORTED_SORT_BY sortBy);
+
+    Comparator<Film> getFilmComparator(Constants.SUPPORTED_SORT_BY sortBy, FilmScore filmScore);
 }
@@ -0,0 +1,41 @@
+package de.cyberport.core.services;
+
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.index.SortOrder;
+
+/**
+ * Timings and counters of the requests of the film container servlet, readable through {@link SearchMetricsMBean}.
+ * Without a registered service, or while it is disabled, the servlet measures nothing.
+ */
+public interface SearchMetrics {
+
+    /**
+     * Stages of a request, in the order they run. ADMISSION is the wait for the admission control, QUEUE the wait
+     * for the search executor of an async request; both are only recorded for the requests that waited for them.
+     * CACHE is the lookup in the result cache, only recorded for the requests that looked one up.
+     */
+    enum Stage {
+        PARSE, ADMISSION, INDEX, QUEUE, CACHE, SEARCH, SERIALIZE
+    }
+
+    boolean isEnabled();
+
+    /** Whether the stage durations are sent to the client as a Server-Timing header. */
+    boolean isServerTimingEnabled();
+
+    void recordStage(Stage stage, long nanos);
+
+    void recordRequest(long nanos);
+
+    /** Counts a request for films in the given order, whether it is answered from the cache or not. */
+    void recordSortOrder(SortOrder sortOrder);
+
+    void recordSearch(int scannedFilms, int returnedFilms);
+
+    void recordCacheLookup(boolean hit);
+
+    /** Whether a request of the given duration is kept in the slow request log. */
+    boolean isSlow(long nanos);
+
+    void recordSlowRequest(SlowRequest slowRequest);
+}
@@ -0,0 +1,38 @@
+package de.cyberport.core.services;
+
+/**
+ * Management interface of the {@link SearchMetrics}. Latencies are summarized per stage and for the whole
+ * request as count, mean, 50th, 90th and 99th percentile and maximum in milliseconds.
+ */
+public interface SearchMetricsMBean {
+
+    long getRequestCount();
+
+    double getRequestMeanMillis();
+
+    double getRequestP99Millis();
+
+    String[] getLatencies();
+
+    long getFilmsScanned();
+
+    long getFilmsReturned();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /** Share of the cache lookups that were answered from the cache, 0 before the first lookup. */
+    double getCacheHitRatio();
+
+    /** Number of searches per sort order, most used first. */
+    String[] getSortByUsage();
+
+    /**
+     * The latest requests that took longer than the configured threshold, newest first, as a JSON array with
+     * the normalized query, how it was answered and the duration of every stage.
+     */
+    String getSlowRequests();
+
+    void reset();
+}
@@ -0,0 +1,13 @@
+package de.cyberport.core.services;
+
+public interface SearchResultCache {
+
+    String get(String queryKey);
+
+    void put(String queryKey, String json);
+
+    /** Length of the longest JSON kept under the given query key, negative when none is kept. */
+    int getMaxJsonLength(String queryKey);
+
+    void clear();
+}
@@ -0,0 +1,253 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.services.AdmissionControl;
+import org.apache.commons.lang.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rejects requests early instead of letting crawlers saturate the instance. Every client gets a token bucket,
+ * see {@link TokenBuckets}, and a second, smaller one for the costliest searches: all films without any filter
+ * or limit. Admitted requests then take one of a limited number of slots, waiting a short time in a bounded
+ * queue when all of them are taken. Admission control is off until enabled: clients are told apart by their
+ * remote address, which is the one of the dispatcher or load balancer in most setups, so the client header
+ * and the number of trusted proxies appending to it have to be configured first there.
+ */
+@Component(service = { AdmissionControl.class }, immediate = true)
+@Designate(ocd = AdmissionControlImpl.Config.class)
+public class AdmissionControlImpl implements AdmissionControl {
+
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+    private static final int DEFAULT_BURST = 40;
+    private static final double DEFAULT_COSTLY_REQUESTS_PER_SECOND = 0.5;
+    private static final int DEFAULT_COSTLY_BURST = 5;
+    private static final int DEFAULT_MAX_CLIENTS = 10000;
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+    private static final int DEFAULT_MAX_QUEUED_REQUESTS = 32;
+    private static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 100;
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+    private static final int DEFAULT_TRUSTED_PROXIES = 1;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final char HEADER_VALUE_SEPARATOR = ',';
+
+    @ObjectClassDefinition(name = "Oscars - Admission Control",
+            description = "Rate limits and concurrency limit of the Oscar film container servlet")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled",
+                description = "Whether requests are limited at all. Behind a dispatcher or load balancer, "
+                        + "configure the client header before enabling, or all clients share one limit")
+        boolean enabled() default false;
+
+        @AttributeDefinition(name = "Requests per second",
+                description = "Requests per second of one client, 0 for no limit")
+        double requestsPerSecond() default DEFAULT_REQUESTS_PER_SECOND;
+
+        @AttributeDefinition(name = "Burst", description = "Requests one client may send at once")
+        int burst() default DEFAULT_BURST;
+
+        @AttributeDefinition(name = "Costly requests per second",
+                description = "Requests per second of one client for all films without filters or limit, "
+                        + "0 for no limit")
+        double costlyRequestsPerSecond() default DEFAULT_COSTLY_REQUESTS_PER_SECOND;
+
+        @AttributeDefinition(name = "Costly burst",
+                description = "Requests for all films without filters or limit one client may send at once")
+        int costlyBurst() default DEFAULT_COSTLY_BURST;
+
+        @AttributeDefinition(name = "Client header",
+                description = "Header with the client address, e.g. 'X-Forwarded-For' behind a proxy. "
+                        + "Empty to limit by the remote address, which is the proxy one behind a proxy")
+        String clientHeader() default "";
+
+        @AttributeDefinition(name = "Trusted proxies",
+                description = "Proxies appending to the client header. The client is the address appended by "
+                        + "the outermost of them, as all before it are sent by the client itself")
+        int trustedProxies() default DEFAULT_TRUSTED_PROXIES;
+
+        @AttributeDefinition(name = "Max clients",
+                description = "Number of clients beyond which the idle ones are forgotten")
+        int maxClients() default DEFAULT_MAX_CLIENTS;
+
+        @AttributeDefinition(name = "Max concurrent requests",
+                description = "Requests answered at the same time, 0 for no limit")
+        int maxConcurrentRequests() default DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+        @AttributeDefinition(name = "Max queued requests",
+                description = "Requests waiting for one of the concurrent requests to finish")
+        int maxQueuedRequests() default DEFAULT_MAX_QUEUED_REQUESTS;
+
+        @AttributeDefinition(name = "Queue timeout",
+                description = "Milliseconds a queued request waits before it is rejected")
+        long queueTimeoutMillis() default DEFAULT_QUEUE_TIMEOUT_MILLIS;
+
+        @AttributeDefinition(name = "Retry after",
+                description = "Seconds a client is asked to wait when the concurrency limit is reached")
+        long retryAfterSeconds() default DEFAULT_RETRY_AFTER_SECONDS;
+    }
+
+    private static final Admission ADMITTED = new Permit(null);
+
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+
+    private volatile boolean enabled;
+    private volatile TokenBuckets requestBuckets = TokenBuckets.of(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST,
+            DEFAULT_MAX_CLIENTS);
+    private volatile TokenBuckets costlyBuckets = TokenBuckets.of(DEFAULT_COSTLY_REQUESTS_PER_SECOND,
+            DEFAULT_COSTLY_BURST, DEFAULT_MAX_CLIENTS);
+    private volatile String clientHeader = "";
+    private volatile int trustedProxies = DEFAULT_TRUSTED_PROXIES;
+    private volatile Semaphore slots = new Semaphore(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    private volatile int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+    private volatile long queueTimeoutMillis = DEFAULT_QUEUE_TIMEOUT_MILLIS;
+    private volatile long retryAfterSeconds = DEFAULT_RETRY_AFTER_SECONDS;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        enabled = config.enabled();
+        requestBuckets = TokenBuckets.of(config.requestsPerSecond(), config.burst(), config.maxClients());
+        costlyBuckets = TokenBuckets.of(config.costlyRequestsPerSecond(), config.costlyBurst(), config.maxClients());
+        clientHeader = StringUtils.trimToEmpty(config.clientHeader());
+        trustedProxies = Math.max(1, config.trustedProxies());
+        slots = (config.maxConcurrentRequests() > 0) ? new Semaphore(config.maxConcurrentRequests()) : null;
+        maxQueuedRequests = Math.max(0, config.maxQueuedRequests());
+        queueTimeoutMillis = Math.max(0, config.queueTimeoutMillis());
+        retryAfterSeconds = Math.max(1, config.retryAfterSeconds());
+    }
+
+    @Override
+    public Admission admit(SlingHttpServletRequest req, Collection<SearchDTO> searches) {
+        if (!enabled) {
+            return ADMITTED;
+        }
+
+        final TokenBuckets buckets = isCostly(searches) ? costlyBuckets : requestBuckets;
+        if (buckets != null) {
+            final long waitNanos = buckets.acquire(getClient(req), System.nanoTime());
+            if (waitNanos > 0) {
+                return new Rejection((waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+            }
+        }
+
+        final Semaphore slots = this.slots;
+        if (slots == null) {
+            return ADMITTED;
+        }
+        if (slots.tryAcquire()) {
+            return new Permit(slots);
+        }
+        if (queuedRequests.incrementAndGet() > maxQueuedRequests) {
+            queuedRequests.decrementAndGet();
+            return new Rejection(retryAfterSeconds);
+        }
+        try {
+            if (slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return new Permit(slots);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queuedRequests.decrementAndGet();
+        }
+        return new Rejection(retryAfterSeconds);
+    }
+
+    /** Whether one of the searches returns all the films, unfiltered and unlimited. */
+    static boolean isCostly(Collection<SearchDTO> searches) {
+        for (SearchDTO searchDTO : searches) {
+            if (!searchDTO.isAggregate() && searchDTO.getLimit() == null
+                    && searchDTO.getCompiledSearchFilter().isUnrestricted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The address the outermost trusted proxy appended to the configured header, e.g. the rightmost one of
+     * X-Forwarded-For behind a single proxy. The entries before it are written by the client and could be
+     * changed on every request, so they never name the client. Without the header, or with fewer entries than
+     * trusted proxies, the remote address is the client.
+     */
+    private String getClient(SlingHttpServletRequest req) {
+        final String header = clientHeader.isEmpty() ? null : req.getHeader(clientHeader);
+        if (StringUtils.isNotBlank(header)) {
+            int end = header.length();
+            for (int hop = 1; end >= 0; hop++) {
+                final int separator = header.lastIndexOf(HEADER_VALUE_SEPARATOR, end - 1);
+                if (hop == trustedProxies) {
+                    final String client = header.substring(separator + 1, end).trim();
+                    if (!client.isEmpty()) {
+                        return client;
+                    }
+                    break;
+                }
+                end = separator;
+            }
+        }
+        return StringUtils.defaultString(req.getRemoteAddr());
+    }
+
+    private static final class Permit implements Admission {
+
+        private Semaphore slots;
+
+        private Permit(Semaphore slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public boolean isAdmitted() {
+            return true;
+        }
+
+        @Override
+        public long getRetryAfterSeconds() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            if (slots != null) {
+                slots.release();
+                slots = null;
+            }
+        }
+    }
+
+    private static final class Rejection implements Admission {
+
+        private final long retryAfterSeconds;
+
+        private Rejection(long retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public boolean isAdmitted() {
+            return false;
+        }
+
+        @Override
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
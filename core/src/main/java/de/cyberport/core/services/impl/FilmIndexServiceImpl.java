@@ -0,0 +1,355 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.FilmIndexSnapshot;
+import de.cyberport.core.index.FilmScore;
+import de.cyberport.core.services.FilmIndexService;
+import org.apache.commons.lang.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one {@link FilmIndex} per film container path. The index is built on the first request
+ * for the container and dropped as soon as the container itself changes.
+ *
+ * Changes of single films are collected per container and applied by {@link FilmIndex#update} once the container
+ * has been quiet for the update delay, so a bulk import is applied in one go instead of once per event. The update
+ * creates a new index and swaps it in; requests still reading the previous index keep a consistent view.
+ *
+ * With snapshots enabled, every built index is also written to a {@link FilmIndexSnapshot} file, and all the
+ * snapshot files are mapped on activation. The first request for a container after a restart then only
+ * compares the content stamp of the container with the one of its snapshot and, when they match, serves
+ * the mapped index instead of reading every film from the repository. Snapshots scored with other weights than
+ * the configured ones are not used. The content stamp needs a modification time on every film, which most
+ * imported content lacks; snapshots are therefore off by default, else they would only be written, never used.
+ */
+@Component(service = { FilmIndexService.class, ResourceChangeListener.class }, immediate = true,
+        property = {
+                ResourceChangeListener.PATHS + "=/content",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.CHANGES + "=REMOVED"
+        })
+@Designate(ocd = FilmIndexServiceImpl.Config.class)
+public class FilmIndexServiceImpl implements FilmIndexService, ResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilmIndexServiceImpl.class);
+
+    private static final String SNAPSHOT_DIRECTORY = "film-index-snapshots";
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    private static final long DEFAULT_UPDATE_DELAY = 200;
+    private static final long DEFAULT_MAX_UPDATE_DELAY = 2000;
+
+    private static final long HASH_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    @ObjectClassDefinition(name = "Oscars - Film Index Service",
+            description = "In-memory film indexes and their snapshot files")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Snapshots enabled",
+                description = "Write every film index to a memory mapped snapshot file, which is used after "
+                        + "a restart as long as the film container did not change. Only containers whose films "
+                        + "all have a jcr:lastModified property are snapshotted")
+        boolean snapshotsEnabled() default false;
+
+        @AttributeDefinition(name = "Snapshot directory",
+                description = "Directory of the snapshot files, empty for the data area of the bundle")
+        String snapshotDirectory() default "";
+
+        @AttributeDefinition(name = "Update delay",
+                description = "Milliseconds without further film changes before the changes are applied to the "
+                        + "index of their container; requests in between are served from the previous index")
+        long updateDelay() default DEFAULT_UPDATE_DELAY;
+
+        @AttributeDefinition(name = "Maximum update delay",
+                description = "Milliseconds after the first film change when the changes are applied even though "
+                        + "the container keeps changing")
+        long maxUpdateDelay() default DEFAULT_MAX_UPDATE_DELAY;
+
+        @AttributeDefinition(name = "Score weight of awards",
+                description = "Points of the popularity score, used by sortBy=score, per award of a film")
+        int scoreAwardsWeight() default 10;
+
+        @AttributeDefinition(name = "Score weight of nominations",
+                description = "Points of the popularity score per nomination of a film")
+        int scoreNominationsWeight() default 2;
+
+        @AttributeDefinition(name = "Score weight of best picture",
+                description = "Points of the popularity score for the best picture award")
+        int scoreBestPictureWeight() default 20;
+
+        @AttributeDefinition(name = "Score weight of references",
+                description = "Points of the popularity score per thousand references to a film")
+        int scoreReferencesWeight() default 1;
+    }
+
+    private final ConcurrentMap<String, FilmIndex> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    /** Films changed since the index of their container was built or updated, per container path. */
+    private final ConcurrentMap<String, PendingChanges> pendingChanges = new ConcurrentHashMap<>();
+
+    private volatile long updateDelay = DEFAULT_UPDATE_DELAY;
+    private volatile long maxUpdateDelay = DEFAULT_MAX_UPDATE_DELAY;
+    private volatile FilmScore filmScore = FilmScore.DEFAULT;
+
+    /** Mapped snapshots that have not been checked against their container yet. */
+    private final ConcurrentMap<String, FilmIndexSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private volatile Path snapshotDirectory;
+    private volatile ExecutorService snapshotWriter;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) {
+        updateDelay = Math.max(0, config.updateDelay());
+        maxUpdateDelay = Math.max(updateDelay, config.maxUpdateDelay());
+        filmScore = FilmScore.of(Math.max(0, config.scoreAwardsWeight()), Math.max(0, config.scoreNominationsWeight()),
+                Math.max(0, config.scoreBestPictureWeight()), Math.max(0, config.scoreReferencesWeight()));
+        if (!config.snapshotsEnabled()) {
+            return;
+        }
+
+        final Path directory = StringUtils.isNotBlank(config.snapshotDirectory())
+                ? Paths.get(config.snapshotDirectory()) : bundleContext.getDataFile(SNAPSHOT_DIRECTORY).toPath();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            LOG.warn("Film index snapshots are disabled, {} cannot be created", directory, ex);
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SNAPSHOT_EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    final FilmIndexSnapshot snapshot = FilmIndexSnapshot.map(file);
+                    snapshots.put(snapshot.getPath(), snapshot);
+                } catch (IOException ex) {
+                    // snapshots of an older format are written anew once their container is requested
+                    LOG.info("Ignoring film index snapshot {}: {}", file, ex.getMessage());
+                }
+            }
+        } catch (IOException ex) {
+            LOG.warn("Film index snapshots in {} cannot be listed", directory, ex);
+        }
+
+        snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "film-index-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotDirectory = directory;
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        snapshotDirectory = null;
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+            snapshotWriter = null;
+        }
+        snapshots.clear();
+    }
+
+    public FilmIndex getIndex(Resource rootResource) {
+        if (rootResource == null) {
+            return null;
+        }
+
+        final String path = rootResource.getPath();
+        FilmIndex index = indexes.get(path);
+        if (index != null) {
+            return hasDueChanges(path) ? updateIndex(rootResource, index) : index;
+        }
+
+        // an index built while a change came in may already be stale, so it is used only for this request
+        final long modificationStamp = modificationCount.get();
+        pendingChanges.remove(path);
+        final long contentStamp = getContentStamp(rootResource);
+        final boolean snapshotsEnabled = contentStamp != FilmIndexSnapshot.UNKNOWN_CONTENT_STAMP;
+        final FilmIndexSnapshot snapshot = snapshots.remove(path);
+        final FilmScore score = filmScore;
+        final boolean fromSnapshot = snapshotsEnabled && snapshot != null
+                && snapshot.getContentStamp() == contentStamp && snapshot.getFilmIndex().getFilmScore().equals(score);
+        index = fromSnapshot ? snapshot.getFilmIndex() : FilmIndex.build(rootResource, score);
+        if (modificationStamp == modificationCount.get()) {
+            FilmIndex existing = indexes.putIfAbsent(path, index);
+            if (existing != null) {
+                return existing;
+            }
+            if (snapshotsEnabled && !fromSnapshot && index != null) {
+                writeSnapshot(index, contentStamp);
+            }
+        }
+
+        return index;
+    }
+
+    private boolean hasDueChanges(String path) {
+        final PendingChanges pending = pendingChanges.get(path);
+        return pending != null && pending.isDue(System.nanoTime(), updateDelay, maxUpdateDelay);
+    }
+
+    /**
+     * Applies the pending film changes of the container to a copy of its index. Changes coming in meanwhile
+     * are collected anew and applied by a later request, which adapts those films again.
+     */
+    private FilmIndex updateIndex(Resource rootResource, FilmIndex index) {
+        final PendingChanges pending = pendingChanges.remove(rootResource.getPath());
+        if (pending == null) {
+            // another request is applying them
+            return index;
+        }
+
+        // taken before the update, so a snapshot never claims changes that missed the index
+        final long contentStamp = getContentStamp(rootResource);
+        final FilmIndex updated = index.update(rootResource, pending.names);
+        if (indexes.replace(rootResource.getPath(), index, updated)
+                && contentStamp != FilmIndexSnapshot.UNKNOWN_CONTENT_STAMP) {
+            writeSnapshot(updated, contentStamp);
+        }
+        return updated;
+    }
+
+    private long getContentStamp(Resource rootResource) {
+        return (snapshotDirectory != null)
+                ? FilmIndexSnapshot.contentStampOf(rootResource) : FilmIndexSnapshot.UNKNOWN_CONTENT_STAMP;
+    }
+
+    private void writeSnapshot(FilmIndex index, long contentStamp) {
+        final Path directory = snapshotDirectory;
+        final ExecutorService writer = snapshotWriter;
+        if (directory == null || writer == null) {
+            return;
+        }
+
+        final Path file = directory.resolve(getSnapshotFileName(index.getPath()));
+        try {
+            writer.execute(() -> {
+                try {
+                    FilmIndexSnapshot.write(index, contentStamp, file);
+                } catch (IOException ex) {
+                    LOG.warn("Film index snapshot of {} cannot be written", index.getPath(), ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // deactivated in the meantime
+        }
+    }
+
+    private static String getSnapshotFileName(String path) {
+        long hash = HASH_OFFSET_BASIS;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * HASH_PRIME;
+        }
+        return Long.toHexString(hash) + SNAPSHOT_EXTENSION;
+    }
+
+    public void invalidate(String path) {
+        modificationCount.incrementAndGet();
+
+        for (String indexedPath : indexes.keySet()) {
+            if (isAffected(indexedPath, path)) {
+                indexes.remove(indexedPath);
+                pendingChanges.remove(indexedPath);
+            }
+        }
+        invalidateSnapshots(path);
+    }
+
+    private void invalidateSnapshots(String path) {
+        for (String snapshotPath : snapshots.keySet()) {
+            if (isAffected(snapshotPath, path)) {
+                snapshots.remove(snapshotPath);
+            }
+        }
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        final long now = System.nanoTime();
+        for (ResourceChange change : changes) {
+            final String path = change.getPath();
+            modificationCount.incrementAndGet();
+
+            for (String indexedPath : indexes.keySet()) {
+                if (path.startsWith(indexedPath + "/")) {
+                    // a film or a node below it, which is applied by adapting the film again
+                    final int nameEnd = path.indexOf('/', indexedPath.length() + 1);
+                    final String name = path.substring(indexedPath.length() + 1,
+                            (nameEnd >= 0) ? nameEnd : path.length());
+                    pendingChanges.compute(indexedPath, (key, pending) -> {
+                        final PendingChanges changed = (pending != null) ? pending : new PendingChanges(now);
+                        changed.add(name, now);
+                        return changed;
+                    });
+                } else if (isAffected(indexedPath, path)) {
+                    indexes.remove(indexedPath);
+                    pendingChanges.remove(indexedPath);
+                }
+            }
+            invalidateSnapshots(path);
+        }
+    }
+
+    private static boolean isAffected(String indexedPath, String changedPath) {
+        return indexedPath.equals(changedPath)
+                || changedPath.startsWith(indexedPath + "/")
+                || indexedPath.startsWith(changedPath + "/");
+    }
+
+    /**
+     * Names of the changed films of one container. They are only added to within {@link ConcurrentMap#compute},
+     * so once the changes have been removed from the map, nothing is added to them any more.
+     */
+    private static final class PendingChanges {
+
+        private final Set<String> names = new HashSet<>();
+        private final long firstChange;
+        private volatile long lastChange;
+
+        private PendingChanges(long now) {
+            this.firstChange = now;
+            this.lastChange = now;
+        }
+
+        private void add(String name, long now) {
+            names.add(name);
+            lastChange = now;
+        }
+
+        private boolean isDue(long now, long delay, long maxDelay) {
+            return now - lastChange >= TimeUnit.MILLISECONDS.toNanos(delay)
+                    || now - firstChange >= TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        }
+    }
+}
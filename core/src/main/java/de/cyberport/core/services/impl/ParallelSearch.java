@@ -0,0 +1,129 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.index.BoundedOrdinalHeap;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.SortedIntIndex;
+import de.cyberport.core.services.CompiledSearchFilter;
+
+import java.util.BitSet;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join tasks that split a {@link ScanRange} into chunks, filter every chunk and merge the partial results.
+ * Since the sort order is total (equal values are ordered by ordinal), the merged result does not depend on
+ * how the range was split or in which order the chunks finished.
+ */
+final class ParallelSearch {
+
+    private ParallelSearch() {
+    }
+
+    /** Collects the matching films of a range into a BitSet. */
+    static final class MatchingFilmsTask extends RecursiveTask<BitSet> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FilmIndex filmIndex;
+        private final CompiledSearchFilter filter;
+        private final ScanRange scanRange;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        MatchingFilmsTask(FilmIndex filmIndex, CompiledSearchFilter filter, ScanRange scanRange, int from, int to,
+                int chunkSize) {
+            this.filmIndex = filmIndex;
+            this.filter = filter;
+            this.scanRange = scanRange;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected BitSet compute() {
+            if (to - from > chunkSize) {
+                final int middle = (from + to) >>> 1;
+                final MatchingFilmsTask left = new MatchingFilmsTask(filmIndex, filter, scanRange, from, middle,
+                        chunkSize);
+                left.fork();
+                final BitSet matches = new MatchingFilmsTask(filmIndex, filter, scanRange, middle, to, chunkSize)
+                        .compute();
+                matches.or(left.join());
+                return matches;
+            }
+
+            final BitSet matches = new BitSet(filmIndex.size());
+            for (int position = from; position < to; position++) {
+                final int ordinal = scanRange.ordinalAt(position);
+                if (filter.matches(filmIndex, ordinal)) {
+                    matches.set(ordinal);
+                }
+            }
+            return matches;
+        }
+    }
+
+    /** Collects the first {@code limit} matching films of a range in sort order. */
+    static final class TopFilmsTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FilmIndex filmIndex;
+        private final CompiledSearchFilter filter;
+        private final ScanRange scanRange;
+        private final SortedIntIndex sortIndex;
+        private final int limit;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        TopFilmsTask(FilmIndex filmIndex, CompiledSearchFilter filter, ScanRange scanRange, SortedIntIndex sortIndex,
+                int limit, int from, int to, int chunkSize) {
+            this.filmIndex = filmIndex;
+            this.filter = filter;
+            this.scanRange = scanRange;
+            this.sortIndex = sortIndex;
+            this.limit = limit;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > chunkSize) {
+                final int middle = (from + to) >>> 1;
+                final TopFilmsTask left = new TopFilmsTask(filmIndex, filter, scanRange, sortIndex, limit, from,
+                        middle, chunkSize);
+                left.fork();
+                final int[] right = new TopFilmsTask(filmIndex, filter, scanRange, sortIndex, limit, middle, to,
+                        chunkSize).compute();
+                return merge(left.join(), right);
+            }
+
+            final BoundedOrdinalHeap heap = new BoundedOrdinalHeap(sortIndex, Math.min(limit, to - from));
+            for (int position = from; position < to; position++) {
+                final int ordinal = scanRange.ordinalAt(position);
+                if (filter.matches(filmIndex, ordinal)) {
+                    heap.offer(ordinal);
+                }
+            }
+            return heap.drainSorted();
+        }
+
+        private int[] merge(int[] first, int[] second) {
+            final int[] merged = new int[Math.min(limit, first.length + second.length)];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < merged.length; k++) {
+                if (j >= second.length || (i < first.length && sortIndex.compare(first[i], second[j]) < 0)) {
+                    merged[k] = first[i++];
+                } else {
+                    merged[k] = second[j++];
+                }
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.SortedIntIndex;
+import de.cyberport.core.services.CompiledSearchFilter;
+
+/**
+ * The films that have to be checked for a search: the narrowest slice of a sorted index that the range filters
+ * allow, the films found by a title lookup, or all the films of the index when there is no such filter.
+ */
+final class ScanRange {
+
+    private final String source;
+    private final SortedIntIndex index;
+    private final int[] ordinals;
+    private final int from;
+    private final int to;
+
+    private ScanRange(String source, SortedIntIndex index, int from, int to) {
+        this.source = source;
+        this.index = index;
+        this.ordinals = null;
+        this.from = from;
+        this.to = to;
+    }
+
+    private ScanRange(String source, int[] ordinals) {
+        this.source = source;
+        this.index = null;
+        this.ordinals = ordinals;
+        this.from = 0;
+        this.to = ordinals.length;
+    }
+
+    static ScanRange of(FilmIndex filmIndex, CompiledSearchFilter filter) {
+        ScanRange scanRange = new ScanRange("all films", null, 0, filmIndex.size());
+        if (filter.getTitlePrefix() != null) {
+            scanRange = new ScanRange("title prefix lookup",
+                    filmIndex.getTitleSearchIndex().findByPrefix(filter.getTitlePrefix()));
+        } else if (filter.getTitleContains() != null) {
+            scanRange = new ScanRange("title substring lookup",
+                    filmIndex.getTitleSearchIndex().findBySubstring(filter.getTitleContains()));
+        }
+        if (filter.isYearRestricted()) {
+            scanRange = narrowest(scanRange, "year index", filmIndex.getYearIndex(), filter.getMinYear(),
+                    filter.getMaxYear());
+        }
+        if (filter.isAwardsRestricted()) {
+            scanRange = narrowest(scanRange, "awards index", filmIndex.getAwardsIndex(), filter.getMinAwards(),
+                    filter.getMaxAwards());
+        }
+        if (filter.isNominationsRestricted()) {
+            scanRange = narrowest(scanRange, "nominations index", filmIndex.getNominationsIndex(),
+                    filter.getMinNominations(), filter.getMaxNominations());
+        }
+        return scanRange;
+    }
+
+    private static ScanRange narrowest(ScanRange scanRange, String source, SortedIntIndex index, int min, int max) {
+        final ScanRange candidate = new ScanRange(source, index, index.lowerBound(min), index.upperBound(max));
+        return (candidate.size() < scanRange.size()) ? candidate : scanRange;
+    }
+
+    int getFrom() {
+        return from;
+    }
+
+    int getTo() {
+        return to;
+    }
+
+    int size() {
+        return Math.max(0, to - from);
+    }
+
+    /** Where the films come from and how many they are, e.g. "year index (4210 films)". */
+    String describe() {
+        return source + " (" + size() + " films)";
+    }
+
+    int ordinalAt(int position) {
+        if (index != null) {
+            return index.ordinalAt(position);
+        }
+        return (ordinals != null) ? ordinals[position] : position;
+    }
+}
@@ -1,38 +1,477 @@
 package de.cyberport.core.services.impl;
 
 import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.FilmAggregation;
 import de.cyberport.core.dto.SearchDTO;
-import de.cyberport.core.services.SearchFilter;
+import de.cyberport.core.index.BoundedOrdinalHeap;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.FilmScore;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.index.SortedIntIndex;
+import de.cyberport.core.services.CompiledSearchFilter;
 import de.cyberport.core.services.SearchManagerService;
 import de.cyberport.core.utils.Constants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 @Component(service = { SearchManagerService.class }, immediate = true)
+@Designate(ocd = SearchManagerServiceImpl.Config.class)
 public class SearchManagerServiceImpl implements SearchManagerService {
 
+    /** Unlimited results larger than 1/16 of the container are read off the sorted index instead of a heap. */
+    private static final int FULL_SCAN_SELECTIVITY = 16;
+
+    private static final Comparator<Film> AWARDS_ORDER = Comparator.comparingInt(Film::getAwards);
+    private static final Comparator<Film> NOMINATIONS_ORDER = Comparator.comparingInt(Film::getNominations);
+    private static final Comparator<Film> YEAR_ORDER = Comparator.comparingInt(Film::getYear);
+    private static final Comparator<Film> REFERENCES_ORDER = Comparator.comparingInt(Film::getNumberOfReferences);
+    private static final Comparator<Film> TITLE_ORDER = Comparator.comparing(Film::getTitle);
+
+    private static final int DECADE_LENGTH = 10;
+
+    private static final int MIN_CHUNK_SIZE = 16384;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    @ObjectClassDefinition(name = "Oscars - Search Manager Service",
+            description = "Filtering and sorting of the films of a film container")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Parallel threshold",
+                description = "Minimum number of films to scan before a search is split over the search pool")
+        int parallelThreshold() default 200000;
+
+        @AttributeDefinition(name = "Parallelism",
+                description = "Threads of the search pool, 0 for the number of processors. "
+                        + "The pool is never shared with the common fork/join pool.")
+        int parallelism() default 0;
+    }
+
+    private ForkJoinPool searchPool;
+    private int parallelThreshold;
+
+    @Activate
+    protected void activate(Config config) {
+        final int parallelism = (config.parallelism() > 0)
+                ? config.parallelism() : Runtime.getRuntime().availableProcessors();
+        parallelThreshold = config.parallelThreshold();
+        searchPool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (searchPool != null) {
+            searchPool.shutdown();
+            searchPool = null;
+        }
+    }
+
     public boolean isFilmMatchedToSearchParams(Film film, SearchDTO searchDTO) {
-        Collection<SearchFilter> searchFilterList = searchDTO.getSearchFilters();
-        for (SearchFilter filter : searchFilterList) {
-            if (!filter.matches(film))
-                return false;
+        return searchDTO.getCompiledSearchFilter().matches(film);
+    }
+
+    /**
+     * Scans only the smallest slice of the sorted indexes that the range filters allow, or the films found by
+     * a title lookup, and checks every film of it against the compiled filter, whose checks are ordered by
+     * selectivity. Contradicting filters return an empty result without looking at any film.
+     */
+    public BitSet findMatchingFilms(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        if (filter.isEmpty()) {
+            return new BitSet(filmIndex.size());
+        }
+
+        return findMatchingFilms(filmIndex, filter, ScanRange.of(filmIndex, filter));
+    }
+
+
+    private BitSet findMatchingFilms(FilmIndex filmIndex, CompiledSearchFilter filter, ScanRange scanRange) {
+        final BitSet matches = new BitSet(filmIndex.size());
+        final CompiledSearchFilter orderedFilter = filter.orderBySelectivity(filmIndex);
+        for (int position = scanRange.getFrom(); position < scanRange.getTo(); position++) {
+            final int ordinal = scanRange.ordinalAt(position);
+            if (orderedFilter.matches(filmIndex, ordinal)) {
+                matches.set(ordinal);
+            }
+        }
+
+        return matches;
+    }
+
+    /** Number of films a search checks against its filter, the size of the slice of the index it scans. */
+    public int getScanSize(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        return filter.isEmpty() ? 0 : ScanRange.of(filmIndex, filter).size();
+    }
+
+    /**
+     * Returns the ordinals of the matching films in the requested order, cut to the limit when there is one.
+     * Searches scanning at least the configured threshold of films are split into chunks that are filtered
+     * (and cut to the limit) on the search pool and merged afterwards, with the same result as the sequential
+     * search.
+     */
+    public int[] search(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        if (searchDTO.isPaged()) {
+            return searchPage(filmIndex, searchDTO);
+        }
+
+        final ForkJoinPool pool = searchPool;
+        if (filter.isEmpty() || pool == null) {
+            return sortFilms(filmIndex, findMatchingFilms(filmIndex, searchDTO), searchDTO.getSortOrder(),
+                    searchDTO.getLimit());
+        }
+
+        final ScanRange scanRange = ScanRange.of(filmIndex, filter);
+        if (scanRange.size() < parallelThreshold) {
+            return sortFilms(filmIndex, findMatchingFilms(filmIndex, filter, scanRange), searchDTO.getSortOrder(),
+                    searchDTO.getLimit());
+        }
+
+        final CompiledSearchFilter orderedFilter = filter.orderBySelectivity(filmIndex);
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, scanRange.size() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        if (searchDTO.getLimit() != null) {
+            return pool.invoke(new ParallelSearch.TopFilmsTask(filmIndex, orderedFilter, scanRange,
+                    filmIndex.getSortIndex(searchDTO.getSortOrder()), searchDTO.getLimit(), scanRange.getFrom(),
+                    scanRange.getTo(), chunkSize));
+        }
+
+        final BitSet matches = pool.invoke(new ParallelSearch.MatchingFilmsTask(filmIndex, orderedFilter, scanRange,
+                scanRange.getFrom(), scanRange.getTo(), chunkSize));
+        return sortFilms(filmIndex, matches, searchDTO.getSortOrder(), null);
+    }
+
+    /**
+     * Returns the same results as {@link #search(FilmIndex, SearchDTO)} for every search of the batch.
+     * Searches that scan a large share of the index are evaluated together in one pass over the films, each
+     * into its own bounded heap, or BitSet when unlimited, so the columns are read once for all of them.
+     * Searches with a narrow scan range and paged searches are cheaper on their own and run separately.
+     */
+    public int[][] searchBatch(FilmIndex filmIndex, List<SearchDTO> searchDTOs) {
+        final int[][] results = new int[searchDTOs.size()][];
+        final List<Integer> sharedSearches = new ArrayList<>();
+        for (int i = 0; i < searchDTOs.size(); i++) {
+            if (!isSharedInBatch(filmIndex, searchDTOs.get(i))) {
+                results[i] = search(filmIndex, searchDTOs.get(i));
+            } else {
+                sharedSearches.add(i);
+            }
+        }
+        if (sharedSearches.size() == 1) {
+            results[sharedSearches.get(0)] = search(filmIndex, searchDTOs.get(sharedSearches.get(0)));
+        }
+        if (sharedSearches.size() <= 1) {
+            return results;
+        }
+
+        final int shared = sharedSearches.size();
+        final CompiledSearchFilter[] filters = new CompiledSearchFilter[shared];
+        final BoundedOrdinalHeap[] heaps = new BoundedOrdinalHeap[shared];
+        final BitSet[] matches = new BitSet[shared];
+        for (int i = 0; i < shared; i++) {
+            final SearchDTO searchDTO = searchDTOs.get(sharedSearches.get(i));
+            filters[i] = searchDTO.getCompiledSearchFilter().orderBySelectivity(filmIndex);
+            if (searchDTO.getLimit() != null) {
+                heaps[i] = new BoundedOrdinalHeap(filmIndex.getSortIndex(searchDTO.getSortOrder()),
+                        Math.min(searchDTO.getLimit(), filmIndex.size()));
+            } else {
+                matches[i] = new BitSet(filmIndex.size());
+            }
+        }
+
+        for (int ordinal = 0; ordinal < filmIndex.size(); ordinal++) {
+            for (int i = 0; i < shared; i++) {
+                if (filters[i].matches(filmIndex, ordinal)) {
+                    if (heaps[i] != null) {
+                        heaps[i].offer(ordinal);
+                    } else {
+                        matches[i].set(ordinal);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < shared; i++) {
+            results[sharedSearches.get(i)] = (heaps[i] != null) ? heaps[i].drainSorted()
+                    : sortFilms(filmIndex, matches[i], searchDTOs.get(sharedSearches.get(i)).getSortOrder(), null);
+        }
+        return results;
+    }
+
+    private static boolean isSharedInBatch(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        return !searchDTO.isPaged() && !searchDTO.isAggregate() && !filter.isEmpty()
+                && ScanRange.of(filmIndex, filter).size() >= filmIndex.size() / FULL_SCAN_SELECTIVITY;
+    }
+
+    /**
+     * Describes how {@link #search(FilmIndex, SearchDTO)} or {@link #aggregate(FilmIndex, SearchDTO)} answer
+     * the search, e.g. "year index (4210 films), sequential". The branches are the same as in the searches,
+     * but no film is looked at.
+     */
+    public String explain(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        if (filter.isEmpty()) {
+            return "contradicting filter, no scan";
+        }
+
+        final ScanRange scanRange = ScanRange.of(filmIndex, filter);
+        if (searchDTO.isAggregate()) {
+            return scanRange.describe() + ", aggregate";
+        }
+        if (searchDTO.isPaged()) {
+            final int start = (searchDTO.getCursor() != null) ? searchDTO.getCursor().seek(filmIndex) : 0;
+            final Integer limit = searchDTO.getLimit();
+            if (start >= filmIndex.size() || (limit != null && limit == 0)) {
+                return "empty page, no scan";
+            }
+            if (limit != null && scanRange.size() >= (filmIndex.size() - start) / FULL_SCAN_SELECTIVITY) {
+                return "sorted index walk from position " + start + ", page";
+            }
+            return scanRange.describe() + ", sorted page";
+        }
+
+        final ForkJoinPool pool = searchPool;
+        if (pool == null || scanRange.size() < parallelThreshold) {
+            return scanRange.describe() + ", sequential";
+        }
+        return scanRange.describe() + ((searchDTO.getLimit() != null) ? ", parallel top films" : ", parallel")
+                + " on " + pool.getParallelism() + " threads";
+    }
+
+    /**
+     * Describes every search of the batch like {@link #explain(FilmIndex, SearchDTO)}, or as shared scan when
+     * {@link #searchBatch(FilmIndex, List)} evaluates it together with others.
+     */
+    public List<String> explainBatch(FilmIndex filmIndex, List<SearchDTO> searchDTOs) {
+        int sharedSearches = 0;
+        for (SearchDTO searchDTO : searchDTOs) {
+            if (isSharedInBatch(filmIndex, searchDTO)) {
+                sharedSearches++;
+            }
+        }
+
+        final List<String> plans = new ArrayList<>(searchDTOs.size());
+        for (SearchDTO searchDTO : searchDTOs) {
+            plans.add((sharedSearches > 1 && isSharedInBatch(filmIndex, searchDTO))
+                    ? "shared scan of all films (" + filmIndex.size() + " films) for " + sharedSearches + " searches"
+                    : explain(filmIndex, searchDTO));
+        }
+        return plans;
+    }
+
+    /**
+     * Returns the page of the sorted matching films that starts after the cursor and skips the offset.
+     * When the filter keeps a large share of the films, the sorted index is walked from the cursor position
+     * until the page is full, so neither sorting nor skipped films cost more than a filter check. Otherwise
+     * only the matching films behind the cursor are sorted, cut to offset plus limit.
+     */
+    private int[] searchPage(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        final SortedIntIndex sortIndex = filmIndex.getSortIndex(searchDTO.getSortOrder());
+        final int start = (searchDTO.getCursor() != null) ? searchDTO.getCursor().seek(filmIndex) : 0;
+        final int offset = (searchDTO.getOffset() != null) ? searchDTO.getOffset() : 0;
+        final Integer limit = searchDTO.getLimit();
+        if (filter.isEmpty() || start >= filmIndex.size() || (limit != null && limit == 0)) {
+            return new int[0];
+        }
+
+        final int remaining = filmIndex.size() - start;
+        final ScanRange scanRange = ScanRange.of(filmIndex, filter);
+        if (limit != null && scanRange.size() >= remaining / FULL_SCAN_SELECTIVITY) {
+            final CompiledSearchFilter orderedFilter = filter.orderBySelectivity(filmIndex);
+            final int[] page = new int[Math.min(limit, remaining)];
+            int skipped = 0;
+            int found = 0;
+            for (int position = start; position < filmIndex.size() && found < page.length; position++) {
+                final int ordinal = sortIndex.ordinalAt(position);
+                if (orderedFilter.matches(filmIndex, ordinal)) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        page[found++] = ordinal;
+                    }
+                }
+            }
+            return (found == page.length) ? page : Arrays.copyOf(page, found);
         }
 
-        return true;
+        final BitSet matches = findMatchingFilms(filmIndex, filter, scanRange);
+        if (start > 0) {
+            final int lastBeforePage = sortIndex.ordinalAt(start - 1);
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                if (sortIndex.compare(ordinal, lastBeforePage) <= 0) {
+                    matches.clear(ordinal);
+                }
+            }
+        }
+
+        final Integer sortLimit = (limit != null) ? (int) Math.min((long) offset + limit, Integer.MAX_VALUE) : null;
+        final int[] sorted = sortFilms(filmIndex, matches, searchDTO.getSortOrder(), sortLimit);
+        return Arrays.copyOfRange(sorted, Math.min(offset, sorted.length), sorted.length);
+    }
+
+    /** Number of all the matching films, no matter which page of them is requested. */
+    public int count(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        if (filter.isUnrestricted()) {
+            return filmIndex.size();
+        }
+        return findMatchingFilms(filmIndex, searchDTO).cardinality();
+    }
+
+    /**
+     * Counts the requested facets of the matching films in one pass over the columns of the index. Year,
+     * awards and nominations are counted per rank of the value in its sorted index, so every histogram is
+     * an int array as long as the number of distinct values and already in ascending order. Decades are
+     * folded from the years afterwards.
+     */
+    public FilmAggregation aggregate(FilmIndex filmIndex, SearchDTO searchDTO) {
+        final CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+        final EnumSet<Constants.SUPPORTED_AGGREGATE> facets = searchDTO.getAggregations();
+        final SortedIntIndex yearIndex = filmIndex.getYearIndex();
+        final SortedIntIndex awardsIndex = filmIndex.getAwardsIndex();
+        final SortedIntIndex nominationsIndex = filmIndex.getNominationsIndex();
+        final boolean countYears = facets.contains(Constants.SUPPORTED_AGGREGATE.YEAR)
+                || facets.contains(Constants.SUPPORTED_AGGREGATE.DECADE);
+        final int[] yearCounts = countYears ? new int[yearIndex.distinctCount()] : null;
+        final int[] awardsCounts = facets.contains(Constants.SUPPORTED_AGGREGATE.AWARDS)
+                ? new int[awardsIndex.distinctCount()] : null;
+        final int[] nominationsCounts = facets.contains(Constants.SUPPORTED_AGGREGATE.NOMINATIONS)
+                ? new int[nominationsIndex.distinctCount()] : null;
+
+        int total = 0;
+        int bestPictures = 0;
+        long referencesSum = 0;
+        int referencesMax = Integer.MIN_VALUE;
+        if (!filter.isEmpty()) {
+            final CompiledSearchFilter orderedFilter = filter.orderBySelectivity(filmIndex);
+            final ScanRange scanRange = ScanRange.of(filmIndex, filter);
+            for (int position = scanRange.getFrom(); position < scanRange.getTo(); position++) {
+                final int ordinal = scanRange.ordinalAt(position);
+                if (!orderedFilter.matches(filmIndex, ordinal)) {
+                    continue;
+                }
+
+                total++;
+                if (yearCounts != null) {
+                    yearCounts[yearIndex.rankOf(ordinal)]++;
+                }
+                if (awardsCounts != null) {
+                    awardsCounts[awardsIndex.rankOf(ordinal)]++;
+                }
+                if (nominationsCounts != null) {
+                    nominationsCounts[nominationsIndex.rankOf(ordinal)]++;
+                }
+                if (filmIndex.isBestPicture(ordinal)) {
+                    bestPictures++;
+                }
+                final int references = filmIndex.getNumberOfReferences(ordinal);
+                referencesSum += references;
+                referencesMax = Math.max(referencesMax, references);
+            }
+        }
+
+        final FilmAggregation aggregation = new FilmAggregation(total);
+        if (facets.contains(Constants.SUPPORTED_AGGREGATE.YEAR)) {
+            aggregation.setYears(toHistogram(yearIndex, yearCounts, 1));
+        }
+        if (facets.contains(Constants.SUPPORTED_AGGREGATE.DECADE)) {
+            aggregation.setDecades(toHistogram(yearIndex, yearCounts, DECADE_LENGTH));
+        }
+        if (awardsCounts != null) {
+            aggregation.setAwards(toHistogram(awardsIndex, awardsCounts, 1));
+        }
+        if (nominationsCounts != null) {
+            aggregation.setNominations(toHistogram(nominationsIndex, nominationsCounts, 1));
+        }
+        if (facets.contains(Constants.SUPPORTED_AGGREGATE.IS_BEST_PICTURE)) {
+            aggregation.setBestPictureCount(bestPictures);
+        }
+        if (facets.contains(Constants.SUPPORTED_AGGREGATE.NUMBER_OF_REFERENCES)) {
+            aggregation.setReferencesSum(referencesSum);
+            aggregation.setReferencesMax((total > 0) ? referencesMax : null);
+        }
+        return aggregation;
+    }
+
+    /** Non empty buckets in ascending order, keyed by the smallest value the bucket can hold. */
+    private static Map<Integer, Integer> toHistogram(SortedIntIndex index, int[] counts, int bucketWidth) {
+        final Map<Integer, Integer> histogram = new LinkedHashMap<>();
+        for (int rank = 0; rank < counts.length; rank++) {
+            if (counts[rank] > 0) {
+                final int bucket = Math.floorDiv(index.distinctValue(rank), bucketWidth) * bucketWidth;
+                histogram.merge(bucket, counts[rank], Integer::sum);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the ordinals of the given films in the requested order, cut to the limit when there is one.
+     * A limited or small selection is collected in a bounded heap, a large unlimited one is read off
+     * the sorted index. Both keep the repository order for equal sort values.
+     */
+    public int[] sortFilms(FilmIndex filmIndex, BitSet films, SortOrder sortOrder, Integer limit) {
+        final SortedIntIndex sortIndex = filmIndex.getSortIndex(sortOrder);
+        final int count = films.cardinality();
+        final int resultSize = (limit != null) ? Math.min(limit, count) : count;
+
+        if (limit == null && count >= filmIndex.size() / FULL_SCAN_SELECTIVITY) {
+            final int[] sorted = new int[resultSize];
+            int found = 0;
+            for (int position = 0; found < resultSize; position++) {
+                final int ordinal = sortIndex.ordinalAt(position);
+                if (films.get(ordinal)) {
+                    sorted[found++] = ordinal;
+                }
+            }
+            return sorted;
+        }
+
+        final BoundedOrdinalHeap heap = new BoundedOrdinalHeap(sortIndex, resultSize);
+        for (int ordinal = films.nextSetBit(0); ordinal >= 0; ordinal = films.nextSetBit(ordinal + 1)) {
+            heap.offer(ordinal);
+        }
+        return heap.drainSorted();
+    }
+
+    /** Order of the films by the given key, except by score, whose weights only the film index knows. */
+    public Comparator<Film> getFilmComparator(Constants.SUPPORTED_SORT_BY sortBy) throws IllegalArgumentException {
+        if (sortBy == Constants.SUPPORTED_SORT_BY.SCORE) {
+            throw new IllegalArgumentException("Sorting by score needs the score weights of the film index");
+        }
+        return getFilmComparator(sortBy, FilmScore.DEFAULT);
     }
 
-    public Comparator<Film> getFilmComparator(Constants.SUPPORTED_SORT_BY sortBy) {
+    /** Order of the films by the given key, by score with the given weights, e.g. the ones of a film index. */
+    public Comparator<Film> getFilmComparator(Constants.SUPPORTED_SORT_BY sortBy, FilmScore filmScore) {
         switch (sortBy) {
             case AWARDS:
-                return Comparator.comparingLong(Film::getAwards);
+                return AWARDS_ORDER;
             case NOMINATIONS:
-                return Comparator.comparingLong(Film::getNominations);
+                return NOMINATIONS_ORDER;
             case YEAR:
-                return Comparator.comparingLong(Film::getYear);
+                return YEAR_ORDER;
+            case REFERENCES:
+                return REFERENCES_ORDER;
+            case SCORE:
+                return Comparator.comparingInt(filmScore::scoreOf);
             default:
-                return Comparator.comparing(Film::getTitle);
+                return TITLE_ORDER;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,217 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.services.SearchMetrics;
+import de.cyberport.core.services.SearchMetricsMBean;
+import de.cyberport.core.utils.SlowRequestJsonWriter;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free request metrics of the film container servlet, registered as MBean by the JMX whiteboard under
+ * de.cyberport.core:type=SearchMetrics. Every stage is recorded into its own {@link LatencyHistogram}.
+ * Requests slower than the configured threshold are kept in a bounded {@link SlowRequestLog}.
+ */
+@Component(service = { SearchMetrics.class, DynamicMBean.class }, immediate = true,
+        property = "jmx.objectname=de.cyberport.core:type=SearchMetrics")
+@Designate(ocd = SearchMetricsImpl.Config.class)
+public class SearchMetricsImpl extends StandardMBean implements SearchMetrics, SearchMetricsMBean {
+
+    /** Sort orders beyond this many are counted together, so odd requests cannot grow the usage map. */
+    private static final int MAX_SORT_ORDERS = 64;
+    private static final String OTHER_SORT_ORDERS = "other";
+
+    private static final long DEFAULT_SLOW_REQUEST_THRESHOLD = 500;
+    private static final int DEFAULT_SLOW_REQUEST_LOG_SIZE = 100;
+
+    @ObjectClassDefinition(name = "Oscars - Search Metrics",
+            description = "Timings and counters of the film container servlet, exposed as MBean")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled",
+                description = "Measure the requests; when disabled, the servlet skips all timing")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Server-Timing header",
+                description = "Send the stage durations of every request in a Server-Timing response header")
+        boolean serverTiming() default false;
+
+        @AttributeDefinition(name = "Slow request threshold",
+                description = "Requests taking at least this many milliseconds are kept in the slow request log")
+        long slowRequestThreshold() default DEFAULT_SLOW_REQUEST_THRESHOLD;
+
+        @AttributeDefinition(name = "Slow request log size",
+                description = "Number of the latest slow requests to keep, 0 to keep none")
+        int slowRequestLogSize() default DEFAULT_SLOW_REQUEST_LOG_SIZE;
+    }
+
+    private final LatencyHistogram[] stageLatencies = new LatencyHistogram[Stage.values().length];
+    private final LatencyHistogram requestLatencies = new LatencyHistogram();
+    private final LongAdder filmsScanned = new LongAdder();
+    private final LongAdder filmsReturned = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> sortOrders = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled = true;
+    private volatile boolean serverTimingEnabled;
+    private volatile long slowRequestThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_REQUEST_THRESHOLD);
+    private volatile SlowRequestLog slowRequests = new SlowRequestLog(DEFAULT_SLOW_REQUEST_LOG_SIZE);
+
+    public SearchMetricsImpl() throws NotCompliantMBeanException {
+        super(SearchMetricsMBean.class);
+        for (Stage stage : Stage.values()) {
+            stageLatencies[stage.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        enabled = config.enabled();
+        serverTimingEnabled = config.serverTiming();
+        slowRequestThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.slowRequestThreshold()));
+        final int slowRequestLogSize = Math.max(0, config.slowRequestLogSize());
+        if (slowRequests.capacity() != slowRequestLogSize) {
+            slowRequests = new SlowRequestLog(slowRequestLogSize);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isServerTimingEnabled() {
+        return serverTimingEnabled;
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageLatencies[stage.ordinal()].record(nanos);
+    }
+
+    public void recordRequest(long nanos) {
+        requestLatencies.record(nanos);
+    }
+
+    public void recordSortOrder(SortOrder sortOrder) {
+        LongAdder usage = sortOrders.get(sortOrder.toString());
+        if (usage == null) {
+            final String key = (sortOrders.size() < MAX_SORT_ORDERS) ? sortOrder.toString() : OTHER_SORT_ORDERS;
+            usage = sortOrders.computeIfAbsent(key, ignored -> new LongAdder());
+        }
+        usage.increment();
+    }
+
+    public void recordSearch(int scannedFilms, int returnedFilms) {
+        filmsScanned.add(scannedFilms);
+        filmsReturned.add(returnedFilms);
+    }
+
+    public void recordCacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+        }
+    }
+
+    public boolean isSlow(long nanos) {
+        return nanos >= slowRequestThresholdNanos && slowRequests.capacity() > 0;
+    }
+
+    public void recordSlowRequest(SlowRequest slowRequest) {
+        slowRequests.add(slowRequest);
+    }
+
+    public long getRequestCount() {
+        return requestLatencies.getCount();
+    }
+
+    public double getRequestMeanMillis() {
+        return requestLatencies.getMeanMillis();
+    }
+
+    public double getRequestP99Millis() {
+        return requestLatencies.getPercentileMillis(99);
+    }
+
+    public String[] getLatencies() {
+        final String[] latencies = new String[stageLatencies.length + 1];
+        for (Stage stage : Stage.values()) {
+            latencies[stage.ordinal()] = stageLatencies[stage.ordinal()].summary(stage.name().toLowerCase(Locale.ROOT));
+        }
+        latencies[stageLatencies.length] = requestLatencies.summary("request");
+        return latencies;
+    }
+
+    public long getFilmsScanned() {
+        return filmsScanned.sum();
+    }
+
+    public long getFilmsReturned() {
+        return filmsReturned.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public double getCacheHitRatio() {
+        final long hits = cacheHits.sum();
+        final long lookups = hits + cacheMisses.sum();
+        return (lookups > 0) ? (double) hits / lookups : 0;
+    }
+
+    public String[] getSortByUsage() {
+        final List<Map.Entry<String, Long>> usages = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> usage : sortOrders.entrySet()) {
+            usages.add(new AbstractMap.SimpleImmutableEntry<>(usage.getKey(), usage.getValue().sum()));
+        }
+        usages.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+
+        final String[] lines = new String[usages.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = usages.get(i).getKey() + ": " + usages.get(i).getValue();
+        }
+        return lines;
+    }
+
+    public String getSlowRequests() {
+        return SlowRequestJsonWriter.write(slowRequests.getNewestFirst());
+    }
+
+    public void reset() {
+        for (LatencyHistogram latencies : stageLatencies) {
+            latencies.reset();
+        }
+        requestLatencies.reset();
+        filmsScanned.reset();
+        filmsReturned.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        sortOrders.clear();
+        slowRequests.clear();
+    }
+}
@@ -0,0 +1,170 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.services.SearchResultCache;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded LRU cache for serialized search results. The query keys contain the version of the film index
+ * they were computed from, so a changed container never serves an old result; the stale entries simply
+ * age out of the cache. The cache is split into segments by the hash of the query key, each an LRU map with
+ * its own lock and an equal share of the bounds, so concurrent lookups of different queries rarely wait for
+ * each other. A reconfiguration starts over with an empty cache.
+ */
+@Component(service = { SearchResultCache.class }, immediate = true)
+@Designate(ocd = SearchResultCacheImpl.Config.class)
+public class SearchResultCacheImpl implements SearchResultCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    @ObjectClassDefinition(name = "Oscars - Search Result Cache",
+            description = "Caches the JSON responses of the Oscar film container servlet")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Max entries", description = "Maximum number of cached responses")
+        int maxEntries() default DEFAULT_MAX_ENTRIES;
+
+        @AttributeDefinition(name = "Max bytes", description = "Maximum memory used by the cached responses")
+        long maxBytes() default DEFAULT_MAX_BYTES;
+
+        @AttributeDefinition(name = "TTL", description = "Seconds after which a cached response expires")
+        long ttlSeconds() default 3600;
+
+        @AttributeDefinition(name = "Segments",
+                description = "Independently locked parts of the cache, each with an equal share of the bounds. "
+                        + "More segments let more requests use the cache at once, but evict less exactly and "
+                        + "do not cache responses larger than the share of max bytes of one segment")
+        int segments() default DEFAULT_SEGMENTS;
+    }
+
+    /** Rough per entry overhead of the map node, the key and the entry object. */
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private volatile Segment[] segments = createSegments(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_SEGMENTS);
+    private volatile long ttlNanos = TimeUnit.HOURS.toNanos(1);
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        ttlNanos = TimeUnit.SECONDS.toNanos(config.ttlSeconds());
+        segments = createSegments(config.maxEntries(), config.maxBytes(), config.segments());
+    }
+
+    public String get(String queryKey) {
+        return segmentOf(queryKey).get(queryKey, ttlNanos);
+    }
+
+    public void put(String queryKey, String json) {
+        final CacheEntry entry = new CacheEntry(json, sizeOf(queryKey, json));
+        segmentOf(queryKey).put(queryKey, entry);
+    }
+
+    public int getMaxJsonLength(String queryKey) {
+        final long maxLength = (segmentOf(queryKey).maxBytes - ENTRY_OVERHEAD_BYTES) / 2 - queryKey.length();
+        return (int) Math.max(-1, Math.min(Integer.MAX_VALUE, maxLength));
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentOf(String queryKey) {
+        final Segment[] segments = this.segments;
+        final int hash = queryKey.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    /** At most one segment per entry, so that a small cache still holds its max entries. */
+    private static Segment[] createSegments(int maxEntries, long maxBytes, int segmentCount) {
+        final int count = Math.max(1, Math.min(segmentCount, maxEntries));
+        final Segment[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(0, maxEntries) / count, maxBytes / count);
+        }
+        return segments;
+    }
+
+    private static long sizeOf(String queryKey, String json) {
+        return 2L * (queryKey.length() + json.length()) + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static final class Segment {
+
+        private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxBytes;
+        private long usedBytes;
+
+        private Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized String get(String queryKey, long ttlNanos) {
+            final CacheEntry entry = entries.get(queryKey);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.createdNanos > ttlNanos) {
+                remove(queryKey);
+                return null;
+            }
+            return entry.json;
+        }
+
+        private synchronized void put(String queryKey, CacheEntry entry) {
+            if (entry.sizeBytes > maxBytes) {
+                return;
+            }
+
+            remove(queryKey);
+            entries.put(queryKey, entry);
+            usedBytes += entry.sizeBytes;
+            evict();
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            usedBytes = 0;
+        }
+
+        private void remove(String queryKey) {
+            final CacheEntry removed = entries.remove(queryKey);
+            if (removed != null) {
+                usedBytes -= removed.sizeBytes;
+            }
+        }
+
+        private void evict() {
+            final Iterator<CacheEntry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || usedBytes > maxBytes) && eldest.hasNext()) {
+                usedBytes -= eldest.next().sizeBytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final String json;
+        private final long sizeBytes;
+        private final long createdNanos = System.nanoTime();
+
+        private CacheEntry(String json, long sizeBytes) {
+            this.json = json;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package de.cyberport.core.services.impl;
+
+import de.cyberport.core.dto.SlowRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock free ring buffer of the latest slow requests. Every request takes the next sequence number and
+ * overwrites the slot of the request that many places before it, unless a writer that overtook it already
+ * put a newer request there.
+ */
+final class SlowRequestLog {
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    SlowRequestLog(int capacity) {
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    int capacity() {
+        return entries.length();
+    }
+
+    void add(SlowRequest slowRequest) {
+        if (entries.length() == 0) {
+            return;
+        }
+
+        final long sequence = nextSequence.getAndIncrement();
+        final int slot = (int) (sequence % entries.length());
+        final Entry entry = new Entry(sequence, slowRequest);
+        Entry current;
+        do {
+            current = entries.get(slot);
+            if (current != null && current.sequence > sequence) {
+                return;
+            }
+        } while (!entries.compareAndSet(slot, current, entry));
+    }
+
+    /** The slow requests still in the buffer, newest first. */
+    List<SlowRequest> getNewestFirst() {
+        final long next = nextSequence.get();
+        final List<SlowRequest> slowRequests = new ArrayList<>();
+        for (long sequence = next - 1; sequence >= Math.max(0, next - entries.length()); sequence--) {
+            final Entry entry = entries.get((int) (sequence % entries.length()));
+            // skips slots not written yet and slots already taken by a newer request
+            if (entry != null && entry.sequence == sequence) {
+                slowRequests.add(entry.slowRequest);
+            }
+        }
+        return slowRequests;
+    }
+
+    void clear() {
+        for (int slot = 0; slot < entries.length(); slot++) {
+            entries.set(slot, null);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long sequence;
+        private final SlowRequest slowRequest;
+
+        private Entry(long sequence, SlowRequest slowRequest) {
+            this.sequence = sequence;
+            this.slowRequest = slowRequest;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.cyberport.core.services.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per client, each kept as one nano time in the manner of the generic cell rate algorithm: the time
+ * at which the bucket is full again. A token is taken by moving that time one interval ahead with a compare and
+ * set, as long as it stays within the burst, so clients never block each other. Buckets that are full again are
+ * dropped once there are more than the given number of clients.
+ */
+final class TokenBuckets {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long PRUNE_INTERVAL_NANOS = NANOS_PER_SECOND;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextPruneNanos = new AtomicLong(System.nanoTime());
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxClients;
+
+    private TokenBuckets(long intervalNanos, int burst, int maxClients) {
+        this.intervalNanos = intervalNanos;
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.maxClients = maxClients;
+    }
+
+    /** Buckets refilled with the given tokens per second and holding up to burst tokens, or null for no limit. */
+    static TokenBuckets of(double tokensPerSecond, int burst, int maxClients) {
+        if (tokensPerSecond <= 0) {
+            return null;
+        }
+        final long intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / tokensPerSecond));
+        return new TokenBuckets(intervalNanos, Math.max(1, burst), Math.max(1, maxClients));
+    }
+
+    /** Takes a token of the client and returns 0, or returns the nanos until the client gets its next token. */
+    long acquire(String client, long nowNanos) {
+        AtomicLong bucket = buckets.get(client);
+        if (bucket == null) {
+            prune(nowNanos);
+            bucket = buckets.computeIfAbsent(client, key -> new AtomicLong(nowNanos));
+        }
+
+        while (true) {
+            final long fullNanos = bucket.get();
+            final long startNanos = (fullNanos - nowNanos > 0) ? fullNanos : nowNanos;
+            final long waitNanos = startNanos - toleranceNanos - nowNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (bucket.compareAndSet(fullNanos, startNanos + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private void prune(long nowNanos) {
+        final long pruneNanos = nextPruneNanos.get();
+        if (buckets.size() < maxClients || nowNanos - pruneNanos < 0
+                || !nextPruneNanos.compareAndSet(pruneNanos, nowNanos + PRUNE_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.get() - nowNanos <= 0);
+    }
+}
@@ -0,0 +1,167 @@
+package de.cyberport.core.servlets;
+
+import de.cyberport.core.services.AdmissionControl;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A request answered on a search executor instead of the request thread, by a servlet async request. The search
+ * claims the response right before it writes it. Until then a timeout answers the request at once: a queued
+ * search is not run anymore, a running one is not interrupted but keeps searching on the executor, finds the
+ * response taken when it tries to claim it and ends without serializing anything. Only a timeout during the
+ * write waits for it, at most for the timeout of the request once more. The admission of the request is closed
+ * once the search is done, so a search still running after its timeout keeps counting against the concurrency
+ * limit, or right away when it never ran.
+ */
+final class AsyncSearch implements Runnable, AsyncListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSearch.class);
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int WRITING = 2;
+    private static final int ENDED = 3;
+
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    private final CountDownLatch answered = new CountDownLatch(1);
+    private final AsyncContext asyncContext;
+    private final long timeoutMillis;
+    private final Search search;
+    private final Task timeout;
+    private final AdmissionControl.Admission admission;
+
+    private AsyncSearch(AsyncContext asyncContext, long timeoutMillis, Search search, Task timeout,
+            AdmissionControl.Admission admission) {
+        this.asyncContext = asyncContext;
+        this.timeoutMillis = timeoutMillis;
+        this.search = search;
+        this.timeout = timeout;
+        this.admission = admission;
+    }
+
+    /**
+     * Starts the async request and hands the search to the executor. When the executor rejects it, the request
+     * thread searches itself.
+     */
+    static void start(SlingHttpServletRequest req, Executor executor, long timeoutMillis, Search search,
+            Task timeout, AdmissionControl.Admission admission) {
+        final AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(timeoutMillis);
+        final AsyncSearch asyncSearch = new AsyncSearch(asyncContext, timeoutMillis, search, timeout, admission);
+        asyncContext.addListener(asyncSearch);
+        try {
+            executor.execute(asyncSearch);
+        } catch (RejectedExecutionException ex) {
+            asyncSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        if (!state.compareAndSet(QUEUED, RUNNING)) {
+            return;
+        }
+        try {
+            search.run(this::claimResponse);
+        } catch (IOException | RuntimeException ex) {
+            LOG.error("Async search failed", ex);
+            final HttpServletResponse resp = (HttpServletResponse) asyncContext.getResponse();
+            if (claimResponse() && !resp.isCommitted()) {
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } finally {
+            closeAdmission();
+            if (state.getAndSet(ENDED) != ENDED) {
+                complete();
+            }
+        }
+    }
+
+    /** Whether the search may write the response, false once the request timed out or failed. */
+    private boolean claimResponse() {
+        return state.compareAndSet(RUNNING, WRITING) || state.get() == WRITING;
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        final boolean queued = state.compareAndSet(QUEUED, ENDED);
+        if (!queued && !state.compareAndSet(RUNNING, ENDED)) {
+            awaitWrite();
+            return;
+        }
+        if (queued) {
+            closeAdmission();
+        }
+        try {
+            timeout.run();
+        } finally {
+            complete();
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        if (state.compareAndSet(QUEUED, ENDED)) {
+            closeAdmission();
+            complete();
+        } else if (state.compareAndSet(RUNNING, ENDED)) {
+            complete();
+        } else {
+            awaitWrite();
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    private void closeAdmission() {
+        if (admission != null) {
+            admission.close();
+        }
+    }
+
+    private void complete() {
+        answered.countDown();
+        asyncContext.complete();
+    }
+
+    /** Waits for the search writing the response, which completes the request once it is written. */
+    private void awaitWrite() {
+        try {
+            answered.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A search, which writes the response only once the given supplier grants it. */
+    @FunctionalInterface
+    interface Search {
+
+        void run(BooleanSupplier claimResponse) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Task {
+
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,97 @@
+package de.cyberport.core.servlets;
+
+import de.cyberport.core.utils.BufferPool;
+import de.cyberport.core.utils.PooledGzipOutputStream;
+import de.cyberport.core.utils.Utils;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Body of a response to a client that accepts gzip. The first bytes are held back in a pooled buffer: a body
+ * that ends within the minimum size is sent as it is, since compressing it would save less than it costs.
+ * Once the body grows beyond it, the Content-Encoding and the gzip variant of the ETag are set and the body is
+ * streamed through a {@link PooledGzipOutputStream}. The stream must always be closed.
+ */
+final class CompressingOutputStream extends OutputStream {
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String ETAG = "ETag";
+
+    private final SlingHttpServletResponse resp;
+    private final String eTag;
+    private final int minSize;
+    private final int level;
+    private final byte[] singleByte = new byte[1];
+    private byte[] pending = BufferPool.acquire();
+    private int pendingLength;
+    private OutputStream out;
+    private boolean closed;
+
+    CompressingOutputStream(SlingHttpServletResponse resp, String eTag, int minSize, int level) {
+        this.resp = resp;
+        this.eTag = eTag;
+        this.minSize = Math.min(minSize, BufferPool.BUFFER_SIZE);
+        this.level = level;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (out == null) {
+            if (pendingLength + len <= minSize) {
+                System.arraycopy(b, off, pending, pendingLength, len);
+                pendingLength += len;
+                return;
+            }
+            startCompression();
+        }
+        out.write(b, off, len);
+    }
+
+    private void startCompression() throws IOException {
+        resp.setHeader(CONTENT_ENCODING, GZIP);
+        if (eTag != null) {
+            resp.setHeader(ETAG, Utils.createGzipETag(eTag));
+        }
+        out = new PooledGzipOutputStream(resp.getOutputStream(), level);
+        out.write(pending, 0, pendingLength);
+        releasePending();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            if (out != null) {
+                out.close();
+            } else {
+                final OutputStream body = resp.getOutputStream();
+                body.write(pending, 0, pendingLength);
+                body.close();
+            }
+        } finally {
+            releasePending();
+        }
+    }
+
+    private void releasePending() {
+        BufferPool.release(pending);
+        pending = null;
+    }
+}
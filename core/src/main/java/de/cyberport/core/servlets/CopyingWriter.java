@@ -0,0 +1,69 @@
+package de.cyberport.core.servlets;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer passing everything on to the response while keeping a copy of it for the {@link
+ * de.cyberport.core.services.SearchResultCache}. The copy is dropped as soon as the text grows beyond the given
+ * maximum length, so a response too large to be cached is streamed without being held in memory.
+ */
+final class CopyingWriter extends Writer {
+
+    private final Writer out;
+    private final int maxCopyLength;
+    private StringBuilder copy;
+
+    /** Copies at most the given number of characters, none for a negative maximum length. */
+    CopyingWriter(Writer out, int maxCopyLength) {
+        this.out = out;
+        this.maxCopyLength = maxCopyLength;
+        this.copy = (maxCopyLength >= 0) ? new StringBuilder() : null;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+        if (reserve(len)) {
+            copy.append(cbuf, off, len);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        out.write(str, off, len);
+        if (reserve(len)) {
+            copy.append(str, off, off + len);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        if (reserve(1)) {
+            copy.append((char) c);
+        }
+    }
+
+    private boolean reserve(int len) {
+        if (copy != null && copy.length() + len > maxCopyLength) {
+            copy = null;
+        }
+        return copy != null;
+    }
+
+    /** The text written so far, or null when it was too long to be copied. */
+    String getCopy() {
+        return (copy != null) ? copy.toString() : null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -1,26 +1,63 @@
 package de.cyberport.core.servlets;
 
 import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
 
-import com.google.gson.Gson;
 import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.FilmAggregation;
+import de.cyberport.core.dto.ParameterError;
+import de.cyberport.core.dto.SearchCursor;
 import de.cyberport.core.dto.SearchDTO;
 import de.cyberport.core.dto.SearchResult;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.services.AdmissionControl;
+import de.cyberport.core.services.FilmIndexService;
 import de.cyberport.core.services.SearchManagerService;
+import de.cyberport.core.services.SearchMetrics;
+import de.cyberport.core.services.SearchResultCache;
+import de.cyberport.core.utils.AggregationJsonWriter;
+import de.cyberport.core.utils.BatchResultJsonWriter;
+import de.cyberport.core.utils.CborWriter;
+import de.cyberport.core.utils.ParameterErrorJsonWriter;
+import de.cyberport.core.utils.PooledGzipOutputStream;
+import de.cyberport.core.utils.SearchParameterParser;
+import de.cyberport.core.utils.SearchResultJsonWriter;
 import de.cyberport.core.utils.Utils;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.lang.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
-import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.servlets.HttpConstants;
-import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Deflater;
 
 /**
  * Servlet that writes information about the Oscar films in json format into the response.
@@ -40,14 +77,68 @@ import java.util.stream.Collectors;
  * 6. maxAwards - Integer. The maximum value for number of awards
  * 7. nominations - Integer. The exact number of nominations
  * 8. isBestPicture - Boolean. True to return only the winners of the best picture nomination.
- * 9. sortBy - Enumeration. Sorting in ascending order, supported values are: 'title', 'year', 'awards', 'nominations'. Default value should be 'title'.
+ * 9. sortBy - Enumeration. Sorting in ascending order, supported values are: 'title', 'year', 'awards', 'nominations',
+ *    'references' and 'score'. Default value should be 'title'. 'references' sorts by numberOfReferences, 'score' by
+ *    a popularity score over awards, nominations, isBestPicture and numberOfReferences, weighted as configured for
+ *    the film index service; 'score:desc' returns the most popular films first.
+ *    Several keys are separated by commas and each key may be followed by ':asc' or ':desc',
+ *    e.g. 'awards:desc,year:asc,title'.
  * 10. limit - Integer. Maximum amount of result entries in the response.
+ * 11. offset - Integer. Number of result entries to skip, counted from the cursor when one is sent.
+ * 12. cursor - String. The nextCursor of the previous page, or empty for the first page. The response then
+ *     contains a "nextCursor" to continue with as long as the page is full. A cursor is only valid for the
+ *     sortBy it was created with.
+ * 13. total - Boolean. True to add the number of all the matching films as "total" to the response.
+ * 14. titlePrefix - String. Beginning of the film title, ignoring case and accents, e.g. for autocompletion
+ * 15. titleContains - String. Part of the film title, ignoring case and accents
+ * 16. aggregate - String. Counts over the matching films, returned instead of the films. Comma separated facets
+ *     'year', 'decade', 'awards', 'nominations', 'isBestPicture' and 'numberOfReferences' (sum, avg and max),
+ *     or empty for all of them. Sorting and paging parameters are ignored.
+ *     E.g. minYear=2018&aggregate=year,isBestPicture returns
+ *     {"total":31,"aggregations":{"year":{"2018":15,"2019":16},"isBestPicture":{"true":2,"false":29}}}
+ * 17. fields - String. Comma separated film properties to return, e.g. 'title,year', always written in the
+ *     order of the film properties. Empty or not sent for all of them.
+ *
+ *
+ * Several searches can be sent at once as a POST with a JSON body, each with an id and the parameters above,
+ * e.g. {"queries":[{"id":"winners","isBestPicture":true,"limit":5},{"id":"2019","year":2019}]}. The response
+ * holds the response of every single search keyed by its id: {"results":{"winners":{"result":[...]},"2019":...}}.
+ *
+ * Invalid parameters, e.g. year=abcd or sortBy=rating, and invalid batch bodies are answered with 400 Bad Request
+ * and a JSON body naming the parameter, e.g. {"error":{"status":400,"message":"Parameter year must be an integer",
+ * "parameter":"year","value":"abcd"}}. The query string is read without exceptions, see {@link SearchParameterParser},
+ * so bad requests are as cheap as good ones.
+ *
+ * When an {@link AdmissionControl} is available, every request passes it right after its parameters are read.
+ * Clients beyond their rate limit, or requests beyond the concurrency limit, are answered with 429 Too Many
+ * Requests and a Retry-After header in seconds.
  *
  * Please note:
  * More then 1 filter must be supported.
  * The resulting JSON must not contain "jcr:primaryType" and "sling:resourceType" properties
  * When there will be no results based on the provided filter an empty array should be returned. Please refer to the 3rd example.
  *
+ * The films of a container are read from the repository only once and then served from the {@link FilmIndex}
+ * kept by the {@link FilmIndexService}, which drops it again when the container content changes.
+ * When a {@link SearchResultCache} is available, repeated searches are answered with the cached JSON. Searches
+ * missing the cache are streamed like without it, a copy of their JSON is only kept while it is small enough for
+ * the cache, so large responses such as all the films are never held in memory as a whole.
+ * Identical searches that miss the cache at the same time, e.g. right after the container changed, are searched
+ * only once: the first request searches and writes its response, the others wait for it and write the same JSON.
+ * Only a result too large for the cache is serialized by each of them, as its JSON is not kept.
+ * Every response carries an ETag built from the container content and the normalized query and the
+ * Last-Modified time of the container, so conditional requests are answered with 304 Not Modified.
+ * Responses are sent as CBOR instead of JSON for the 'cbor' extension, e.g. /content/oscars.cbor?year=2019,
+ * with the same structure. Such responses are not kept in the {@link SearchResultCache}, which holds JSON.
+ * Clients that accept gzip get responses beyond a configurable size gzip encoded.
+ * In the async mode, containers of many films are searched on a separate executor, on virtual threads where the
+ * runtime has them, while the request thread is free for other requests. Searches still waiting for the executor
+ * after the async timeout are answered with 503 Service Unavailable. Containers that do not support async
+ * requests are searched on the request thread, like all requests without the async mode.
+ * When {@link SearchMetrics} are available, the duration of every stage of a request is recorded and, if
+ * configured there, sent back in a Server-Timing header. Requests slower than the threshold configured there
+ * are kept in its slow request log together with the plan of their search.
+ *
  * Examples based on the data stored in oscars.json in resources directory.
  *
  * 1. Request parameters: year=2019&minAwards=4
@@ -117,46 +208,598 @@ import java.util.stream.Collectors;
 @Component(service = { Servlet.class }, immediate = true)
 @SlingServletResourceTypes(
         resourceTypes="test/filmEntryContainer",
-        methods=HttpConstants.METHOD_GET,
-        extensions="json")
+        methods={ HttpConstants.METHOD_GET, HttpConstants.METHOD_POST },
+        extensions={ OscarFilmContainerServlet.JSON_EXTENSION, OscarFilmContainerServlet.CBOR_EXTENSION })
 @ServiceDescription("Oscar Film Container Servlet")
-public class OscarFilmContainerServlet extends SlingSafeMethodsServlet {
+@Designate(ocd = OscarFilmContainerServlet.Config.class)
+public class OscarFilmContainerServlet extends SlingAllMethodsServlet {
 
     private static final long serialVersionUID = 1L;
 
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String SERVER_TIMING = "Server-Timing";
+    private static final String VARY = "Vary";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    static final String JSON_EXTENSION = "json";
+    static final String CBOR_EXTENSION = "cbor";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String CBOR_CONTENT_TYPE = "application/cbor";
+    private static final String BATCH_SEPARATOR = " | ";
+    private static final BooleanSupplier RESPONSE_OWNED = () -> true;
+    private static final int NO_COPY = -1;
+
+    private static final int DEFAULT_MAX_BATCH_QUERIES = 20;
+    private static final int DEFAULT_GZIP_MIN_SIZE = 1024;
+    private static final int DEFAULT_GZIP_LEVEL = 6;
+    private static final int DEFAULT_ASYNC_MIN_FILMS = 1000;
+    private static final int DEFAULT_ASYNC_THREADS = 8;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 64;
+    private static final long DEFAULT_ASYNC_TIMEOUT_MILLIS = 30000;
+
+    @ObjectClassDefinition(name = "Oscars - Film Container Servlet",
+            description = "HTTP caching and batch requests of the film container responses")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Cache-Control",
+                description = "Value of the Cache-Control header, e.g. 'public, max-age=300'. Empty to send none. "
+                        + "With the default, caches revalidate every request by ETag and get a 304 "
+                        + "as long as the container did not change.")
+        String cacheControl() default "no-cache";
+
+        @AttributeDefinition(name = "Max batch queries",
+                description = "Maximum number of queries in one POST batch request")
+        int maxBatchQueries() default DEFAULT_MAX_BATCH_QUERIES;
+
+        @AttributeDefinition(name = "Gzip",
+                description = "Send the responses gzip encoded to clients that accept it")
+        boolean gzip() default true;
+
+        @AttributeDefinition(name = "Gzip minimum size",
+                description = "Responses up to this many bytes are sent uncompressed (at most 8192)")
+        int gzipMinSize() default DEFAULT_GZIP_MIN_SIZE;
+
+        @AttributeDefinition(name = "Gzip level",
+                description = "Compression level from 1 (fastest) to 9 (smallest)")
+        int gzipLevel() default DEFAULT_GZIP_LEVEL;
+
+        @AttributeDefinition(name = "Coalesce searches",
+                description = "Answer identical searches that miss the cache at the same time with one search")
+        boolean coalesceSearches() default true;
+
+        @AttributeDefinition(name = "Async",
+                description = "Search large containers on a separate executor by servlet async requests, so they do "
+                        + "not hold a request thread. Requests the container cannot answer asynchronously are "
+                        + "searched on the request thread")
+        boolean asyncEnabled() default false;
+
+        @AttributeDefinition(name = "Async minimum films",
+                description = "Containers with fewer films are searched on the request thread")
+        int asyncMinFilms() default DEFAULT_ASYNC_MIN_FILMS;
+
+        @AttributeDefinition(name = "Async virtual threads",
+                description = "Search on virtual threads on Java 21 and later, else on the async threads")
+        boolean asyncVirtualThreads() default true;
+
+        @AttributeDefinition(name = "Async threads",
+                description = "Searches running at once, on as many platform threads when there are no virtual "
+                        + "threads")
+        int asyncThreads() default DEFAULT_ASYNC_THREADS;
+
+        @AttributeDefinition(name = "Async queue size",
+                description = "Searches waiting for one of the running searches to end. Beyond it, the request "
+                        + "thread searches itself")
+        int asyncQueueSize() default DEFAULT_ASYNC_QUEUE_SIZE;
+
+        @AttributeDefinition(name = "Async timeout",
+                description = "Milliseconds after which a search still waiting for the executor is answered with "
+                        + "503 Service Unavailable")
+        long asyncTimeoutMillis() default DEFAULT_ASYNC_TIMEOUT_MILLIS;
+    }
+
+    private volatile String cacheControl;
+    private volatile int maxBatchQueries = DEFAULT_MAX_BATCH_QUERIES;
+    private volatile boolean gzip = true;
+    private volatile int gzipMinSize = DEFAULT_GZIP_MIN_SIZE;
+    private volatile int gzipLevel = DEFAULT_GZIP_LEVEL;
+    private volatile boolean coalesceSearches = true;
+    private volatile int asyncMinFilms = DEFAULT_ASYNC_MIN_FILMS;
+    private volatile long asyncTimeoutMillis = DEFAULT_ASYNC_TIMEOUT_MILLIS;
+    private volatile ExecutorService searchExecutor;
+
+    private final transient SingleFlight<String, SharedResponse> searchFlights = new SingleFlight<>();
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        cacheControl = config.cacheControl();
+        maxBatchQueries = config.maxBatchQueries();
+        gzip = config.gzip();
+        gzipMinSize = Math.max(0, config.gzipMinSize());
+        gzipLevel = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, config.gzipLevel()));
+        coalesceSearches = config.coalesceSearches();
+        asyncMinFilms = Math.max(0, config.asyncMinFilms());
+        asyncTimeoutMillis = Math.max(0, config.asyncTimeoutMillis());
+
+        final ExecutorService previousExecutor = searchExecutor;
+        searchExecutor = config.asyncEnabled() ? SearchExecutors.newExecutor(config.asyncVirtualThreads(),
+                config.asyncThreads(), config.asyncQueueSize()) : null;
+        if (previousExecutor != null) {
+            previousExecutor.shutdown();
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        final ExecutorService executor = searchExecutor;
+        searchExecutor = null;
+        if (executor != null) {
+            executor.shutdown();
+        }
+        PooledGzipOutputStream.endPooledDeflaters();
+    }
+
     @Reference
     private SearchManagerService searchManagerService;
 
+    @Reference
+    private FilmIndexService filmIndexService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile SearchResultCache searchResultCache;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile SearchMetrics searchMetrics;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile AdmissionControl admissionControl;
+
     @Override
     public void doGet(final SlingHttpServletRequest req, final SlingHttpServletResponse resp) throws IOException {
-        resp.setContentType("application/json");
+        final RequestTimer timer = RequestTimer.start(searchMetrics);
+        final SearchDTO searchDTO = new SearchDTO();
+        final ParameterError error = SearchParameterParser.parse(req, searchDTO);
+        timer.endStage(SearchMetrics.Stage.PARSE);
+        if (error != null) {
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, error, timer);
+            return;
+        }
+
+        final AdmissionControl.Admission admission = admit(req, Collections.singletonList(searchDTO), timer);
+        if (admission != null && !admission.isAdmitted()) {
+            writeTooManyRequests(resp, admission, timer);
+            return;
+        }
+        answer(req, resp, admission, timer,
+                (filmIndex, claimResponse) -> doSearch(req, resp, searchDTO, filmIndex, timer, claimResponse));
+    }
+
+    private void doSearch(SlingHttpServletRequest req, SlingHttpServletResponse resp, SearchDTO searchDTO,
+            FilmIndex filmIndex, RequestTimer timer, BooleanSupplier claimResponse) throws IOException {
+        final boolean cbor = isCbor(req);
+        if (!searchDTO.isAggregate()) {
+            timer.recordSortOrder(searchDTO.getSortOrder());
+        }
+
+        final String eTag = Utils.createETag(filmIndex, searchDTO, cbor ? CBOR_EXTENSION : null);
+        if (Utils.isNotModified(req, eTag, filmIndex.getLastModified())) {
+            if (!startResponse(resp, claimResponse, cbor, eTag, filmIndex, timer)) {
+                return;
+            }
+            setServerTiming(resp, timer);
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            endRequest(timer, req, filmIndex, searchDTO, false);
+            return;
+        }
+
+        final SearchResultCache cache = cbor ? null : searchResultCache;
+        if (cache == null) {
+            final Object result = search(filmIndex, searchDTO, timer);
+            if (!startResponse(resp, claimResponse, cbor, eTag, filmIndex, timer)) {
+                return;
+            }
+            setServerTiming(resp, timer);
+            writeBody(req, resp, eTag, cbor, NO_COPY, jsonWriter -> writeResult(result, jsonWriter));
+            timer.endStage(SearchMetrics.Stage.SERIALIZE);
+            endRequest(timer, req, filmIndex, searchDTO, true);
+            return;
+        }
+
+        final String queryKey = Utils.createQueryKey(filmIndex, searchDTO);
+        final String jsonStr = cache.get(queryKey);
+        timer.recordCacheLookup(jsonStr != null);
+        if (jsonStr != null) {
+            if (!startResponse(resp, claimResponse, cbor, eTag, filmIndex, timer)) {
+                return;
+            }
+            setServerTiming(resp, timer);
+            writeJson(req, resp, eTag, jsonStr);
+            endRequest(timer, req, filmIndex, searchDTO, false);
+            return;
+        }
+
+        // identical searches arriving meanwhile wait for the first one and are answered with its JSON
+        if (!coalesceSearches) {
+            searchAndWrite(req, resp, searchDTO, filmIndex, timer, claimResponse, eTag, cache, queryKey);
+            return;
+        }
+        final SharedResponse[] own = new SharedResponse[1];
+        final SharedResponse shared = searchFlights.execute(queryKey, () -> own[0] =
+                searchAndWrite(req, resp, searchDTO, filmIndex, timer, claimResponse, eTag, cache, queryKey));
+        if (shared != own[0]) {
+            writeShared(req, resp, searchDTO, filmIndex, timer, claimResponse, eTag, shared);
+        }
+    }
+
+    /**
+     * Searches and streams the JSON like without a cache, only a copy of it small enough to be cached is kept.
+     * Returns the response for the identical searches that waited for this one.
+     */
+    private SharedResponse searchAndWrite(SlingHttpServletRequest req, SlingHttpServletResponse resp,
+            SearchDTO searchDTO, FilmIndex filmIndex, RequestTimer timer, BooleanSupplier claimResponse, String eTag,
+            SearchResultCache cache, String queryKey) throws IOException {
+        final Object result = search(filmIndex, searchDTO, timer);
+        if (!startResponse(resp, claimResponse, false, eTag, filmIndex, timer)) {
+            return new SharedResponse(result, null);
+        }
+        setServerTiming(resp, timer);
+        final String json = writeBody(req, resp, eTag, false, cache.getMaxJsonLength(queryKey),
+                jsonWriter -> writeResult(result, jsonWriter));
+        timer.endStage(SearchMetrics.Stage.SERIALIZE);
+        if (json != null) {
+            cache.put(queryKey, json);
+        }
+        endRequest(timer, req, filmIndex, searchDTO, true);
+        return new SharedResponse(result, json);
+    }
+
+    /**
+     * Answers a search that waited for an identical one with its JSON. The wait is timed as the search stage,
+     * described as "shared". Only a result too large to be cached is serialized once more.
+     */
+    private void writeShared(SlingHttpServletRequest req, SlingHttpServletResponse resp, SearchDTO searchDTO,
+            FilmIndex filmIndex, RequestTimer timer, BooleanSupplier claimResponse, String eTag,
+            SharedResponse shared) throws IOException {
+        timer.endStage(SearchMetrics.Stage.SEARCH, "shared");
+        if (!startResponse(resp, claimResponse, false, eTag, filmIndex, timer)) {
+            return;
+        }
+        setServerTiming(resp, timer);
+        if (shared.json != null) {
+            writeJson(req, resp, eTag, shared.json);
+        } else {
+            writeBody(req, resp, eTag, false, NO_COPY, jsonWriter -> writeResult(shared.result, jsonWriter));
+        }
+        timer.endStage(SearchMetrics.Stage.SERIALIZE);
+        endRequest(timer, req, filmIndex, searchDTO, true);
+    }
+
+    /** Result of a search and its JSON, null when it was too large to be cached or was not written. */
+    private static final class SharedResponse {
+
+        private final Object result;
+        private final String json;
+
+        private SharedResponse(Object result, String json) {
+            this.result = result;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Answers all the queries of a batch request at once, see {@link SearchParameterParser#parseBatch}. The searches
+     * share one scan of the films, aggregations are computed one by one.
+     */
+    @Override
+    public void doPost(final SlingHttpServletRequest req, final SlingHttpServletResponse resp) throws IOException {
+        final RequestTimer timer = RequestTimer.start(searchMetrics);
+        final Map<String, SearchDTO> queries = new LinkedHashMap<>();
+        final ParameterError error = SearchParameterParser.parseBatch(req.getReader(), maxBatchQueries, queries);
+        timer.endStage(SearchMetrics.Stage.PARSE);
+        if (error != null) {
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, error, timer);
+            return;
+        }
 
-        String jsonStr = new Gson().toJson(processRequest(req));
+        final AdmissionControl.Admission admission = admit(req, queries.values(), timer);
+        if (admission != null && !admission.isAdmitted()) {
+            writeTooManyRequests(resp, admission, timer);
+            return;
+        }
+        answer(req, resp, admission, timer,
+                (filmIndex, claimResponse) -> doBatch(req, resp, queries, filmIndex, timer, claimResponse));
+    }
+
+    private void doBatch(SlingHttpServletRequest req, SlingHttpServletResponse resp, Map<String, SearchDTO> queries,
+            FilmIndex filmIndex, RequestTimer timer, BooleanSupplier claimResponse) throws IOException {
+        final boolean cbor = isCbor(req);
+        final List<SearchDTO> searches = new ArrayList<>();
+        for (SearchDTO searchDTO : queries.values()) {
+            if (!searchDTO.isAggregate()) {
+                searches.add(searchDTO);
+            }
+        }
+        final int[][] sortedFilms = searchManagerService.searchBatch(filmIndex, searches);
+
+        final Map<String, Object> results = new LinkedHashMap<>();
+        int search = 0;
+        for (Map.Entry<String, SearchDTO> query : queries.entrySet()) {
+            final SearchDTO searchDTO = query.getValue();
+            results.put(query.getKey(), searchDTO.isAggregate()
+                    ? searchManagerService.aggregate(filmIndex, searchDTO)
+                    : createSearchResult(filmIndex, searchDTO, sortedFilms[search++]));
+        }
+        timer.endStage(SearchMetrics.Stage.SEARCH);
+        if (timer.isEnabled()) {
+            for (Map.Entry<String, SearchDTO> query : queries.entrySet()) {
+                if (!query.getValue().isAggregate()) {
+                    timer.recordSortOrder(query.getValue().getSortOrder());
+                }
+                recordSearch(timer, filmIndex, query.getValue(), results.get(query.getKey()));
+            }
+        }
+
+        if (!startResponse(resp, claimResponse, cbor, null, filmIndex, timer)) {
+            return;
+        }
+        setServerTiming(resp, timer);
+        writeBody(req, resp, null, cbor, NO_COPY, jsonWriter -> BatchResultJsonWriter.write(results, jsonWriter));
+        timer.endStage(SearchMetrics.Stage.SERIALIZE);
+        if (timer.end()) {
+            recordSlowBatch(timer, req, filmIndex, queries);
+        }
+    }
 
+    /**
+     * Answers an admitted request with the film index of its container, on the search executor when the async
+     * mode is on, the container is large enough and the request supports it, else right on the request thread.
+     */
+    private void answer(SlingHttpServletRequest req, SlingHttpServletResponse resp,
+            AdmissionControl.Admission admission, RequestTimer timer, IndexSearch search) throws IOException {
+        boolean async = false;
         try {
-            resp.getWriter().print(jsonStr);
-        } catch (IOException e) {
-            throw e;
+            final FilmIndex filmIndex = filmIndexService.getIndex(req.getResource());
+            timer.endStage(SearchMetrics.Stage.INDEX);
+
+            final ExecutorService executor = searchExecutor;
+            if (executor == null || filmIndex.size() < asyncMinFilms || !isAsyncSupported(req)) {
+                search.answer(filmIndex, RESPONSE_OWNED);
+                return;
+            }
+            // the timeout may answer while the search still runs, so it does not share the timer of the search
+            final AsyncSearch.Search queuedSearch = claimResponse -> {
+                timer.endStage(SearchMetrics.Stage.QUEUE);
+                search.answer(filmIndex, claimResponse);
+            };
+            AsyncSearch.start(req, executor, asyncTimeoutMillis, queuedSearch,
+                    () -> writeError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                            new ParameterError(null, null, "Search timed out"), RequestTimer.DISABLED), admission);
+            async = true;
+        } finally {
+            if (!async && admission != null) {
+                admission.close();
+            }
         }
     }
 
-    private SearchResult processRequest(SlingHttpServletRequest req) {
+    /** Whether the request can be answered asynchronously; false for a request that cannot tell. */
+    private static boolean isAsyncSupported(SlingHttpServletRequest req) {
+        try {
+            return req.isAsyncSupported();
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
 
-        final Resource rootResource = req.getResource();
-        List<Film> fullFilmList = Utils.parseRootResourcetoFilmsCollection(rootResource);
+    /**
+     * Claims the response of a search and sets its headers. A search that lost the response to the timeout of its
+     * async request, see {@link AsyncSearch}, gets false and ends the request without writing anything.
+     */
+    private boolean startResponse(SlingHttpServletResponse resp, BooleanSupplier claimResponse, boolean cbor,
+            String eTag, FilmIndex filmIndex, RequestTimer timer) {
+        if (!claimResponse.getAsBoolean()) {
+            timer.end();
+            return false;
+        }
 
-        SearchDTO searchDTO = Utils.createSearchDTO(req);
+        resp.setContentType(cbor ? CBOR_CONTENT_TYPE : JSON_CONTENT_TYPE);
+        if (gzip) {
+            resp.setHeader(VARY, ACCEPT_ENCODING);
+        }
+        if (eTag != null) {
+            resp.setHeader(ETAG, eTag);
+            resp.setDateHeader(LAST_MODIFIED, filmIndex.getLastModified());
+            if (StringUtils.isNotBlank(cacheControl)) {
+                resp.setHeader(CACHE_CONTROL, cacheControl);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the film index and answers the request, once the given supplier grants the search the response.
+     */
+    @FunctionalInterface
+    private interface IndexSearch {
 
-        List<Film> result = fullFilmList.stream()
-                .filter(film -> searchManagerService.isFilmMatchedToSearchParams(film, searchDTO))
-                .sorted(searchManagerService.getFilmComparator(searchDTO.getSortBy())).collect(Collectors.toList());
+        void answer(FilmIndex filmIndex, BooleanSupplier claimResponse) throws IOException;
+    }
 
-        List<Film> limitedResult = result;
-        if (searchDTO.getLimit() != null) {
-            limitedResult = result.stream().limit(searchDTO.getLimit()).collect(Collectors.toList());
+    /** Admission of the request by the {@link AdmissionControl}, or null when there is none. */
+    private AdmissionControl.Admission admit(SlingHttpServletRequest req, Collection<SearchDTO> searches,
+            RequestTimer timer) {
+        final AdmissionControl control = admissionControl;
+        if (control == null) {
+            return null;
         }
+        final AdmissionControl.Admission admission = control.admit(req, searches);
+        timer.endStage(SearchMetrics.Stage.ADMISSION);
+        return admission;
+    }
+
+    private static void writeTooManyRequests(SlingHttpServletResponse resp, AdmissionControl.Admission admission,
+            RequestTimer timer) throws IOException {
+        final long retryAfterSeconds = admission.getRetryAfterSeconds();
+        resp.setHeader(RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        writeError(resp, SC_TOO_MANY_REQUESTS, new ParameterError(null, null, "Too many requests"), timer);
+    }
+
+    /** Answers a request that is not searched, always as uncompressed JSON. */
+    private static void writeError(SlingHttpServletResponse resp, int status, ParameterError error,
+            RequestTimer timer) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType(JSON_CONTENT_TYPE);
+        setServerTiming(resp, timer);
+        ParameterErrorJsonWriter.write(status, error, resp.getWriter());
+        timer.end();
+    }
+
+    private void endRequest(RequestTimer timer, SlingHttpServletRequest req, FilmIndex filmIndex,
+            SearchDTO searchDTO, boolean searched) {
+        if (timer.end()) {
+            timer.recordSlowRequest(req.getResource().getPath(), searchDTO.getQueryKey(),
+                    searched ? searchManagerService.explain(filmIndex, searchDTO) : null);
+        }
+    }
+
+    /** Records a slow batch with the queries and plans of all its searches, each prefixed by its id. */
+    private void recordSlowBatch(RequestTimer timer, SlingHttpServletRequest req, FilmIndex filmIndex,
+            Map<String, SearchDTO> queries) {
+        final List<String> plans = searchManagerService.explainBatch(filmIndex, new ArrayList<>(queries.values()));
+        final StringBuilder query = new StringBuilder();
+        final StringBuilder plan = new StringBuilder();
+        int search = 0;
+        for (Map.Entry<String, SearchDTO> entry : queries.entrySet()) {
+            if (search > 0) {
+                query.append(BATCH_SEPARATOR);
+                plan.append(BATCH_SEPARATOR);
+            }
+            query.append(entry.getKey()).append(": ").append(entry.getValue().getQueryKey());
+            plan.append(entry.getKey()).append(": ").append(plans.get(search++));
+        }
+        timer.recordSlowRequest(req.getResource().getPath(), query.toString(), plan.toString());
+    }
+
+    /** Returns the {@link FilmAggregation} or the {@link SearchResult} the request asks for. */
+    private Object search(FilmIndex filmIndex, SearchDTO searchDTO, RequestTimer timer) {
+        final Object result = searchDTO.isAggregate()
+                ? searchManagerService.aggregate(filmIndex, searchDTO) : processRequest(filmIndex, searchDTO);
+        timer.endStage(SearchMetrics.Stage.SEARCH);
+        if (timer.isEnabled()) {
+            recordSearch(timer, filmIndex, searchDTO, result);
+        }
+        return result;
+    }
+
+    private void recordSearch(RequestTimer timer, FilmIndex filmIndex, SearchDTO searchDTO, Object result) {
+        timer.recordSearch(searchManagerService.getScanSize(filmIndex, searchDTO),
+                (result instanceof SearchResult) ? ((SearchResult) result).getResult().size() : 0);
+    }
+
+    private static void writeResult(Object result, JsonWriter jsonWriter) throws IOException {
+        if (result instanceof FilmAggregation) {
+            AggregationJsonWriter.write((FilmAggregation) result, jsonWriter);
+        } else {
+            SearchResultJsonWriter.write((SearchResult) result, jsonWriter);
+        }
+    }
+
+    private static boolean isCbor(SlingHttpServletRequest req) {
+        return CBOR_EXTENSION.equals(req.getRequestPathInfo().getExtension());
+    }
+
+    private boolean isGzipAccepted(SlingHttpServletRequest req) {
+        return gzip && Utils.acceptsGzip(req);
+    }
+
+    /**
+     * Writes the body as CBOR or JSON text, gzip encoded when the client accepts it. Uncompressed JSON goes
+     * through the writer of the response, like it always did. Returns the JSON text when it is at most the
+     * given length, else null, without holding longer bodies in memory, see {@link CopyingWriter}.
+     */
+    private String writeBody(SlingHttpServletRequest req, SlingHttpServletResponse resp, String eTag, boolean cbor,
+            int maxCopyLength, BodyWriter body) throws IOException {
+        final boolean compressed = isGzipAccepted(req);
+        if (!cbor && !compressed) {
+            final CopyingWriter writer = new CopyingWriter(resp.getWriter(), maxCopyLength);
+            final JsonWriter jsonWriter = SearchResultJsonWriter.newJsonWriter(writer);
+            body.write(jsonWriter);
+            jsonWriter.flush();
+            return writer.getCopy();
+        }
+
+        final OutputStream out = compressed
+                ? new CompressingOutputStream(resp, eTag, gzipMinSize, gzipLevel) : resp.getOutputStream();
+        final CopyingWriter writer = cbor ? null
+                : new CopyingWriter(new OutputStreamWriter(out, charsetOf(resp)), maxCopyLength);
+        try (JsonWriter jsonWriter = cbor ? new CborWriter(out) : SearchResultJsonWriter.newJsonWriter(writer)) {
+            body.write(jsonWriter);
+        }
+        return (writer != null) ? writer.getCopy() : null;
+    }
+
+    /** Writes the cached JSON of a search, gzip encoded when the client accepts it. */
+    private void writeJson(SlingHttpServletRequest req, SlingHttpServletResponse resp, String eTag, String json)
+            throws IOException {
+        if (!isGzipAccepted(req)) {
+            resp.getWriter().write(json);
+            return;
+        }
+
+        try (Writer writer = new OutputStreamWriter(new CompressingOutputStream(resp, eTag, gzipMinSize, gzipLevel),
+                charsetOf(resp))) {
+            writer.write(json);
+        }
+    }
+
+    /** The encoding the writer of the response would use, UTF-8 when none is set. */
+    private static Charset charsetOf(SlingHttpServletResponse resp) {
+        final String encoding = resp.getCharacterEncoding();
+        return (encoding != null) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        void write(JsonWriter jsonWriter) throws IOException;
+    }
+
+    private static void setServerTiming(SlingHttpServletResponse resp, RequestTimer timer) {
+        final String serverTiming = timer.getServerTiming();
+        if (serverTiming != null) {
+            resp.setHeader(SERVER_TIMING, serverTiming);
+        }
+    }
+
+    private SearchResult processRequest(FilmIndex filmIndex, SearchDTO searchDTO) {
+        return createSearchResult(filmIndex, searchDTO, searchManagerService.search(filmIndex, searchDTO));
+    }
+
+    private SearchResult createSearchResult(FilmIndex filmIndex, SearchDTO searchDTO, int[] sortedFilms) {
+        List<Film> result = new ArrayList<>(sortedFilms.length);
+        for (int ordinal : sortedFilms) {
+            result.add(filmIndex.getFilm(ordinal));
+        }
+
+        if (!searchDTO.isPaged() && !searchDTO.isWithTotal()) {
+            return new SearchResult(result, null, null, searchDTO.getFields());
+        }
+
+        // a full page may be followed by more films, the page after the last one is empty
+        final Integer limit = searchDTO.getLimit();
+        final String nextCursor = (searchDTO.isPaged() && limit != null && limit > 0 && sortedFilms.length == limit)
+                ? SearchCursor.after(filmIndex, searchDTO.getSortOrder(), sortedFilms[limit - 1]).encode() : null;
+        final Integer total = searchDTO.isWithTotal() ? searchManagerService.count(filmIndex, searchDTO) : null;
 
-        return new SearchResult(limitedResult);
+        return new SearchResult(result, nextCursor, total, searchDTO.getFields());
     }
 
 }
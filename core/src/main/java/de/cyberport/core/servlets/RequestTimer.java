@@ -0,0 +1,136 @@
+package de.cyberport.core.servlets;
+
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.services.SearchMetrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times the stages of one request for the {@link SearchMetrics}. Without metrics the shared {@link #DISABLED}
+ * timer is used, whose methods return right away, so an unmeasured request costs a null check per stage.
+ * The stage durations, the cache outcome and the scanned films are kept until the end of the request, so a
+ * slow request can be recorded with them.
+ */
+final class RequestTimer {
+
+    static final RequestTimer DISABLED = new RequestTimer(null, 0);
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final SearchMetrics metrics;
+    private final long start;
+    private final long startTime;
+    private final StringBuilder serverTiming;
+    private final Map<SearchMetrics.Stage, Long> stageNanos;
+    private long stageStart;
+    private long durationNanos;
+    private long scannedFilms;
+    private Boolean cacheHit;
+
+    private RequestTimer(SearchMetrics metrics, long start) {
+        this.metrics = metrics;
+        this.start = start;
+        this.startTime = (metrics != null) ? System.currentTimeMillis() : 0;
+        this.stageStart = start;
+        this.stageNanos = (metrics != null) ? new EnumMap<>(SearchMetrics.Stage.class) : null;
+        this.serverTiming = (metrics != null && metrics.isServerTimingEnabled()) ? new StringBuilder() : null;
+    }
+
+    static RequestTimer start(SearchMetrics metrics) {
+        return (metrics != null && metrics.isEnabled()) ? new RequestTimer(metrics, System.nanoTime()) : DISABLED;
+    }
+
+    boolean isEnabled() {
+        return metrics != null;
+    }
+
+    /** Records the time since the previous stage ended, or since the request started, for the given stage. */
+    void endStage(SearchMetrics.Stage stage) {
+        if (metrics != null) {
+            recordStage(stage, null);
+        }
+    }
+
+    /** Like {@link #endStage(SearchMetrics.Stage)}, with a description of the stage for the Server-Timing header. */
+    void endStage(SearchMetrics.Stage stage, String description) {
+        if (metrics != null) {
+            recordStage(stage, description);
+        }
+    }
+
+    private void recordStage(SearchMetrics.Stage stage, String description) {
+        final long now = System.nanoTime();
+        metrics.recordStage(stage, now - stageStart);
+        stageNanos.merge(stage, now - stageStart, Long::sum);
+        if (serverTiming != null) {
+            final String name = stage.name().toLowerCase(Locale.ROOT);
+            final double millis = (now - stageStart) / NANOS_PER_MILLI;
+            appendServerTiming((description != null)
+                    ? String.format(Locale.ROOT, "%s;desc=%s;dur=%.3f", name, description, millis)
+                    : String.format(Locale.ROOT, "%s;dur=%.3f", name, millis));
+        }
+        stageStart = now;
+    }
+
+    void recordSortOrder(SortOrder sortOrder) {
+        if (metrics != null) {
+            metrics.recordSortOrder(sortOrder);
+        }
+    }
+
+    void recordSearch(int scannedFilms, int returnedFilms) {
+        if (metrics != null) {
+            metrics.recordSearch(scannedFilms, returnedFilms);
+            this.scannedFilms += scannedFilms;
+        }
+    }
+
+    /** Ends the lookup in the result cache as {@link SearchMetrics.Stage#CACHE} stage, described by its outcome. */
+    void recordCacheLookup(boolean hit) {
+        if (metrics == null) {
+            return;
+        }
+
+        metrics.recordCacheLookup(hit);
+        cacheHit = hit;
+        recordStage(SearchMetrics.Stage.CACHE, hit ? "hit" : "miss");
+    }
+
+    private void appendServerTiming(String metric) {
+        if (serverTiming.length() > 0) {
+            serverTiming.append(", ");
+        }
+        serverTiming.append(metric);
+    }
+
+    /** Value of the Server-Timing header with the stages ended so far, null when none is to be sent. */
+    String getServerTiming() {
+        return (serverTiming != null && serverTiming.length() > 0) ? serverTiming.toString() : null;
+    }
+
+    boolean isCacheHit() {
+        return cacheHit != null && cacheHit;
+    }
+
+    /** Records the duration of the request and returns whether it is slow enough for the slow request log. */
+    boolean end() {
+        if (metrics == null) {
+            return false;
+        }
+
+        durationNanos = System.nanoTime() - start;
+        metrics.recordRequest(durationNanos);
+        return metrics.isSlow(durationNanos);
+    }
+
+    /** Records the ended request as slow request, with the plan of its search unless it was not searched. */
+    void recordSlowRequest(String path, String query, String plan) {
+        if (metrics != null) {
+            metrics.recordSlowRequest(new SlowRequest(startTime, path, query, plan, cacheHit, scannedFilms,
+                    durationNanos, new EnumMap<>(stageNanos)));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package de.cyberport.core.servlets;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors of the searches answered asynchronously. Virtual threads are looked up by reflection, since the
+ * bundle is built for Java 8; on older runtimes the searches run on a bounded pool of platform threads, which
+ * rejects searches beyond its queue. Searches are bound by the CPU, so on virtual threads just as many of them
+ * run at once as there would be platform threads, and as many wait for them as the queue of the pool would hold,
+ * see {@link BoundedExecutor}.
+ */
+final class SearchExecutors {
+
+    private static final String VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+    private static final String THREAD_NAME_PREFIX = "oscar-film-search-";
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private SearchExecutors() {
+    }
+
+    static ExecutorService newExecutor(boolean virtualThreads, int threads, int queueSize) {
+        final ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        return (virtualThreadExecutor != null) ? new BoundedExecutor(virtualThreadExecutor, threads, queueSize)
+                : newThreadPool(threads, queueSize);
+    }
+
+    /** An executor starting a virtual thread per search, or null before Java 21. */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR).invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    static ExecutorService newThreadPool(int threads, int queueSize) {
+        final int poolSize = Math.max(1, threads);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), newThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Executor running at most the given number of tasks at once on an executor that starts a thread per task.
+     * The other tasks wait on their threads for a permit, which is cheap for virtual threads, and tasks beyond
+     * the given queue size are rejected, like by the pool of platform threads.
+     */
+    static final class BoundedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService executor;
+        private final Semaphore running;
+        private final Semaphore accepted;
+
+        BoundedExecutor(ExecutorService executor, int threads, int queueSize) {
+            final int maxRunning = Math.max(1, threads);
+            this.executor = executor;
+            this.running = new Semaphore(maxRunning);
+            this.accepted = new Semaphore(maxRunning + Math.max(1, queueSize));
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (!accepted.tryAcquire()) {
+                throw new RejectedExecutionException("Too many searches waiting to run");
+            }
+            try {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException ex) {
+                accepted.release();
+                throw ex;
+            }
+        }
+
+        private void run(Runnable task) {
+            try {
+                running.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                accepted.release();
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                running.release();
+                accepted.release();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package de.cyberport.core.servlets;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs at most one computation per key at a time. Whoever asks for a key first computes the value, everyone
+ * asking for the same key meanwhile waits for that computation and gets its value, or its exception. The key is
+ * forgotten once the value is computed, so later calls compute it again.
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    V execute(K key, Computation<V> computation) throws IOException {
+        final CompletableFuture<V> flight = new CompletableFuture<>();
+        final CompletableFuture<V> running = flights.putIfAbsent(key, flight);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            final V value = computation.compute();
+            flight.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    int size() {
+        return flights.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the same search");
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    @FunctionalInterface
+    interface Computation<V> {
+
+        V compute() throws IOException;
+    }
+}
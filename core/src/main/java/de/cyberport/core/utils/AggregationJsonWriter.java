@@ -0,0 +1,82 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.FilmAggregation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes a {@link FilmAggregation} in the format of the aggregate mode, e.g.
+ * {"total":3,"aggregations":{"year":{"2018":2,"2019":1},"isBestPicture":{"true":1,"false":2}}}.
+ * Facets that were not requested are left out.
+ */
+public final class AggregationJsonWriter {
+
+    private static final String TOTAL = "total";
+    private static final String AGGREGATIONS = "aggregations";
+    private static final String YEAR = "year";
+    private static final String DECADE = "decade";
+    private static final String AWARDS = "awards";
+    private static final String NOMINATIONS = "nominations";
+    private static final String IS_BEST_PICTURE = "isBestPicture";
+    private static final String NUMBER_OF_REFERENCES = "numberOfReferences";
+    private static final String SUM = "sum";
+    private static final String AVG = "avg";
+    private static final String MAX = "max";
+
+    private AggregationJsonWriter() {
+    }
+
+    public static void write(FilmAggregation aggregation, Writer writer) throws IOException {
+        final JsonWriter jsonWriter = new JsonWriter(writer);
+        write(aggregation, jsonWriter);
+        jsonWriter.flush();
+    }
+
+    /** Writes the aggregation as the next value of an enclosing document. */
+    public static void write(FilmAggregation aggregation, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(TOTAL).value(aggregation.getTotal());
+        jsonWriter.name(AGGREGATIONS);
+        jsonWriter.beginObject();
+        writeHistogram(jsonWriter, YEAR, aggregation.getYears());
+        writeHistogram(jsonWriter, DECADE, aggregation.getDecades());
+        writeHistogram(jsonWriter, AWARDS, aggregation.getAwards());
+        writeHistogram(jsonWriter, NOMINATIONS, aggregation.getNominations());
+        if (aggregation.getBestPictureCount() != null) {
+            jsonWriter.name(IS_BEST_PICTURE);
+            jsonWriter.beginObject();
+            jsonWriter.name(Boolean.TRUE.toString()).value(aggregation.getBestPictureCount());
+            jsonWriter.name(Boolean.FALSE.toString()).value(aggregation.getTotal() - aggregation.getBestPictureCount());
+            jsonWriter.endObject();
+        }
+        if (aggregation.getReferencesSum() != null) {
+            jsonWriter.name(NUMBER_OF_REFERENCES);
+            jsonWriter.beginObject();
+            jsonWriter.name(SUM).value(aggregation.getReferencesSum());
+            if (aggregation.getReferencesMax() != null) {
+                jsonWriter.name(AVG).value(aggregation.getReferencesAverage());
+                jsonWriter.name(MAX).value(aggregation.getReferencesMax());
+            }
+            jsonWriter.endObject();
+        }
+        jsonWriter.endObject();
+        jsonWriter.endObject();
+    }
+
+    private static void writeHistogram(JsonWriter jsonWriter, String name, Map<Integer, Integer> histogram)
+            throws IOException {
+        if (histogram == null) {
+            return;
+        }
+
+        jsonWriter.name(name);
+        jsonWriter.beginObject();
+        for (Map.Entry<Integer, Integer> bucket : histogram.entrySet()) {
+            jsonWriter.name(String.valueOf(bucket.getKey())).value(bucket.getValue());
+        }
+        jsonWriter.endObject();
+    }
+}
@@ -0,0 +1,45 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.FilmAggregation;
+import de.cyberport.core.dto.SearchResult;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes the results of a batch request keyed by query id, {"results":{"winners":{"result":[...]}, ...}}.
+ * Every result is written exactly like the response to the single search, see {@link SearchResultJsonWriter}
+ * and {@link AggregationJsonWriter}.
+ */
+public final class BatchResultJsonWriter {
+
+    private static final String RESULTS = "results";
+
+    private BatchResultJsonWriter() {
+    }
+
+    /** The values are either {@link SearchResult}s or {@link FilmAggregation}s. */
+    public static void write(Map<String, Object> results, Writer writer) throws IOException {
+        final JsonWriter jsonWriter = SearchResultJsonWriter.newJsonWriter(writer);
+        write(results, jsonWriter);
+        jsonWriter.flush();
+    }
+
+    public static void write(Map<String, Object> results, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(RESULTS);
+        jsonWriter.beginObject();
+        for (Map.Entry<String, Object> result : results.entrySet()) {
+            jsonWriter.name(result.getKey());
+            if (result.getValue() instanceof FilmAggregation) {
+                AggregationJsonWriter.write((FilmAggregation) result.getValue(), jsonWriter);
+            } else {
+                SearchResultJsonWriter.write((SearchResult) result.getValue(), jsonWriter);
+            }
+        }
+        jsonWriter.endObject();
+        jsonWriter.endObject();
+    }
+}
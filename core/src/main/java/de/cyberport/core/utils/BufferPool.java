@@ -0,0 +1,34 @@
+package de.cyberport.core.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of the byte buffers used to encode and compress response bodies, so that a response does not allocate
+ * its buffers anew. At most a few buffers per processor are kept; more concurrent requests get new ones, which
+ * are dropped again afterwards.
+ */
+public final class BufferPool {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final int BUFFERS_PER_PROCESSOR = 4;
+
+    private static final Queue<byte[]> BUFFERS =
+            new ArrayBlockingQueue<>(BUFFERS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+
+    private BufferPool() {
+    }
+
+    public static byte[] acquire() {
+        final byte[] buffer = BUFFERS.poll();
+        return (buffer != null) ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    /** Returns the buffer to the pool, the caller must not use it afterwards. */
+    public static void release(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE) {
+            BUFFERS.offer(buffer);
+        }
+    }
+}
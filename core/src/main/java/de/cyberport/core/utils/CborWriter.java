@@ -0,0 +1,275 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * {@link JsonWriter} that encodes the document as CBOR (RFC 8949) instead of JSON text, so the JSON writers
+ * of the responses produce the binary format without any change. Objects and arrays are written with
+ * indefinite length, since they are streamed, strings as UTF-8 with definite length, integers in the
+ * shortest of the CBOR integer forms and all other numbers as double precision floats. The encoded bytes
+ * are collected in a pooled buffer, which is given back on {@link #close()}.
+ */
+public final class CborWriter extends JsonWriter {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+
+    private static final int ONE_BYTE_ARGUMENT = 24;
+    private static final int TWO_BYTE_ARGUMENT = 25;
+    private static final int FOUR_BYTE_ARGUMENT = 26;
+    private static final int EIGHT_BYTE_ARGUMENT = 27;
+
+    private static final int BEGIN_ARRAY = 0x9f;
+    private static final int BEGIN_MAP = 0xbf;
+    private static final int BREAK = 0xff;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int DOUBLE = 0xfb;
+
+    /** Longest head of a data item: the initial byte plus an eight byte argument. */
+    private static final int MAX_ITEM_HEAD = 9;
+
+    /** Never written to, the JSON text output of the super class is not used. */
+    private static final Writer NO_TEXT = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final OutputStream out;
+    private byte[] buffer = BufferPool.acquire();
+    private int position;
+
+    public CborWriter(OutputStream out) {
+        super(NO_TEXT);
+        this.out = out;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writeByte(BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        writeByte(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writeByte(BEGIN_MAP);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        writeByte(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        writeText(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeText(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) {
+        throw new UnsupportedOperationException("JSON text cannot be embedded in CBOR");
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        writeByte(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        return value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        ensureCapacity(MAX_ITEM_HEAD);
+        buffer[position++] = (byte) DOUBLE;
+        putLong(Double.doubleToLongBits(value), Long.BYTES);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        if (value >= 0) {
+            writeHead(MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        return value(value.doubleValue());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    /** Writes the encoded bytes, closes the stream and returns the buffer to the pool. */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            flush();
+            out.close();
+        } finally {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void writeText(String text) throws IOException {
+        writeHead(MAJOR_TEXT, utf8Length(text));
+        for (int i = 0; i < text.length(); i++) {
+            ensureCapacity(Integer.BYTES);
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced like String.getBytes does
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /** Initial byte of a data item with its argument in the shortest form. */
+    private void writeHead(int majorType, long argument) throws IOException {
+        ensureCapacity(MAX_ITEM_HEAD);
+        final int type = majorType << 5;
+        if (argument < ONE_BYTE_ARGUMENT) {
+            buffer[position++] = (byte) (type | argument);
+        } else if (argument <= 0xffL) {
+            buffer[position++] = (byte) (type | ONE_BYTE_ARGUMENT);
+            putLong(argument, Byte.BYTES);
+        } else if (argument <= 0xffffL) {
+            buffer[position++] = (byte) (type | TWO_BYTE_ARGUMENT);
+            putLong(argument, Short.BYTES);
+        } else if (argument <= 0xffffffffL) {
+            buffer[position++] = (byte) (type | FOUR_BYTE_ARGUMENT);
+            putLong(argument, Integer.BYTES);
+        } else {
+            buffer[position++] = (byte) (type | EIGHT_BYTE_ARGUMENT);
+            putLong(argument, Long.BYTES);
+        }
+    }
+
+    /** Big endian bytes of the lowest bytes of the value. */
+    private void putLong(long value, int bytes) {
+        for (int shift = (bytes - 1) * Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Writer closed");
+        }
+        if (position + bytes > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -4,6 +4,8 @@ public final class Constants {
 
     public static final class SupportedRequestParams {
         public static final String TITLE = "title";
+        public static final String TITLE_PREFIX = "titlePrefix";
+        public static final String TITLE_CONTAINS = "titleContains";
         public static final String YEAR = "year";
         public static final String MIN_YEAR = "minYear";
         public static final String MAX_YEAR = "maxYear";
@@ -13,6 +15,11 @@ public final class Constants {
         public static final String IS_BEST_PICTURE = "isBestPicture";
         public static final String SORT_BY = "sortBy";
         public static final String LIMIT = "limit";
+        public static final String OFFSET = "offset";
+        public static final String CURSOR = "cursor";
+        public static final String TOTAL = "total";
+        public static final String AGGREGATE = "aggregate";
+        public static final String FIELDS = "fields";
     }
 
     public enum SUPPORTED_SORT_BY {
@@ -20,7 +27,29 @@ public final class Constants {
         YEAR,
         AWARDS,
         NOMINATIONS,
+        REFERENCES,
+        SCORE,
         UNKNOWN
     }
 
+    /** Facets of the aggregate mode, named like the film properties in upper snake case, plus the decade. */
+    public enum SUPPORTED_AGGREGATE {
+        YEAR,
+        DECADE,
+        AWARDS,
+        NOMINATIONS,
+        IS_BEST_PICTURE,
+        NUMBER_OF_REFERENCES
+    }
+
+    /** Properties of a film in a search result, in the order they are written, named like the film properties. */
+    public enum SUPPORTED_FIELD {
+        TITLE,
+        YEAR,
+        AWARDS,
+        NOMINATIONS,
+        IS_BEST_PICTURE,
+        NUMBER_OF_REFERENCES
+    }
+
 }
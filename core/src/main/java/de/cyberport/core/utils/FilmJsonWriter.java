@@ -0,0 +1,99 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.Film;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * Writes films with a selection of their properties. There is one writer per selection, built once with the
+ * writers of the selected properties only, so writing a film is a loop over getter calls without reflection.
+ * With all the properties, the output is the same as {@code new Gson().toJson(film)} on the same JsonWriter:
+ * the properties in declaration order, a null title left out.
+ */
+public final class FilmJsonWriter {
+
+    private static final String TITLE = "title";
+    private static final String YEAR = "year";
+    private static final String AWARDS = "awards";
+    private static final String NOMINATIONS = "nominations";
+    private static final String IS_BEST_PICTURE = "isBestPicture";
+    private static final String NUMBER_OF_REFERENCES = "numberOfReferences";
+
+    private static final Constants.SUPPORTED_FIELD[] FIELDS = Constants.SUPPORTED_FIELD.values();
+
+    /** Writers indexed by the bit mask of their fields, 64 for the six film properties. */
+    private static final FilmJsonWriter[] WRITERS = new FilmJsonWriter[1 << FIELDS.length];
+
+    static {
+        for (int mask = 0; mask < WRITERS.length; mask++) {
+            WRITERS[mask] = new FilmJsonWriter(mask);
+        }
+    }
+
+    public static final FilmJsonWriter ALL_FIELDS = WRITERS[WRITERS.length - 1];
+
+    private final PropertyWriter[] propertyWriters;
+
+    private FilmJsonWriter(int mask) {
+        propertyWriters = new PropertyWriter[Integer.bitCount(mask)];
+        int property = 0;
+        for (Constants.SUPPORTED_FIELD field : FIELDS) {
+            if ((mask & (1 << field.ordinal())) != 0) {
+                propertyWriters[property++] = propertyWriterOf(field);
+            }
+        }
+    }
+
+    /** Writer of the given film properties, or of all of them for null. */
+    public static FilmJsonWriter of(EnumSet<Constants.SUPPORTED_FIELD> fields) {
+        if (fields == null) {
+            return ALL_FIELDS;
+        }
+
+        int mask = 0;
+        for (Constants.SUPPORTED_FIELD field : fields) {
+            mask |= 1 << field.ordinal();
+        }
+        return WRITERS[mask];
+    }
+
+    public void write(Film film, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        for (PropertyWriter propertyWriter : propertyWriters) {
+            propertyWriter.write(film, jsonWriter);
+        }
+        jsonWriter.endObject();
+    }
+
+    private static PropertyWriter propertyWriterOf(Constants.SUPPORTED_FIELD field) {
+        switch (field) {
+            case TITLE:
+                return (film, jsonWriter) -> {
+                    // Gson leaves out null values
+                    if (film.getTitle() != null) {
+                        jsonWriter.name(TITLE).value(film.getTitle());
+                    }
+                };
+            case YEAR:
+                return (film, jsonWriter) -> jsonWriter.name(YEAR).value(film.getYear());
+            case AWARDS:
+                return (film, jsonWriter) -> jsonWriter.name(AWARDS).value(film.getAwards());
+            case NOMINATIONS:
+                return (film, jsonWriter) -> jsonWriter.name(NOMINATIONS).value(film.getNominations());
+            case IS_BEST_PICTURE:
+                return (film, jsonWriter) -> jsonWriter.name(IS_BEST_PICTURE).value(film.isBestPicture());
+            case NUMBER_OF_REFERENCES:
+                return (film, jsonWriter) -> jsonWriter.name(NUMBER_OF_REFERENCES).value(film.getNumberOfReferences());
+            default:
+                throw new IllegalArgumentException("Unsupported field " + field);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PropertyWriter {
+
+        void write(Film film, JsonWriter jsonWriter) throws IOException;
+    }
+}
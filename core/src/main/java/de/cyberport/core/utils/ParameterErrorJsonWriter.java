@@ -0,0 +1,53 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.ParameterError;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the body of a 400 Bad Request, e.g.
+ * {"error":{"status":400,"message":"Parameter year must be an integer","parameter":"year","value":"abcd"}},
+ * or of another client error with the given status. Query, parameter and value are left out when they are not
+ * known.
+ */
+public final class ParameterErrorJsonWriter {
+
+    private static final String ERROR = "error";
+    private static final String STATUS = "status";
+    private static final String MESSAGE = "message";
+    private static final String QUERY = "query";
+    private static final String PARAMETER = "parameter";
+    private static final String VALUE = "value";
+
+    private static final int BAD_REQUEST = 400;
+
+    private ParameterErrorJsonWriter() {
+    }
+
+    public static void write(ParameterError error, Writer writer) throws IOException {
+        write(BAD_REQUEST, error, writer);
+    }
+
+    public static void write(int status, ParameterError error, Writer writer) throws IOException {
+        final JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.beginObject();
+        jsonWriter.name(ERROR);
+        jsonWriter.beginObject();
+        jsonWriter.name(STATUS).value(status);
+        jsonWriter.name(MESSAGE).value(error.getMessage());
+        if (error.getQuery() != null) {
+            jsonWriter.name(QUERY).value(error.getQuery());
+        }
+        if (error.getParameter() != null) {
+            jsonWriter.name(PARAMETER).value(error.getParameter());
+        }
+        if (error.getValue() != null) {
+            jsonWriter.name(VALUE).value(error.getValue());
+        }
+        jsonWriter.endObject();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+}
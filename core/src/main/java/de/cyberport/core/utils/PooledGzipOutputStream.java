@@ -0,0 +1,132 @@
+package de.cyberport.core.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the gzip format (RFC 1952) like {@link java.util.zip.GZIPOutputStream}, but with a {@link Deflater}
+ * and an output buffer taken from pools instead of allocated per stream. Both are returned on {@link #close()},
+ * which also closes the underlying stream, so the stream must always be closed. A deflater the full pool does not
+ * take back is ended right away, the pooled ones by {@link #endPooledDeflaters()}, since their native memory is
+ * not freed otherwise until they are garbage collected.
+ */
+public final class PooledGzipOutputStream extends OutputStream {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int TRAILER_SIZE = 8;
+    private static final int DEFLATERS_PER_PROCESSOR = 2;
+
+    /** Magic number, deflate method, no flags, no modification time, no extra flags, unknown OS. */
+    private static final byte[] HEADER = { (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED,
+            0, 0, 0, 0, 0, 0, 0 };
+
+    private static final Queue<Deflater> DEFLATERS =
+            new ArrayBlockingQueue<>(DEFLATERS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] singleByte = new byte[1];
+    private byte[] buffer;
+
+    public PooledGzipOutputStream(OutputStream out, int level) throws IOException {
+        this.out = out;
+        this.deflater = acquireDeflater(level);
+        this.buffer = BufferPool.acquire();
+        try {
+            out.write(HEADER);
+        } catch (IOException | RuntimeException ex) {
+            releaseDeflater(deflater);
+            BufferPool.release(buffer);
+            buffer = null;
+            throw ex;
+        }
+    }
+
+    /** Ends the deflaters in the pool, e.g. when the servlet using them is deactivated. */
+    public static void endPooledDeflaters() {
+        Deflater deflater;
+        while ((deflater = DEFLATERS.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private static Deflater acquireDeflater(int level) {
+        final Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            // raw deflate data, the gzip header and trailer are written here
+            return new Deflater(level, true);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return;
+        }
+
+        crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    private void deflate() throws IOException {
+        final int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) {
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /** Compresses the remaining input and writes the trailer, then returns the deflater and the buffer. */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            writeIntLittleEndian((int) crc.getValue(), 0);
+            writeIntLittleEndian((int) deflater.getBytesRead(), 4);
+            out.write(buffer, 0, TRAILER_SIZE);
+            out.close();
+        } finally {
+            releaseDeflater(deflater);
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void writeIntLittleEndian(int value, int offset) {
+        for (int i = 0; i < Integer.BYTES; i++) {
+            buffer[offset + i] = (byte) (value >>> (i * Byte.SIZE));
+        }
+    }
+}
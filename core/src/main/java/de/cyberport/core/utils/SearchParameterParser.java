@@ -0,0 +1,496 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import de.cyberport.core.dto.ParameterError;
+import de.cyberport.core.dto.SearchCursor;
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.SortOrder;
+import org.apache.commons.lang.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the search parameters into a {@link SearchDTO} without exceptions: an invalid parameter is returned
+ * as a {@link ParameterError}, which the servlet answers with a 400 Bad Request. Bad requests, e.g. of bots
+ * trying random values, thus cost no more than good ones.
+ *
+ * A GET request is read straight from its raw query string instead of from the parameter map. Parameter names
+ * are recognized by their hash, computed while scanning, and ints are read from the query string without
+ * creating a string; only string values and values with escapes are decoded. Like for the parameter map,
+ * the last value of a parameter sent more than once wins and unknown parameters are ignored.
+ */
+public final class SearchParameterParser {
+
+    private static final char PARAMETER_SEPARATOR = '&';
+    private static final char VALUE_SEPARATOR = '=';
+    private static final char ESCAPE = '%';
+    private static final char ESCAPED_SPACE = '+';
+    private static final String LIST_SEPARATOR = ",";
+    private static final String BATCH_QUERIES = "queries";
+    private static final String BATCH_QUERY_ID = "id";
+
+    private static final int HASH_PRIME = 31;
+
+    private static final Parameter[] PARAMETERS = Parameter.values();
+    private static final Constants.SUPPORTED_AGGREGATE[] AGGREGATES = Constants.SUPPORTED_AGGREGATE.values();
+    private static final Constants.SUPPORTED_FIELD[] FIELDS = Constants.SUPPORTED_FIELD.values();
+
+    /** The search parameters, their kind of value and the least value of the int parameters. */
+    private enum Parameter {
+        TITLE(Constants.SupportedRequestParams.TITLE, false, 0),
+        TITLE_PREFIX(Constants.SupportedRequestParams.TITLE_PREFIX, false, 0),
+        TITLE_CONTAINS(Constants.SupportedRequestParams.TITLE_CONTAINS, false, 0),
+        YEAR(Constants.SupportedRequestParams.YEAR, true, Integer.MIN_VALUE),
+        MIN_YEAR(Constants.SupportedRequestParams.MIN_YEAR, true, Integer.MIN_VALUE),
+        MAX_YEAR(Constants.SupportedRequestParams.MAX_YEAR, true, Integer.MIN_VALUE),
+        MIN_AWARDS(Constants.SupportedRequestParams.MIN_AWARDS, true, 0),
+        MAX_AWARDS(Constants.SupportedRequestParams.MAX_AWARDS, true, 0),
+        NOMINATIONS(Constants.SupportedRequestParams.NOMINATIONS, true, 0),
+        IS_BEST_PICTURE(Constants.SupportedRequestParams.IS_BEST_PICTURE, false, 0),
+        SORT_BY(Constants.SupportedRequestParams.SORT_BY, false, 0),
+        LIMIT(Constants.SupportedRequestParams.LIMIT, true, 0),
+        OFFSET(Constants.SupportedRequestParams.OFFSET, true, 0),
+        CURSOR(Constants.SupportedRequestParams.CURSOR, false, 0),
+        TOTAL(Constants.SupportedRequestParams.TOTAL, false, 0),
+        AGGREGATE(Constants.SupportedRequestParams.AGGREGATE, false, 0),
+        FIELDS(Constants.SupportedRequestParams.FIELDS, false, 0);
+
+        private final String queryName;
+        private final int hash;
+        private final boolean integer;
+        private final int minValue;
+
+        Parameter(String queryName, boolean integer, int minValue) {
+            this.queryName = queryName;
+            this.hash = queryName.hashCode();
+            this.integer = integer;
+            this.minValue = minValue;
+        }
+    }
+
+    private SearchParameterParser() {
+    }
+
+    /** Reads the query string of the request, or its parameter map when it has no query string. */
+    public static ParameterError parse(SlingHttpServletRequest req, SearchDTO searchDTO) {
+        final String queryString = req.getQueryString();
+        if (queryString != null) {
+            return parseQueryString(queryString, searchDTO);
+        }
+
+        final Map<String, String[]> parameters = req.getParameterMap();
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            final String[] values = parameter.getValue();
+            final ParameterError error = setParameter(searchDTO, parameter.getKey(), values[values.length - 1]);
+            if (error != null) {
+                return error;
+            }
+        }
+        return checkCursor(searchDTO);
+    }
+
+    /** Reads parameters with one value each, e.g. the ones of a batch query; null values unset a parameter. */
+    public static ParameterError parse(Map<String, String> parameters, SearchDTO searchDTO) {
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            final ParameterError error = setParameter(searchDTO, parameter.getKey(), parameter.getValue());
+            if (error != null) {
+                return error;
+            }
+        }
+        return checkCursor(searchDTO);
+    }
+
+    /**
+     * Reads the body of a batch request, {"queries":[{"id":"winners","isBestPicture":true,"limit":5}, ...]},
+     * into one search per query id, in the order of the queries. Every query takes the request parameters
+     * of a single search as JSON strings, numbers or booleans. An error about one query carries its id.
+     */
+    public static ParameterError parseBatch(Reader body, int maxQueries, Map<String, SearchDTO> searchDTOs) {
+        final JsonElement batch;
+        try {
+            batch = new JsonParser().parse(body);
+        } catch (JsonParseException ex) {
+            return new ParameterError(null, null, "Batch request is not valid JSON");
+        }
+        if (!batch.isJsonObject() || !batch.getAsJsonObject().has(BATCH_QUERIES)
+                || !batch.getAsJsonObject().get(BATCH_QUERIES).isJsonArray()) {
+            return new ParameterError(null, null, "Batch request must contain an array of " + BATCH_QUERIES);
+        }
+
+        final JsonArray queries = batch.getAsJsonObject().getAsJsonArray(BATCH_QUERIES);
+        if (queries.size() > maxQueries) {
+            return new ParameterError(null, null, "Batch request cannot contain more than " + maxQueries
+                    + " queries");
+        }
+
+        for (JsonElement query : queries) {
+            if (!query.isJsonObject()) {
+                return new ParameterError(null, null, "Batch query must be an object");
+            }
+
+            final JsonElement idValue = query.getAsJsonObject().get(BATCH_QUERY_ID);
+            final String id = (idValue != null && idValue.isJsonPrimitive()) ? idValue.getAsString() : null;
+            if (StringUtils.isEmpty(id)) {
+                return new ParameterError(null, null, "Batch query must have an " + BATCH_QUERY_ID);
+            }
+            if (searchDTOs.containsKey(id)) {
+                return new ParameterError(id, BATCH_QUERY_ID, id,
+                        "Batch query " + BATCH_QUERY_ID + " " + id + " is used more than once");
+            }
+
+            final Map<String, String> parameters = new HashMap<>();
+            for (Map.Entry<String, JsonElement> parameter : query.getAsJsonObject().entrySet()) {
+                final JsonElement value = parameter.getValue();
+                if (!value.isJsonNull() && !value.isJsonPrimitive()) {
+                    return new ParameterError(id, parameter.getKey(), null,
+                            "Parameter " + parameter.getKey() + " must be a single value");
+                }
+                if (!BATCH_QUERY_ID.equals(parameter.getKey())) {
+                    parameters.put(parameter.getKey(), value.isJsonNull() ? null : value.getAsString());
+                }
+            }
+
+            final SearchDTO searchDTO = new SearchDTO();
+            final ParameterError error = parse(parameters, searchDTO);
+            if (error != null) {
+                return error.withQuery(id);
+            }
+            searchDTOs.put(id, searchDTO);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a raw query string, e.g. 'minYear=2000&sortBy=awards%3Adesc'. An invalid value is only an error when
+     * no valid value of the same parameter follows it.
+     */
+    public static ParameterError parseQueryString(String queryString, SearchDTO searchDTO) {
+        final int length = queryString.length();
+        ParameterError[] errors = null;
+        int start = 0;
+        while (start < length) {
+            int end = queryString.indexOf(PARAMETER_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (start == end) {
+                start = end + 1;
+                continue;
+            }
+
+            int nameEnd = end;
+            boolean escaped = false;
+            int hash = 0;
+            for (int position = start; position < end; position++) {
+                final char c = queryString.charAt(position);
+                if (c == VALUE_SEPARATOR) {
+                    nameEnd = position;
+                    break;
+                }
+                escaped |= c == ESCAPE || c == ESCAPED_SPACE;
+                hash = HASH_PRIME * hash + c;
+            }
+
+            final Parameter parameter;
+            if (escaped) {
+                final String name = decode(queryString, start, nameEnd);
+                if (name == null) {
+                    return new ParameterError(null, null, "Parameter name " + queryString.substring(start, nameEnd)
+                            + " is not URL encoded");
+                }
+                if (name.trim().isEmpty()) {
+                    return new ParameterError(name, null, "Parameter name cannot be empty");
+                }
+                parameter = parameterOf(name, 0, name.length(), name.hashCode());
+            } else if (start == nameEnd) {
+                return new ParameterError("", null, "Parameter name cannot be empty");
+            } else {
+                parameter = parameterOf(queryString, start, nameEnd, hash);
+            }
+
+            if (parameter != null) {
+                final ParameterError error = parseValue(searchDTO, parameter, queryString,
+                        (nameEnd < end) ? nameEnd + 1 : end, end);
+                if (error != null) {
+                    errors = (errors != null) ? errors : new ParameterError[PARAMETERS.length];
+                    errors[parameter.ordinal()] = error;
+                } else if (errors != null) {
+                    errors[parameter.ordinal()] = null;
+                }
+            }
+            start = end + 1;
+        }
+
+        if (errors != null) {
+            for (ParameterError error : errors) {
+                if (error != null) {
+                    return error;
+                }
+            }
+        }
+        return checkCursor(searchDTO);
+    }
+
+    private static ParameterError parseValue(SearchDTO searchDTO, Parameter parameter, String queryString, int start,
+            int end) {
+        if (parameter.integer && !isEscaped(queryString, start, end)) {
+            return setInt(searchDTO, parameter, queryString, start, end);
+        }
+
+        final String value = decode(queryString, start, end);
+        if (value == null) {
+            return new ParameterError(parameter.queryName, queryString.substring(start, end),
+                    "Parameter " + parameter.queryName + " is not URL encoded");
+        }
+        return setParameter(searchDTO, parameter, value);
+    }
+
+    private static Parameter parameterOf(String text, int start, int end, int hash) {
+        for (Parameter parameter : PARAMETERS) {
+            if (parameter.hash == hash && parameter.queryName.length() == end - start
+                    && text.regionMatches(start, parameter.queryName, 0, end - start)) {
+                return parameter;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEscaped(String text, int start, int end) {
+        for (int position = start; position < end; position++) {
+            final char c = text.charAt(position);
+            if (c == ESCAPE || c == ESCAPED_SPACE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes '+' and the percent escapes between start and end, the escaped bytes as UTF-8; null for
+     * an incomplete escape. Text without escapes is returned as it is.
+     */
+    private static String decode(String text, int start, int end) {
+        if (!isEscaped(text, start, end)) {
+            return text.substring(start, end);
+        }
+
+        final StringBuilder decoded = new StringBuilder(end - start);
+        byte[] bytes = null;
+        int position = start;
+        while (position < end) {
+            final char c = text.charAt(position);
+            if (c == ESCAPED_SPACE) {
+                decoded.append(' ');
+                position++;
+            } else if (c != ESCAPE) {
+                decoded.append(c);
+                position++;
+            } else {
+                if (bytes == null) {
+                    bytes = new byte[(end - position) / 3];
+                }
+                int count = 0;
+                while (position < end && text.charAt(position) == ESCAPE) {
+                    final int high = (position + 2 < end) ? Character.digit(text.charAt(position + 1), 16) : -1;
+                    final int low = (position + 2 < end) ? Character.digit(text.charAt(position + 2), 16) : -1;
+                    if (high < 0 || low < 0) {
+                        return null;
+                    }
+                    bytes[count++] = (byte) ((high << 4) | low);
+                    position += 3;
+                }
+                decoded.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+            }
+        }
+        return decoded.toString();
+    }
+
+    private static ParameterError setParameter(SearchDTO searchDTO, String name, String value) {
+        if (name == null || name.trim().isEmpty()) {
+            return new ParameterError(name, value, "Parameter name cannot be empty");
+        }
+
+        final Parameter parameter = parameterOf(name, 0, name.length(), name.hashCode());
+        return (parameter != null) ? setParameter(searchDTO, parameter, value) : null;
+    }
+
+    private static ParameterError setParameter(SearchDTO searchDTO, Parameter parameter, String value) {
+        if (parameter.integer) {
+            return (value != null) ? setInt(searchDTO, parameter, value, 0, value.length())
+                    : setInt(searchDTO, parameter, null);
+        }
+
+        switch (parameter) {
+            case TITLE:
+                searchDTO.setTitle(value);
+                return null;
+            case TITLE_PREFIX:
+                searchDTO.setTitlePrefix(value);
+                return null;
+            case TITLE_CONTAINS:
+                searchDTO.setTitleContains(value);
+                return null;
+            case IS_BEST_PICTURE:
+                searchDTO.setIsBestPicture((value != null) ? Boolean.parseBoolean(value) : null);
+                return null;
+            case SORT_BY:
+                final SortOrder sortOrder = (value != null) ? SortOrder.tryParse(value) : SortOrder.DEFAULT;
+                if (sortOrder == null) {
+                    return new ParameterError(parameter.queryName, value, "Unsupported sort order " + value);
+                }
+                searchDTO.setSortOrder(sortOrder);
+                return null;
+            case CURSOR:
+                final SearchCursor cursor = SearchCursor.tryDecode(value);
+                if (cursor == null) {
+                    return new ParameterError(parameter.queryName, value, "Invalid cursor " + value);
+                }
+                searchDTO.setCursor(cursor);
+                return null;
+            case TOTAL:
+                searchDTO.setWithTotal(Boolean.parseBoolean(value));
+                return null;
+            case AGGREGATE:
+                return setAggregations(searchDTO, value);
+            case FIELDS:
+                return setFields(searchDTO, value);
+            default:
+                return null;
+        }
+    }
+
+    private static ParameterError setInt(SearchDTO searchDTO, Parameter parameter, String text, int start, int end) {
+        final long value = Utils.parseInt(text, start, end);
+        if (value == Utils.NOT_AN_INT) {
+            return new ParameterError(parameter.queryName, text.substring(start, end),
+                    "Parameter " + parameter.queryName + " must be an integer");
+        }
+        if (value < parameter.minValue) {
+            return new ParameterError(parameter.queryName, text.substring(start, end),
+                    "Parameter " + parameter.queryName + " cannot be less than " + parameter.minValue);
+        }
+        return setInt(searchDTO, parameter, (int) value);
+    }
+
+    private static ParameterError setInt(SearchDTO searchDTO, Parameter parameter, Integer value) {
+        switch (parameter) {
+            case YEAR:
+                searchDTO.setYear(value);
+                break;
+            case MIN_YEAR:
+                searchDTO.setMinYear(value);
+                break;
+            case MAX_YEAR:
+                searchDTO.setMaxYear(value);
+                break;
+            case MIN_AWARDS:
+                searchDTO.setMinAwards(value);
+                break;
+            case MAX_AWARDS:
+                searchDTO.setMaxAwards(value);
+                break;
+            case NOMINATIONS:
+                searchDTO.setNominations(value);
+                break;
+            case LIMIT:
+                searchDTO.setLimit(value);
+                break;
+            case OFFSET:
+                searchDTO.setOffset(value);
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * Reads comma separated facet names written like the film properties, e.g. 'year,isBestPicture'.
+     * An empty value asks for all the facets.
+     */
+    private static ParameterError setAggregations(SearchDTO searchDTO, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            searchDTO.setAggregations(EnumSet.allOf(Constants.SUPPORTED_AGGREGATE.class));
+            return null;
+        }
+
+        final EnumSet<Constants.SUPPORTED_AGGREGATE> aggregations = EnumSet.noneOf(Constants.SUPPORTED_AGGREGATE.class);
+        for (String facet : value.split(LIST_SEPARATOR)) {
+            final Constants.SUPPORTED_AGGREGATE aggregate = constantOf(AGGREGATES, facet);
+            if (aggregate == null) {
+                return new ParameterError(Constants.SupportedRequestParams.AGGREGATE, value,
+                        "Unsupported facet " + facet.trim());
+            }
+            aggregations.add(aggregate);
+        }
+        searchDTO.setAggregations(aggregations);
+        return null;
+    }
+
+    /**
+     * Reads comma separated film properties, e.g. 'title,year'. They are always written in the order of the
+     * film properties, whatever order they are sent in. An empty value asks for all the properties.
+     */
+    private static ParameterError setFields(SearchDTO searchDTO, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            searchDTO.setFields(null);
+            return null;
+        }
+
+        final EnumSet<Constants.SUPPORTED_FIELD> fields = EnumSet.noneOf(Constants.SUPPORTED_FIELD.class);
+        for (String name : value.split(LIST_SEPARATOR)) {
+            final Constants.SUPPORTED_FIELD field = constantOf(FIELDS, name);
+            if (field == null) {
+                return new ParameterError(Constants.SupportedRequestParams.FIELDS, value,
+                        "Unsupported field " + name.trim());
+            }
+            fields.add(field);
+        }
+        searchDTO.setFields(fields);
+        return null;
+    }
+
+    /** The constant named like the film property in upper snake case, e.g. IS_BEST_PICTURE for 'isBestPicture'. */
+    private static <T extends Enum<T>> T constantOf(T[] constants, String propertyName) {
+        final String name = propertyName.trim();
+        for (T constant : constants) {
+            if (isConstantName(constant.name(), name)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isConstantName(String constantName, String propertyName) {
+        int position = 0;
+        for (int i = 0; i < propertyName.length(); i++) {
+            final char c = propertyName.charAt(i);
+            if (i > 0 && Character.isUpperCase(c) && Character.isLowerCase(propertyName.charAt(i - 1))) {
+                if (position == constantName.length() || constantName.charAt(position++) != '_') {
+                    return false;
+                }
+            }
+            if (position == constantName.length() || constantName.charAt(position++) != Character.toUpperCase(c)) {
+                return false;
+            }
+        }
+        return position == constantName.length();
+    }
+
+    private static ParameterError checkCursor(SearchDTO searchDTO) {
+        final SearchCursor cursor = searchDTO.getCursor();
+        if (cursor != null && cursor != SearchCursor.START && !cursor.getSortOrder().equals(searchDTO.getSortOrder())) {
+            return new ParameterError(Constants.SupportedRequestParams.CURSOR, null,
+                    "Cursor does not match the sortBy parameter");
+        }
+        return null;
+    }
+}
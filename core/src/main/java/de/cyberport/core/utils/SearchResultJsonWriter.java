@@ -0,0 +1,62 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.SearchResult;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a {@link SearchResult} film by film, so that the response body is never held in memory as a whole.
+ * The output is the same as {@code new Gson().toJson(searchResult)}, except that the films are cut to the
+ * requested fields, see {@link FilmJsonWriter}.
+ */
+public final class SearchResultJsonWriter {
+
+    /** Gson instances are immutable and thread safe, so all the requests share one. */
+    private static final Gson GSON = new Gson();
+
+    private static final String RESULT = "result";
+    private static final String NEXT_CURSOR = "nextCursor";
+    private static final String TOTAL = "total";
+
+    private SearchResultJsonWriter() {
+    }
+
+    public static void write(SearchResult searchResult, Writer writer) throws IOException {
+        final JsonWriter jsonWriter = newJsonWriter(writer);
+        write(searchResult, jsonWriter);
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writer with the same settings as the one Gson uses for {@code toJson}. Gson only makes the writer HTML
+     * safe in {@code toJson}, not in {@code newJsonWriter}, so it is set here, e.g. '<' is written as \u003c.
+     */
+    public static JsonWriter newJsonWriter(Writer writer) throws IOException {
+        final JsonWriter jsonWriter = GSON.newJsonWriter(writer);
+        jsonWriter.setHtmlSafe(true);
+        return jsonWriter;
+    }
+
+    /** Writes the search result as the next value of an enclosing document. */
+    public static void write(SearchResult searchResult, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(RESULT);
+        jsonWriter.beginArray();
+        final FilmJsonWriter filmWriter = FilmJsonWriter.of(searchResult.getFields());
+        for (Film film : searchResult.getResult()) {
+            filmWriter.write(film, jsonWriter);
+        }
+        jsonWriter.endArray();
+        if (searchResult.getNextCursor() != null) {
+            jsonWriter.name(NEXT_CURSOR).value(searchResult.getNextCursor());
+        }
+        if (searchResult.getTotal() != null) {
+            jsonWriter.name(TOTAL).value(searchResult.getTotal());
+        }
+        jsonWriter.endObject();
+    }
+}
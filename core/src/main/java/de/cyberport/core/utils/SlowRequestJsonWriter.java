@@ -0,0 +1,80 @@
+package de.cyberport.core.utils;
+
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.services.SearchMetrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the slow request log, newest first, e.g. [{"time":"2020-02-10T08:15:30.120Z","path":"/content/oscars",
+ * "query":"minYear=2000;sortBy=title;","plan":"year index (4210 films), sequential","cache":"miss",
+ * "scannedFilms":4210,"durationMillis":612.25,"stages":{"parse":0.05,"index":0.01,"search":611.9}}].
+ */
+public final class SlowRequestJsonWriter {
+
+    private static final String TIME = "time";
+    private static final String PATH = "path";
+    private static final String QUERY = "query";
+    private static final String PLAN = "plan";
+    private static final String CACHE = "cache";
+    private static final String CACHE_HIT = "hit";
+    private static final String CACHE_MISS = "miss";
+    private static final String SCANNED_FILMS = "scannedFilms";
+    private static final String DURATION_MILLIS = "durationMillis";
+    private static final String STAGES = "stages";
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double MILLIS_PRECISION = 1000.0;
+
+    private SlowRequestJsonWriter() {
+    }
+
+    public static String write(List<SlowRequest> slowRequests) {
+        final StringWriter writer = new StringWriter();
+        try {
+            final JsonWriter jsonWriter = new JsonWriter(writer);
+            jsonWriter.beginArray();
+            for (SlowRequest slowRequest : slowRequests) {
+                write(slowRequest, jsonWriter);
+            }
+            jsonWriter.endArray();
+            jsonWriter.flush();
+        } catch (IOException ex) {
+            // a StringWriter does not throw
+            throw new IllegalStateException(ex);
+        }
+        return writer.toString();
+    }
+
+    private static void write(SlowRequest slowRequest, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name(TIME).value(Instant.ofEpochMilli(slowRequest.getTime()).toString());
+        jsonWriter.name(PATH).value(slowRequest.getPath());
+        jsonWriter.name(QUERY).value(slowRequest.getQuery());
+        if (slowRequest.getPlan() != null) {
+            jsonWriter.name(PLAN).value(slowRequest.getPlan());
+        }
+        if (slowRequest.getCacheHit() != null) {
+            jsonWriter.name(CACHE).value(slowRequest.getCacheHit() ? CACHE_HIT : CACHE_MISS);
+        }
+        jsonWriter.name(SCANNED_FILMS).value(slowRequest.getScannedFilms());
+        jsonWriter.name(DURATION_MILLIS).value(toMillis(slowRequest.getDurationNanos()));
+        jsonWriter.name(STAGES);
+        jsonWriter.beginObject();
+        for (Map.Entry<SearchMetrics.Stage, Long> stage : slowRequest.getStageNanos().entrySet()) {
+            jsonWriter.name(stage.getKey().name().toLowerCase(Locale.ROOT)).value(toMillis(stage.getValue()));
+        }
+        jsonWriter.endObject();
+        jsonWriter.endObject();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / NANOS_PER_MILLI * MILLIS_PRECISION) / MILLIS_PRECISION;
+    }
+}
@@ -1,17 +1,35 @@
 package de.cyberport.core.utils;
 
 import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.ParameterError;
 import de.cyberport.core.dto.SearchDTO;
-import org.apache.commons.lang.StringUtils;
+import de.cyberport.core.index.FilmIndex;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class Utils {
 
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String ANY_ENCODING = "*";
+    private static final String QUALITY_PREFIX = "q=";
+
+    private static final long ETAG_HASH_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long ETAG_HASH_PRIME = 0x100000001b3L;
+
+    /** Returned by {@link #parseInt(CharSequence, int, int)} for a value that is no int. */
+    public static final long NOT_AN_INT = Long.MIN_VALUE;
+
     public static List<Film> parseRootResourcetoFilmsCollection(Resource rootResource) {
         if (rootResource == null) {
             return null;
@@ -27,75 +45,145 @@ public class Utils {
         return fullFilmList;
     }
 
-    public static SearchDTO createSearchDTO(SlingHttpServletRequest req) {
-        SearchDTO searchDTO = new SearchDTO();
+    /** Reads the search parameters of the request, see {@link SearchParameterParser}. */
+    public static SearchDTO createSearchDTO(SlingHttpServletRequest req) throws IllegalArgumentException {
+        final SearchDTO searchDTO = new SearchDTO();
+        final ParameterError error = SearchParameterParser.parse(req, searchDTO);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getMessage());
+        }
+        return searchDTO;
+    }
 
-        Map<String, String[]> requestParametersMap = req.getParameterMap();
-        for (String parameterName : requestParametersMap.keySet()) {
-            String[] parameterValues = requestParametersMap.get(parameterName);
-            String parameterValue = parameterValues[parameterValues.length - 1];
+    /** Same as {@link #createSearchDTO(SlingHttpServletRequest)} for parameters with one value each. */
+    public static SearchDTO createSearchDTO(Map<String, String> parameters) throws IllegalArgumentException {
+        final SearchDTO searchDTO = new SearchDTO();
+        final ParameterError error = SearchParameterParser.parse(parameters, searchDTO);
+        if (error != null) {
+            throw new IllegalArgumentException(error.getMessage());
+        }
+        return searchDTO;
+    }
 
-            setSearchParam(searchDTO, parameterName, parameterValue);
+    public static String createQueryKey(FilmIndex filmIndex, SearchDTO searchDTO) {
+        return filmIndex.getPath() + '@' + Long.toHexString(filmIndex.getVersion()) + '?' + searchDTO.getQueryKey();
+    }
+
+    /**
+     * Strong entity tag of a search response: it changes with the content of the container and with the
+     * normalized query, so equal searches sent with parameters in another order share one tag.
+     */
+    public static String createETag(FilmIndex filmIndex, SearchDTO searchDTO) {
+        return createETag(filmIndex, searchDTO, null);
+    }
+
+    /** Same as {@link #createETag(FilmIndex, SearchDTO)} for another format of the response, e.g. 'cbor'. */
+    public static String createETag(FilmIndex filmIndex, SearchDTO searchDTO, String format) {
+        final String queryKey = searchDTO.getQueryKey();
+        long queryHash = ETAG_HASH_OFFSET_BASIS;
+        for (int i = 0; i < queryKey.length(); i++) {
+            queryHash = (queryHash ^ queryKey.charAt(i)) * ETAG_HASH_PRIME;
         }
+        return '"' + Long.toHexString(filmIndex.getVersion()) + '-' + Long.toHexString(queryHash)
+                + ((format != null) ? "-" + format : "") + '"';
+    }
 
-        return searchDTO;
+    /** Entity tag of the gzip encoded response: a strong tag must differ between content encodings. */
+    public static String createGzipETag(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX + '"';
     }
 
-    private static SearchDTO setSearchParam(SearchDTO searchDTO, String parameterName, String parameterValue) {
-        if (StringUtils.isBlank(parameterName))
-            throw new IllegalArgumentException("Parameter " + parameterName + " cannot be null or empty");
-
-        switch (parameterName) {
-            case Constants.SupportedRequestParams.TITLE:
-                searchDTO.setTitle(parameterValue);
-                break;
-            case Constants.SupportedRequestParams.YEAR:
-                searchDTO.setYear(parseStrToInteger(parameterValue, parameterName));
-                break;
-            case Constants.SupportedRequestParams.MIN_YEAR:
-                searchDTO.setMinYear(parseStrToInteger(parameterValue, parameterName));
-                break;
-            case Constants.SupportedRequestParams.MAX_YEAR:
-                searchDTO.setMaxYear(parseStrToInteger(parameterValue, parameterName));
-                break;
-            case Constants.SupportedRequestParams.MIN_AWARDS:
-                searchDTO.setMinAwards(parseStrToInteger(parameterValue, parameterName));
-                break;
-            case Constants.SupportedRequestParams.MAX_AWARDS:
-                searchDTO.setMaxAwards(parseStrToInteger(parameterValue, parameterName));
-                break;
-            case Constants.SupportedRequestParams.NOMINATIONS:
-                searchDTO.setNominations(parseStrToInteger(parameterValue, parameterName));
-                break;
-            case Constants.SupportedRequestParams.IS_BEST_PICTURE:
-                final Boolean isBestPicture = (parameterValue != null)
-                        ? Boolean.parseBoolean(parameterValue) : null;
-                searchDTO.setIsBestPicture(isBestPicture);
-                break;
-            case Constants.SupportedRequestParams.SORT_BY:
-                final Constants.SUPPORTED_SORT_BY sortBy = (parameterValue != null)
-                        ? Constants.SUPPORTED_SORT_BY.valueOf(parameterValue.toUpperCase())
-                        : Constants.SUPPORTED_SORT_BY.TITLE;
-                searchDTO.setSortBy(sortBy);
-                break;
-            case Constants.SupportedRequestParams.LIMIT:
-                searchDTO.setLimit(parseStrToInteger(parameterValue, parameterName));
-                break;
-            default:
-                return searchDTO;
+    /**
+     * Whether the client accepts a gzip encoded response, e.g. for 'gzip, deflate, br'. Codings with the
+     * quality 0 are not accepted, 'gzip;q=0' beats a '*' in the same header.
+     */
+    public static boolean acceptsGzip(SlingHttpServletRequest req) {
+        final String acceptEncoding = req.getHeader(ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
         }
 
-        return searchDTO;
+        Boolean anyAccepted = null;
+        for (String candidate : acceptEncoding.split(",")) {
+            final String[] parts = candidate.split(";");
+            final String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+                if (parameter.startsWith(QUALITY_PREFIX)) {
+                    accepted = isPositiveQuality(parameter.substring(QUALITY_PREFIX.length()));
+                }
+            }
+
+            if (GZIP.equals(coding) || X_GZIP.equals(coding)) {
+                return accepted;
+            }
+            if (ANY_ENCODING.equals(coding)) {
+                anyAccepted = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(anyAccepted);
+    }
+
+    private static boolean isPositiveQuality(String quality) {
+        try {
+            return Double.parseDouble(quality) > 0;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates If-None-Match and, only when it is not sent, If-Modified-Since. The tag matches in its gzip
+     * variant, too. Invalid dates are ignored, so the full response is sent for them.
+     */
+    public static boolean isNotModified(SlingHttpServletRequest req, String eTag, long lastModified) {
+        final String ifNoneMatch = req.getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith(WEAK_ETAG_PREFIX)) {
+                    tag = tag.substring(WEAK_ETAG_PREFIX.length());
+                }
+                if (tag.equals("*") || tag.equals(eTag) || tag.equals(createGzipETag(eTag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        try {
+            final long ifModifiedSince = req.getDateHeader(IF_MODIFIED_SINCE);
+            // HTTP dates have no milliseconds
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
     }
 
-    private static Integer parseStrToInteger(String parameterValue, String parameterName) throws IllegalArgumentException {
-        if (parameterValue != null) {
-            try {
-                return Integer.parseInt(parameterValue);
-            } catch (NumberFormatException ex) {
-                throw new IllegalArgumentException("Error with parsing to number of parameter " + parameterName);
+    /**
+     * Reads the decimal int between start and end of the value, with an optional sign, the way
+     * {@link Integer#parseInt(String)} does, but returns {@link #NOT_AN_INT} instead of throwing.
+     */
+    public static long parseInt(CharSequence value, int start, int end) {
+        final boolean negative = start < end && value.charAt(start) == '-';
+        int position = (start < end && (negative || value.charAt(start) == '+')) ? start + 1 : start;
+        if (position == end) {
+            return NOT_AN_INT;
+        }
+
+        final long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long result = 0;
+        for (; position < end; position++) {
+            final int digit = value.charAt(position) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_AN_INT;
+            }
+            result = result * 10 + digit;
+            if (result > limit) {
+                return NOT_AN_INT;
             }
         }
-        return null;
+        return negative ? -result : result;
     }
 }
@@ -0,0 +1,81 @@
+package de.cyberport.core.dto;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.utils.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class SearchCursorTest {
+
+    private static final String CONTAINER_PATH = "/content/oscars";
+    private static final String[] TITLES = { "Titanic", "Ben-Hur", "Parasite", "Ben-Hur" };
+    private static final int[] YEARS = { 1997, 1959, 2019, 1925 };
+    private static final SortOrder TITLE_ORDER = SortOrder.of(Constants.SUPPORTED_SORT_BY.TITLE);
+    private static final SortOrder YEAR_ORDER = SortOrder.of(Constants.SUPPORTED_SORT_BY.YEAR);
+
+    private FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms());
+
+    @Test
+    public void shouldSeekFirstFilmAfterEncodedTitle() {
+        SearchCursor cursor = SearchCursor.decode(
+                SearchCursor.after(filmIndex, TITLE_ORDER, 1).encode());
+
+        assertEquals(TITLE_ORDER, cursor.getSortOrder());
+        assertEquals(3, filmIndex.getTitleIndex().ordinalAt(cursor.seek(filmIndex)));
+    }
+
+    @Test
+    public void shouldSeekFirstFilmAfterEncodedValue() {
+        SearchCursor cursor = SearchCursor.decode(
+                SearchCursor.after(filmIndex, YEAR_ORDER, 0).encode());
+
+        assertEquals(YEAR_ORDER, cursor.getSortOrder());
+        assertEquals(2, filmIndex.getYearIndex().ordinalAt(cursor.seek(filmIndex)));
+    }
+
+    @Test
+    public void shouldSeekFirstFilmAfterEncodedSortValues() {
+        SortOrder sortOrder = SortOrder.parse("title:desc,year");
+        SearchCursor cursor = SearchCursor.decode(SearchCursor.after(filmIndex, sortOrder, 3).encode());
+
+        assertEquals(sortOrder, cursor.getSortOrder());
+        assertEquals(1, filmIndex.getSortIndex(sortOrder).ordinalAt(cursor.seek(filmIndex)));
+    }
+
+    @Test
+    public void shouldSeekTitleThatIsNotIndexedAnymore() {
+        FilmIndex changedIndex = FilmIndex.of(CONTAINER_PATH, createFilms().subList(2, 4));
+        SearchCursor cursor = SearchCursor.after(filmIndex, TITLE_ORDER, 0);
+
+        assertEquals(2, cursor.seek(changedIndex));
+    }
+
+    @Test
+    public void shouldStartFromFirstFilmWhenCursorIsEmpty() {
+        assertSame(SearchCursor.START, SearchCursor.decode(""));
+        assertEquals(0, SearchCursor.START.seek(filmIndex));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionWhenCursorIsInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("WUVBUjox"));
+        assertNull(SearchCursor.tryDecode("not a cursor"));
+    }
+
+    private List<Film> createFilms() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < TITLES.length; i++) {
+            Film film = new Film();
+            film.setTitle(TITLES[i]);
+            film.setYear(YEARS[i]);
+            films.add(film);
+        }
+        return films;
+    }
+}
@@ -0,0 +1,50 @@
+package de.cyberport.core.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedOrdinalHeapTest {
+
+    private static final int[] AWARDS = { 3, 1, 11, 1, 4, 3, 1 };
+
+    private SortedIntIndex sortIndex = new SortedIntIndex(AWARDS);
+
+    @Test
+    public void shouldKeepFirstFilmsOfSortedOrder() {
+        BoundedOrdinalHeap heap = new BoundedOrdinalHeap(sortIndex, 4);
+        for (int ordinal = 0; ordinal < AWARDS.length; ordinal++) {
+            heap.offer(ordinal);
+        }
+
+        assertArrayEquals(new int[] { 1, 3, 6, 0 }, heap.drainSorted());
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    public void shouldKeepRepositoryOrderForEqualValuesRegardlessOfOfferOrder() {
+        BoundedOrdinalHeap heap = new BoundedOrdinalHeap(sortIndex, 2);
+        heap.offer(6);
+        heap.offer(3);
+        heap.offer(1);
+
+        assertArrayEquals(new int[] { 1, 3 }, heap.drainSorted());
+    }
+
+    @Test
+    public void shouldReturnAllFilmsWhenCapacityIsNotReached() {
+        BoundedOrdinalHeap heap = new BoundedOrdinalHeap(sortIndex, 10);
+        heap.offer(2);
+        heap.offer(4);
+
+        assertArrayEquals(new int[] { 4, 2 }, heap.drainSorted());
+    }
+
+    @Test
+    public void shouldReturnNothingWhenCapacityIsZero() {
+        BoundedOrdinalHeap heap = new BoundedOrdinalHeap(sortIndex, 0);
+        heap.offer(2);
+
+        assertEquals(0, heap.drainSorted().length);
+    }
+}
@@ -0,0 +1,144 @@
+package de.cyberport.core.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.services.impl.SearchManagerServiceImpl;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class FilmIndexSnapshotTest {
+
+    private static final String CONTAINER_PATH = "/content/oscars";
+    private static final long CONTENT_STAMP = 42L;
+    private static final long LAST_MODIFIED = 1580000000000L;
+    private static final String[] TITLES = { "Titanic", null, "Parasite", "Amélie", "Ben-Hur" };
+    private static final int[] YEARS = { 1997, 1950, 2019, 2001, 1959 };
+
+    @TempDir
+    Path snapshotDirectory;
+
+    @Test
+    public void shouldReadSameFilmsAsWritten() throws IOException {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(), LAST_MODIFIED);
+        Path file = snapshotDirectory.resolve("oscars.snapshot");
+
+        FilmIndexSnapshot.write(filmIndex, CONTENT_STAMP, file);
+        FilmIndexSnapshot snapshot = FilmIndexSnapshot.map(file);
+        FilmIndex mappedIndex = snapshot.getFilmIndex();
+
+        assertEquals(CONTAINER_PATH, snapshot.getPath());
+        assertEquals(CONTENT_STAMP, snapshot.getContentStamp());
+        assertEquals(filmIndex.getVersion(), mappedIndex.getVersion());
+        assertEquals(filmIndex.getFilmScore(), mappedIndex.getFilmScore());
+        assertEquals(LAST_MODIFIED, mappedIndex.getLastModified());
+        assertEquals(filmIndex.size(), mappedIndex.size());
+        for (int ordinal = 0; ordinal < filmIndex.size(); ordinal++) {
+            assertEquals(filmIndex.getTitle(ordinal), mappedIndex.getTitle(ordinal));
+            assertEquals(filmIndex.getYear(ordinal), mappedIndex.getYear(ordinal));
+            assertEquals(filmIndex.getAwards(ordinal), mappedIndex.getAwards(ordinal));
+            assertEquals(filmIndex.getNominations(ordinal), mappedIndex.getNominations(ordinal));
+            assertEquals(filmIndex.getNumberOfReferences(ordinal), mappedIndex.getNumberOfReferences(ordinal));
+            assertEquals(filmIndex.isBestPicture(ordinal), mappedIndex.isBestPicture(ordinal));
+            assertEquals(filmIndex.getScore(ordinal), mappedIndex.getScore(ordinal));
+            assertEquals(filmIndex.getFilm(ordinal).toString(), mappedIndex.getFilm(ordinal).toString());
+        }
+    }
+
+    @Test
+    public void shouldSearchMappedIndexLikeBuiltIndex() throws IOException {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms());
+        Path file = snapshotDirectory.resolve("oscars.snapshot");
+        FilmIndexSnapshot.write(filmIndex, CONTENT_STAMP, file);
+        FilmIndex mappedIndex = FilmIndexSnapshot.map(file).getFilmIndex();
+        SearchManagerServiceImpl searchManagerService = new SearchManagerServiceImpl();
+
+        for (String sortBy : Arrays.asList("title", "year:desc", "awards:desc,title", "references", "score:desc")) {
+            SearchDTO searchDTO = new SearchDTO();
+            searchDTO.setMinYear(1955);
+            searchDTO.setSortOrder(SortOrder.parse(sortBy));
+
+            assertArrayEquals(searchManagerService.search(filmIndex, searchDTO),
+                    searchManagerService.search(mappedIndex, searchDTO));
+        }
+    }
+
+    @Test
+    public void shouldRejectTruncatedSnapshot() throws IOException {
+        Path file = snapshotDirectory.resolve("oscars.snapshot");
+        FilmIndexSnapshot.write(FilmIndex.of(CONTAINER_PATH, createFilms()), CONTENT_STAMP, file);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+
+        assertThrows(IOException.class, () -> FilmIndexSnapshot.map(file));
+    }
+
+    @Test
+    public void shouldRejectSnapshotOfAnotherFormatVersion() throws IOException {
+        Path file = snapshotDirectory.resolve("oscars.snapshot");
+        FilmIndexSnapshot.write(FilmIndex.of(CONTAINER_PATH, createFilms()), CONTENT_STAMP, file);
+        byte[] content = Files.readAllBytes(file);
+        content[4] = (byte) (FilmIndexSnapshot.FORMAT_VERSION + 1);
+        Files.write(file, content);
+
+        assertThrows(IOException.class, () -> FilmIndexSnapshot.map(file));
+    }
+
+    @Test
+    public void shouldChangeContentStampWhenFilmIsModified() {
+        Resource film = createResource("1", 1000L);
+        Resource container = createResource("oscars", 1000L);
+        when(container.getChildren()).thenReturn(Collections.singletonList(film));
+
+        long contentStamp = FilmIndexSnapshot.contentStampOf(container);
+        when(film.getResourceMetadata().getModificationTime()).thenReturn(2000L);
+
+        assertNotEquals(contentStamp, FilmIndexSnapshot.contentStampOf(container));
+    }
+
+    @Test
+    public void shouldReturnUnknownContentStampWithoutModificationTimes() {
+        Resource film = createResource("1", -1L);
+        Resource container = createResource("oscars", 1000L);
+        when(container.getChildren()).thenReturn(Collections.singletonList(film));
+
+        assertEquals(FilmIndexSnapshot.UNKNOWN_CONTENT_STAMP, FilmIndexSnapshot.contentStampOf(container));
+    }
+
+    private Resource createResource(String name, long modificationTime) {
+        Resource resource = mock(Resource.class);
+        ResourceMetadata metadata = mock(ResourceMetadata.class);
+        when(resource.getName()).thenReturn(name);
+        when(resource.getResourceMetadata()).thenReturn(metadata);
+        when(metadata.getModificationTime()).thenReturn(modificationTime);
+        return resource;
+    }
+
+    private List<Film> createFilms() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < TITLES.length; i++) {
+            Film film = new Film();
+            film.setTitle(TITLES[i]);
+            film.setYear(YEARS[i]);
+            film.setAwards(i * 3 % 5);
+            film.setNominations(i + 4);
+            film.setBestPicture(i % 2 == 0);
+            film.setNumberOfReferences(i * 1000);
+            films.add(film);
+        }
+        return films;
+    }
+}
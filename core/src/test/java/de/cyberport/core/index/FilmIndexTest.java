@@ -0,0 +1,44 @@
+package de.cyberport.core.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.cyberport.core.dto.Film;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+class FilmIndexTest {
+
+    private static final String CONTAINER_PATH = "/content/oscars";
+
+    @Test
+    public void shouldHaveSameVersionForSameFilms() {
+        assertEquals(FilmIndex.of(CONTAINER_PATH, createFilms("Parasite", null)).getVersion(),
+                FilmIndex.of(CONTAINER_PATH, createFilms("Parasite", null)).getVersion());
+    }
+
+    @Test
+    public void shouldHaveAnotherVersionForTitlesWithSameHashCode() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        assertNotEquals(FilmIndex.of(CONTAINER_PATH, createFilms("Aa")).getVersion(),
+                FilmIndex.of(CONTAINER_PATH, createFilms("BB")).getVersion());
+    }
+
+    @Test
+    public void shouldHaveAnotherVersionForMissingTitle() {
+        assertNotEquals(FilmIndex.of(CONTAINER_PATH, createFilms((String) null)).getVersion(),
+                FilmIndex.of(CONTAINER_PATH, createFilms("")).getVersion());
+    }
+
+    private List<Film> createFilms(String... titles) {
+        Film[] films = new Film[titles.length];
+        for (int i = 0; i < titles.length; i++) {
+            films[i] = new Film();
+            films[i].setTitle(titles[i]);
+            films[i].setYear(2019);
+        }
+        return Arrays.asList(films);
+    }
+}
@@ -0,0 +1,39 @@
+package de.cyberport.core.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.cyberport.core.utils.Constants;
+import org.junit.jupiter.api.Test;
+
+class SortOrderTest {
+
+    @Test
+    public void shouldParseKeysAndDirections() {
+        SortOrder sortOrder = SortOrder.parse("awards:desc,year:asc,title");
+
+        assertEquals(3, sortOrder.size());
+        assertEquals(Constants.SUPPORTED_SORT_BY.AWARDS, sortOrder.getColumn(0));
+        assertTrue(sortOrder.isDescending(0));
+        assertEquals(Constants.SUPPORTED_SORT_BY.YEAR, sortOrder.getColumn(1));
+        assertFalse(sortOrder.isDescending(1));
+        assertEquals(Constants.SUPPORTED_SORT_BY.TITLE, sortOrder.getColumn(2));
+        assertFalse(sortOrder.isSingleAscending());
+    }
+
+    @Test
+    public void shouldWriteCanonicalForm() {
+        assertEquals("awards:desc,year,title", SortOrder.parse("AWARDS:DESC, year:asc,Title").toString());
+        assertEquals(SortOrder.parse("year:asc"), SortOrder.of(Constants.SUPPORTED_SORT_BY.YEAR));
+        assertTrue(SortOrder.parse("year").isSingleAscending());
+        assertEquals("score:desc,references", SortOrder.parse("Score:desc,references").toString());
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionWhenSortOrderIsInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> SortOrder.parse("rating"));
+        assertThrows(IllegalArgumentException.class, () -> SortOrder.parse("year:up"));
+        assertThrows(IllegalArgumentException.class, () -> SortOrder.parse("year,awards,year:desc"));
+        assertThrows(IllegalArgumentException.class, () -> SortOrder.parse("year,"));
+        assertNull(SortOrder.tryParse("rating"));
+    }
+}
@@ -0,0 +1,59 @@
+package de.cyberport.core.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class SortedIntIndexTest {
+
+    private static final int[] YEARS = { 1998, 1964, 2019, 1964, 2018, 1998 };
+
+    private SortedIntIndex indexUnderTest = new SortedIntIndex(YEARS);
+
+    @Test
+    public void shouldSortOrdinalsByValueAndKeepOrdinalOrderForEqualValues() {
+        assertEquals(1, indexUnderTest.ordinalAt(0));
+        assertEquals(3, indexUnderTest.ordinalAt(1));
+        assertEquals(0, indexUnderTest.ordinalAt(2));
+        assertEquals(5, indexUnderTest.ordinalAt(3));
+        assertEquals(4, indexUnderTest.ordinalAt(4));
+        assertEquals(2, indexUnderTest.ordinalAt(5));
+    }
+
+    @Test
+    public void shouldCountFilmsWithinRange() {
+        assertEquals(3, indexUnderTest.count(1998, 2018));
+        assertEquals(0, indexUnderTest.count(2020, Integer.MAX_VALUE));
+        assertEquals(0, indexUnderTest.count(2018, 1998));
+    }
+
+    @Test
+    public void shouldFindBoundsOfExactValue() {
+        assertEquals(2, indexUnderTest.lowerBound(1998));
+        assertEquals(4, indexUnderTest.upperBound(1998));
+    }
+
+    @Test
+    public void shouldFindPositionAfterValueAndOrdinal() {
+        assertEquals(2, indexUnderTest.positionAfter(1964, 3));
+        assertEquals(3, indexUnderTest.positionAfter(1998, 0));
+        assertEquals(2, indexUnderTest.positionAfter(1970, 0));
+        assertEquals(0, indexUnderTest.positionAfter(1900, 5));
+        assertEquals(6, indexUnderTest.positionAfter(2019, 2));
+    }
+
+    @Test
+    public void shouldMergeChangedFilmsIntoUpdatedIndex() {
+        // film 2 is removed, film 4 changed to 1964 and a film of 1998 is added at the end
+        int[] updatedYears = { 1998, 1964, 1964, 1964, 1998, 1998 };
+        int[] updatedOrdinals = { 0, 1, -1, 2, -1, 4 };
+
+        SortedIntIndex updatedIndex = indexUnderTest.update(updatedYears, updatedOrdinals, new int[] { 3, 5 });
+
+        SortedIntIndex rebuiltIndex = new SortedIntIndex(updatedYears);
+        assertEquals(rebuiltIndex.size(), updatedIndex.size());
+        for (int position = 0; position < updatedYears.length; position++) {
+            assertEquals(rebuiltIndex.ordinalAt(position), updatedIndex.ordinalAt(position));
+        }
+    }
+}
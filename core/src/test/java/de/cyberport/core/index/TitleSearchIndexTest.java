@@ -0,0 +1,37 @@
+package de.cyberport.core.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class TitleSearchIndexTest {
+
+    private static final String[] TITLES = { "Amélie", "The Artist", null, "AMERICAN BEAUTY", "Parasite",
+            "The Departed" };
+
+    private TitleSearchIndex indexUnderTest = new TitleSearchIndex(TITLES);
+
+    @Test
+    public void shouldNormalizeCaseAndAccents() {
+        assertEquals("amelie", TitleSearchIndex.normalize("AMÉLIE"));
+        assertEquals("amelie", indexUnderTest.getNormalizedTitle(0));
+        assertNull(indexUnderTest.getNormalizedTitle(2));
+    }
+
+    @Test
+    public void shouldFindTitlesByPrefix() {
+        assertArrayEquals(new int[] { 0, 3 }, indexUnderTest.findByPrefix("ame"));
+        assertArrayEquals(new int[] { 3 }, indexUnderTest.findByPrefix("amer"));
+        assertArrayEquals(new int[] { 1, 5 }, indexUnderTest.findByPrefix("the "));
+        assertEquals(0, indexUnderTest.findByPrefix("zz").length);
+        assertEquals(2, indexUnderTest.countByPrefix("ame"));
+    }
+
+    @Test
+    public void shouldFindTitlesBySubstring() {
+        assertArrayEquals(new int[] { 1, 5 }, indexUnderTest.findBySubstring("art"));
+        assertArrayEquals(new int[] { 1 }, indexUnderTest.findBySubstring("artist"));
+        assertArrayEquals(new int[] { 0, 3 }, indexUnderTest.findBySubstring("me"));
+        assertEquals(0, indexUnderTest.findBySubstring("tsitra").length);
+    }
+}
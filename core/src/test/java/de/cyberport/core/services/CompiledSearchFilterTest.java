@@ -0,0 +1,92 @@
+package de.cyberport.core.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.SearchDTO;
+import org.junit.jupiter.api.Test;
+
+class CompiledSearchFilterTest {
+
+    private static final String FILM_TITLE = "Parasite";
+
+    @Test
+    public void shouldFoldYearIntoMinAndMaxYear() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setYear(2019);
+        searchDTO.setMinYear(2018);
+        searchDTO.setMaxYear(2020);
+
+        CompiledSearchFilter filter = CompiledSearchFilter.compile(searchDTO);
+
+        assertFalse(filter.isEmpty());
+        assertEquals(2019, filter.getMinYear());
+        assertEquals(2019, filter.getMaxYear());
+    }
+
+    @Test
+    public void shouldBeEmptyWhenMinYearIsGreaterThanMaxYear() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setMinYear(2019);
+        searchDTO.setMaxYear(2018);
+
+        CompiledSearchFilter filter = CompiledSearchFilter.compile(searchDTO);
+
+        assertTrue(filter.isEmpty());
+        assertFalse(filter.matches(createFilm(2018, 4)));
+    }
+
+    @Test
+    public void shouldBeEmptyWhenYearIsOutsideOfMinYear() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setYear(2017);
+        searchDTO.setMinYear(2018);
+
+        assertTrue(CompiledSearchFilter.compile(searchDTO).isEmpty());
+    }
+
+    @Test
+    public void shouldNotRestrictAnythingWhenThereAreNoFilters() {
+        CompiledSearchFilter filter = CompiledSearchFilter.compile(new SearchDTO());
+
+        assertFalse(filter.isYearRestricted());
+        assertFalse(filter.isAwardsRestricted());
+        assertFalse(filter.isNominationsRestricted());
+        assertTrue(filter.matches(createFilm(1929, 0)));
+    }
+
+    @Test
+    public void shouldMatchFilmWhenAllFiltersMatch() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setTitle(FILM_TITLE);
+        searchDTO.setMinAwards(4);
+        searchDTO.setIsBestPicture(true);
+
+        CompiledSearchFilter filter = CompiledSearchFilter.compile(searchDTO);
+
+        assertTrue(filter.matches(createFilm(2019, 4)));
+        assertFalse(filter.matches(createFilm(2019, 3)));
+    }
+
+    @Test
+    public void shouldRecompileWhenSearchDTOChanges() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setMinAwards(4);
+        CompiledSearchFilter filter = searchDTO.getCompiledSearchFilter();
+
+        searchDTO.setMaxAwards(3);
+
+        assertNotSame(filter, searchDTO.getCompiledSearchFilter());
+        assertTrue(searchDTO.getCompiledSearchFilter().isEmpty());
+    }
+
+    private Film createFilm(int year, int awards) {
+        Film film = new Film();
+        film.setTitle(FILM_TITLE);
+        film.setYear(year);
+        film.setAwards(awards);
+        film.setNominations(6);
+        film.setBestPicture(true);
+        return film;
+    }
+}
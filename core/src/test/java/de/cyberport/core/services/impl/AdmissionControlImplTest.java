@@ -0,0 +1,184 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.services.AdmissionControl;
+import de.cyberport.core.utils.Constants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+class AdmissionControlImplTest {
+
+    private static final String CLIENT_1 = "192.0.2.1";
+    private static final String CLIENT_2 = "192.0.2.2";
+    private static final String PROXY = "192.0.2.10";
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+
+    private AdmissionControlImpl admissionUnderTest = new AdmissionControlImpl();
+
+    @Test
+    public void shouldRejectClientBeyondBurstWithRetryAfter() {
+        activate(1, 2, 0, 0, 0, 0);
+
+        assertTrue(admissionUnderTest.admit(request(CLIENT_1), filtered()).isAdmitted());
+        assertTrue(admissionUnderTest.admit(request(CLIENT_1), filtered()).isAdmitted());
+        AdmissionControl.Admission rejected = admissionUnderTest.admit(request(CLIENT_1), filtered());
+
+        assertFalse(rejected.isAdmitted());
+        assertEquals(1, rejected.getRetryAfterSeconds());
+        assertTrue(admissionUnderTest.admit(request(CLIENT_2), filtered()).isAdmitted());
+    }
+
+    @Test
+    public void shouldGiveCostlySearchesSmallerBudget() {
+        activate(100, 100, 0.5, 1, 0, 0);
+
+        assertTrue(admissionUnderTest.admit(request(CLIENT_1), unfiltered()).isAdmitted());
+        AdmissionControl.Admission rejected = admissionUnderTest.admit(request(CLIENT_1), unfiltered());
+
+        assertFalse(rejected.isAdmitted());
+        assertEquals(2, rejected.getRetryAfterSeconds());
+        assertTrue(admissionUnderTest.admit(request(CLIENT_1), filtered()).isAdmitted());
+    }
+
+    @Test
+    public void shouldRejectRequestsBeyondConcurrencyLimitUntilReleased() {
+        activate(0, 0, 0, 0, 1, 0);
+
+        AdmissionControl.Admission first = admissionUnderTest.admit(request(CLIENT_1), filtered());
+        AdmissionControl.Admission second = admissionUnderTest.admit(request(CLIENT_2), filtered());
+        assertTrue(first.isAdmitted());
+        assertFalse(second.isAdmitted());
+        assertEquals(1, second.getRetryAfterSeconds());
+
+        first.close();
+        first.close();
+
+        AdmissionControl.Admission third = admissionUnderTest.admit(request(CLIENT_2), filtered());
+        assertTrue(third.isAdmitted());
+        assertFalse(admissionUnderTest.admit(request(CLIENT_1), filtered()).isAdmitted());
+    }
+
+    @Test
+    public void shouldLimitClientAppendedByTrustedProxy() {
+        activateBehindProxies(1);
+        SlingHttpServletRequest proxied = request(PROXY);
+        when(proxied.getHeader(FORWARDED_FOR)).thenReturn(CLIENT_2 + ", " + CLIENT_1);
+
+        assertTrue(admissionUnderTest.admit(proxied, filtered()).isAdmitted());
+        assertFalse(admissionUnderTest.admit(proxied, filtered()).isAdmitted());
+        assertTrue(admissionUnderTest.admit(request(PROXY), filtered()).isAdmitted());
+    }
+
+    @Test
+    public void shouldNotResetBucketWhenClientChangesForwardedAddresses() {
+        activateBehindProxies(1);
+        SlingHttpServletRequest first = request(PROXY);
+        when(first.getHeader(FORWARDED_FOR)).thenReturn("198.51.100.1, " + CLIENT_1);
+        SlingHttpServletRequest spoofed = request(PROXY);
+        when(spoofed.getHeader(FORWARDED_FOR)).thenReturn("198.51.100.2, " + CLIENT_1);
+
+        assertTrue(admissionUnderTest.admit(first, filtered()).isAdmitted());
+        assertFalse(admissionUnderTest.admit(spoofed, filtered()).isAdmitted());
+    }
+
+    @Test
+    public void shouldLimitClientAppendedByOutermostOfSeveralTrustedProxies() {
+        activateBehindProxies(2);
+        SlingHttpServletRequest proxied = request(PROXY);
+        when(proxied.getHeader(FORWARDED_FOR)).thenReturn("198.51.100.1, " + CLIENT_1 + ", " + CLIENT_2);
+        SlingHttpServletRequest spoofed = request(PROXY);
+        when(spoofed.getHeader(FORWARDED_FOR)).thenReturn("198.51.100.2, " + CLIENT_1 + ", " + CLIENT_2);
+        SlingHttpServletRequest bypassed = request(PROXY);
+        when(bypassed.getHeader(FORWARDED_FOR)).thenReturn(CLIENT_1);
+
+        assertTrue(admissionUnderTest.admit(proxied, filtered()).isAdmitted());
+        assertFalse(admissionUnderTest.admit(spoofed, filtered()).isAdmitted());
+        assertTrue(admissionUnderTest.admit(bypassed, filtered()).isAdmitted());
+    }
+
+    @Test
+    public void shouldAdmitEveryRequestUntilEnabled() {
+        AdmissionControlImpl.Config config = createConfig(1, 1, 0, 0, 1, 0);
+        when(config.enabled()).thenReturn(false);
+        admissionUnderTest.activate(config);
+
+        AdmissionControl.Admission first = admissionUnderTest.admit(request(CLIENT_1), filtered());
+        AdmissionControl.Admission second = admissionUnderTest.admit(request(CLIENT_1), unfiltered());
+
+        assertTrue(first.isAdmitted());
+        assertTrue(second.isAdmitted());
+    }
+
+    @Test
+    public void shouldTakeUnfilteredAndUnlimitedSearchesAsCostly() {
+        SearchDTO limited = new SearchDTO();
+        limited.setLimit(10);
+        SearchDTO aggregation = new SearchDTO();
+        aggregation.setAggregations(EnumSet.allOf(Constants.SUPPORTED_AGGREGATE.class));
+        SearchDTO impossible = new SearchDTO();
+        impossible.setMinYear(2020);
+        impossible.setMaxYear(2019);
+
+        assertTrue(AdmissionControlImpl.isCostly(unfiltered()));
+        assertTrue(AdmissionControlImpl.isCostly(Arrays.asList(limited, new SearchDTO())));
+        assertFalse(AdmissionControlImpl.isCostly(filtered()));
+        assertFalse(AdmissionControlImpl.isCostly(Arrays.asList(limited, aggregation)));
+        assertFalse(AdmissionControlImpl.isCostly(Collections.singletonList(impossible)));
+    }
+
+    private static List<SearchDTO> filtered() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setYear(2019);
+        return Collections.singletonList(searchDTO);
+    }
+
+    private static List<SearchDTO> unfiltered() {
+        return Collections.singletonList(new SearchDTO());
+    }
+
+    private static SlingHttpServletRequest request(String remoteAddr) {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn(remoteAddr);
+        return request;
+    }
+
+    private void activateBehindProxies(int trustedProxies) {
+        AdmissionControlImpl.Config config = createConfig(1, 1, 0, 0, 0, 0);
+        when(config.clientHeader()).thenReturn(FORWARDED_FOR);
+        when(config.trustedProxies()).thenReturn(trustedProxies);
+        admissionUnderTest.activate(config);
+    }
+
+    private void activate(double requestsPerSecond, int burst, double costlyRequestsPerSecond, int costlyBurst,
+            int maxConcurrentRequests, int maxQueuedRequests) {
+        admissionUnderTest.activate(createConfig(requestsPerSecond, burst, costlyRequestsPerSecond, costlyBurst,
+                maxConcurrentRequests, maxQueuedRequests));
+    }
+
+    private static AdmissionControlImpl.Config createConfig(double requestsPerSecond, int burst,
+            double costlyRequestsPerSecond, int costlyBurst, int maxConcurrentRequests, int maxQueuedRequests) {
+        AdmissionControlImpl.Config config = mock(AdmissionControlImpl.Config.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.requestsPerSecond()).thenReturn(requestsPerSecond);
+        when(config.burst()).thenReturn(burst);
+        when(config.costlyRequestsPerSecond()).thenReturn(costlyRequestsPerSecond);
+        when(config.costlyBurst()).thenReturn(costlyBurst);
+        when(config.clientHeader()).thenReturn("");
+        when(config.trustedProxies()).thenReturn(1);
+        when(config.maxClients()).thenReturn(100);
+        when(config.maxConcurrentRequests()).thenReturn(maxConcurrentRequests);
+        when(config.maxQueuedRequests()).thenReturn(maxQueuedRequests);
+        when(config.queueTimeoutMillis()).thenReturn(0L);
+        when(config.retryAfterSeconds()).thenReturn(1L);
+        return config;
+    }
+}
@@ -0,0 +1,188 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.FilmScore;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@ExtendWith(AemContextExtension.class)
+class FilmIndexServiceImplTest {
+
+    private static final String FILM_CLASS_PACKAGE_NAME = "de.cyberport.core.dto";
+    private static final String SOURCE_FILE_WITH_3_FILMS = "/oscars_3_films.json";
+    private static final String CONTAINER_PATH = "/content/oscars";
+    private static final String FILM_PATH = "/content/oscars/1";
+    private static final String OTHER_PATH = "/content/other";
+
+    private FilmIndexServiceImpl serviceUnderTest = new FilmIndexServiceImpl();
+
+    @BeforeEach
+    void setUp(AemContext context) {
+        context.addModelsForPackage(FILM_CLASS_PACKAGE_NAME);
+        context.load().json(SOURCE_FILE_WITH_3_FILMS, CONTAINER_PATH);
+        context.currentResource(CONTAINER_PATH);
+    }
+
+    @Test
+    public void shouldReturnNullWhenResourceIsNull() {
+        assertNull(serviceUnderTest.getIndex(null));
+    }
+
+    @Test
+    public void shouldBuildColumnsFromContainerChildren(AemContext context) {
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        assertEquals(CONTAINER_PATH, index.getPath());
+        assertEquals(3, index.size());
+        assertEquals("Zorba the Greek", index.getTitle(0));
+        assertEquals(1964, index.getYear(0));
+        assertEquals(3, index.getAwards(0));
+        assertEquals(7, index.getNominations(0));
+        assertEquals(875, index.getNumberOfReferences(0));
+        assertFalse(index.isBestPicture(0));
+        assertTrue(index.isBestPicture(1));
+    }
+
+    @Test
+    public void shouldReuseIndexForSameContainer(AemContext context) {
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        assertSame(index, serviceUnderTest.getIndex(context.currentResource()));
+    }
+
+    @Test
+    public void shouldRebuildIndexWhenFilmChanged(AemContext context) {
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        serviceUnderTest.invalidate(FILM_PATH);
+
+        assertNotSame(index, serviceUnderTest.getIndex(context.currentResource()));
+    }
+
+    @Test
+    public void shouldKeepIndexWhenOtherContentChanged(AemContext context) {
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        serviceUnderTest.invalidate(OTHER_PATH);
+
+        assertSame(index, serviceUnderTest.getIndex(context.currentResource()));
+    }
+
+    @Test
+    public void shouldApplyChangedFilmToCopyOfIndex(AemContext context) throws PersistenceException {
+        activate(0);
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        context.resourceResolver().getResource(FILM_PATH).adaptTo(ModifiableValueMap.class).put("awards", 5);
+        context.resourceResolver().commit();
+        serviceUnderTest.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, FILM_PATH, false)));
+
+        Resource container = context.resourceResolver().getResource(CONTAINER_PATH);
+        FilmIndex updatedIndex = serviceUnderTest.getIndex(container);
+        assertEquals(5, updatedIndex.getAwards(1));
+        assertEquals(2, index.getAwards(1));
+        assertEquals(FilmIndex.build(container).getVersion(), updatedIndex.getVersion());
+        assertSame(updatedIndex, serviceUnderTest.getIndex(container));
+    }
+
+    @Test
+    public void shouldApplyAddedAndRemovedFilms(AemContext context) throws PersistenceException {
+        activate(0);
+        serviceUnderTest.getIndex(context.currentResource());
+
+        context.resourceResolver().delete(context.resourceResolver().getResource(CONTAINER_PATH + "/0"));
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("title", "Parasite");
+        properties.put("year", 2019);
+        properties.put("awards", 4);
+        properties.put("nominations", 6);
+        properties.put("isBestPicture", true);
+        properties.put("numberOfReferences", 1200);
+        context.create().resource(CONTAINER_PATH + "/3", properties);
+        serviceUnderTest.onChange(Arrays.asList(
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, CONTAINER_PATH + "/0", false),
+                new ResourceChange(ResourceChange.ChangeType.ADDED, CONTAINER_PATH + "/3", false)));
+
+        FilmIndex updatedIndex = serviceUnderTest.getIndex(context.resourceResolver().getResource(CONTAINER_PATH));
+        assertEquals(3, updatedIndex.size());
+        assertEquals("You Can't Take It with You", updatedIndex.getTitle(0));
+        assertEquals("Parasite", updatedIndex.getTitle(2));
+        assertEquals("3", updatedIndex.getName(2));
+        assertEquals(2, updatedIndex.getTitleIndex().ordinalAt(0));
+    }
+
+    @Test
+    public void shouldScoreFilmsWithConfiguredWeightsAlsoWhenUpdated(AemContext context) throws PersistenceException {
+        activate(0, FilmScore.of(10, 1, 5, 2));
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        assertEquals(38, index.getScore(0));
+        assertEquals(51, index.getScore(1));
+        assertEquals(11, index.getScore(2));
+
+        context.resourceResolver().getResource(FILM_PATH).adaptTo(ModifiableValueMap.class).put("awards", 5);
+        context.resourceResolver().commit();
+        serviceUnderTest.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, FILM_PATH, false)));
+
+        FilmIndex updatedIndex = serviceUnderTest.getIndex(context.resourceResolver().getResource(CONTAINER_PATH));
+        assertEquals(81, updatedIndex.getScore(1));
+        assertEquals(1, updatedIndex.getScoreIndex().ordinalAt(2));
+        assertEquals(FilmScore.of(10, 1, 5, 2), updatedIndex.getFilmScore());
+    }
+
+    @Test
+    public void shouldKeepServingIndexWhileChangesAreDelayed(AemContext context) {
+        activate(60000);
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        serviceUnderTest.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, FILM_PATH, false)));
+
+        assertSame(index, serviceUnderTest.getIndex(context.currentResource()));
+    }
+
+    @Test
+    public void shouldRebuildIndexWhenContainerChanged(AemContext context) {
+        activate(0);
+        FilmIndex index = serviceUnderTest.getIndex(context.currentResource());
+
+        serviceUnderTest.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, CONTAINER_PATH, false)));
+
+        assertNotSame(index, serviceUnderTest.getIndex(context.currentResource()));
+    }
+
+    private void activate(long updateDelay) {
+        activate(updateDelay, FilmScore.DEFAULT);
+    }
+
+    private void activate(long updateDelay, FilmScore filmScore) {
+        FilmIndexServiceImpl.Config config = mock(FilmIndexServiceImpl.Config.class);
+        when(config.snapshotsEnabled()).thenReturn(false);
+        when(config.updateDelay()).thenReturn(updateDelay);
+        when(config.maxUpdateDelay()).thenReturn(updateDelay);
+        when(config.scoreAwardsWeight()).thenReturn(filmScore.getAwardsWeight());
+        when(config.scoreNominationsWeight()).thenReturn(filmScore.getNominationsWeight());
+        when(config.scoreBestPictureWeight()).thenReturn(filmScore.getBestPictureWeight());
+        when(config.scoreReferencesWeight()).thenReturn(filmScore.getReferencesWeight());
+        serviceUnderTest.activate(null, config);
+    }
+}
@@ -0,0 +1,49 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class LatencyHistogramTest {
+
+    private LatencyHistogram histogramUnderTest = new LatencyHistogram();
+
+    @Test
+    public void shouldKeepEveryDurationWithinItsBucket() {
+        for (long micros = 0; micros < 100000; micros += 7) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long lowest = (bucket > 0) ? LatencyHistogram.highestMicrosOf(bucket - 1) + 1 : 0;
+
+            assertTrue(lowest <= micros && micros <= LatencyHistogram.highestMicrosOf(bucket));
+            assertTrue(LatencyHistogram.highestMicrosOf(bucket) - lowest <= micros / 8);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestMicrosOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        for (int millis = 1; millis <= 100; millis++) {
+            histogramUnderTest.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(100, histogramUnderTest.getCount());
+        assertEquals(50.5, histogramUnderTest.getMeanMillis(), 0.001);
+        assertEquals(50, histogramUnderTest.getPercentileMillis(50), 50 / 8.0);
+        assertEquals(99, histogramUnderTest.getPercentileMillis(99), 99 / 8.0);
+        assertEquals(100, histogramUnderTest.getPercentileMillis(100), 0.001);
+        assertEquals(100, histogramUnderTest.getMaxMillis(), 0.001);
+    }
+
+    @Test
+    public void shouldForgetDurationsWhenReset() {
+        histogramUnderTest.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+        histogramUnderTest.reset();
+
+        assertEquals(0, histogramUnderTest.getCount());
+        assertEquals(0, histogramUnderTest.getPercentileMillis(99), 0);
+        assertEquals(0, histogramUnderTest.getMaxMillis(), 0);
+    }
+}
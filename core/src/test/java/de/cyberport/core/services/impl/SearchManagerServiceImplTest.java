@@ -4,7 +4,12 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
 
 import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.FilmAggregation;
+import de.cyberport.core.dto.SearchCursor;
 import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.FilmScore;
+import de.cyberport.core.index.SortOrder;
 import de.cyberport.core.services.SearchManagerService;
 import de.cyberport.core.utils.Constants;
 import org.junit.jupiter.api.BeforeAll;
@@ -13,9 +18,15 @@ import org.junit.jupiter.api.TestInstance;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -35,6 +46,12 @@ class SearchManagerServiceImplTest {
     public int AWARDS_3 = 4;
 
 
+    private String CONTAINER_PATH = "/content/oscars";
+    private int PAGE_SIZE = 7;
+    private Constants.SUPPORTED_SORT_BY[] PARALLEL_SORT_ORDERS = { Constants.SUPPORTED_SORT_BY.TITLE,
+            Constants.SUPPORTED_SORT_BY.YEAR, Constants.SUPPORTED_SORT_BY.AWARDS };
+
+
     private SearchManagerService serviceUnderTest = new SearchManagerServiceImpl();
 
     @Mock
@@ -117,6 +134,348 @@ class SearchManagerServiceImplTest {
         assertEquals(film2, sortedList.get(2));
     }
 
+    @Test
+    public void shouldReturnFilmComparatorByScoreOfFilmIndex() {
+        List<Film> films = createFilms(200);
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, films, FilmScore.of(0, 1, 0, 0));
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setSortOrder(SortOrder.parse("score,references"));
+
+        Comparator<Film> comparator = serviceUnderTest.getFilmComparator(Constants.SUPPORTED_SORT_BY.SCORE,
+                filmIndex.getFilmScore()).thenComparing(Film::getNumberOfReferences);
+        List<Film> expected = films.stream().sorted(comparator).collect(Collectors.toList());
+        int[] sorted = serviceUnderTest.search(filmIndex, searchDTO);
+
+        assertEquals(expected.size(), sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(expected.get(i), filmIndex.getFilm(sorted[i]));
+        }
+    }
+
+    @Test
+    public void shouldRejectFilmComparatorByScoreWithoutWeights() {
+        assertThrows(IllegalArgumentException.class,
+                () -> serviceUnderTest.getFilmComparator(Constants.SUPPORTED_SORT_BY.SCORE));
+    }
+
+    /** Tests for SearchManagerService.search method */
+
+    @Test
+    public void shouldReturnSameFilmsInParallelAsSequentially() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(50000));
+        SearchManagerServiceImpl parallelService = new SearchManagerServiceImpl();
+        parallelService.activate(createConfig(1000, 4));
+
+        try {
+            for (Constants.SUPPORTED_SORT_BY sortBy : PARALLEL_SORT_ORDERS) {
+                SearchDTO limitedSearch = new SearchDTO();
+                limitedSearch.setMinYear(1950);
+                limitedSearch.setSortBy(sortBy);
+                limitedSearch.setLimit(25);
+
+                SearchDTO unlimitedSearch = new SearchDTO();
+                unlimitedSearch.setMaxAwards(3);
+                unlimitedSearch.setSortBy(sortBy);
+
+                assertArrayEquals(serviceUnderTest.search(filmIndex, limitedSearch),
+                        parallelService.search(filmIndex, limitedSearch));
+                assertArrayEquals(serviceUnderTest.search(filmIndex, unlimitedSearch),
+                        parallelService.search(filmIndex, unlimitedSearch));
+            }
+        } finally {
+            parallelService.deactivate();
+        }
+    }
+
+    @Test
+    public void shouldSearchInParallelWithLimitBeyondNumberOfFilms() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(50000));
+        SearchManagerServiceImpl parallelService = new SearchManagerServiceImpl();
+        parallelService.activate(createConfig(1000, 4));
+
+        try {
+            SearchDTO searchDTO = new SearchDTO();
+            searchDTO.setMinYear(1950);
+            searchDTO.setSortBy(Constants.SUPPORTED_SORT_BY.YEAR);
+            searchDTO.setLimit(Integer.MAX_VALUE);
+
+            assertArrayEquals(serviceUnderTest.search(filmIndex, searchDTO),
+                    parallelService.search(filmIndex, searchDTO));
+        } finally {
+            parallelService.deactivate();
+        }
+    }
+
+    @Test
+    public void shouldReturnSameFilmsInBatchAsOneByOne() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(3000));
+        List<SearchDTO> searchDTOs = new ArrayList<>();
+        for (Constants.SUPPORTED_SORT_BY sortBy : PARALLEL_SORT_ORDERS) {
+            SearchDTO limitedSearch = new SearchDTO();
+            limitedSearch.setMinYear(1950);
+            limitedSearch.setSortBy(sortBy);
+            limitedSearch.setLimit(25);
+            searchDTOs.add(limitedSearch);
+
+            SearchDTO unlimitedSearch = new SearchDTO();
+            unlimitedSearch.setMaxAwards(3);
+            unlimitedSearch.setSortOrder(SortOrder.parse(sortBy.name() + ":desc"));
+            searchDTOs.add(unlimitedSearch);
+        }
+        SearchDTO narrowSearch = new SearchDTO();
+        narrowSearch.setYear(2000);
+        searchDTOs.add(narrowSearch);
+        SearchDTO pagedSearch = new SearchDTO();
+        pagedSearch.setIsBestPicture(false);
+        pagedSearch.setOffset(PAGE_SIZE);
+        pagedSearch.setLimit(PAGE_SIZE);
+        searchDTOs.add(pagedSearch);
+
+        int[][] results = serviceUnderTest.searchBatch(filmIndex, searchDTOs);
+
+        assertEquals(searchDTOs.size(), results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertArrayEquals(serviceUnderTest.search(filmIndex, searchDTOs.get(i)), results[i]);
+        }
+    }
+
+    @Test
+    public void shouldSortByAllKeysOfSortOrder() {
+        List<Film> films = createFilms(2000);
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, films);
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setSortOrder(SortOrder.parse("awards:desc,year,title:desc"));
+
+        List<Film> expected = films.stream()
+                .sorted(Comparator.comparingInt(Film::getAwards).reversed()
+                        .thenComparingInt(Film::getYear)
+                        .thenComparing(Comparator.comparing(Film::getTitle).reversed()))
+                .collect(Collectors.toList());
+        int[] sorted = serviceUnderTest.search(filmIndex, searchDTO);
+
+        assertEquals(expected.size(), sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(expected.get(i), filmIndex.getFilm(sorted[i]));
+        }
+    }
+
+    @Test
+    public void shouldSortByScoreAndReferences() {
+        List<Film> films = createFilms(2000);
+        FilmScore filmScore = FilmScore.of(10, 2, 20, 3);
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, films, filmScore);
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setSortOrder(SortOrder.parse("score:desc,references:desc"));
+        searchDTO.setLimit(20);
+
+        List<Film> expected = films.stream()
+                .sorted(Comparator.comparingInt((Film film) -> filmScore.scoreOf(film)).reversed()
+                        .thenComparing(Comparator.comparingInt(Film::getNumberOfReferences).reversed()))
+                .limit(20)
+                .collect(Collectors.toList());
+        int[] sorted = serviceUnderTest.search(filmIndex, searchDTO);
+
+        assertEquals(expected.size(), sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(expected.get(i), filmIndex.getFilm(sorted[i]));
+        }
+    }
+
+    @Test
+    public void shouldReturnNoFilmsWhenFiltersContradict() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(100));
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setMinYear(2000);
+        searchDTO.setMaxYear(1990);
+
+        assertEquals(0, serviceUnderTest.search(filmIndex, searchDTO).length);
+    }
+
+    @Test
+    public void shouldReturnAllFilmsPageByPageWhenCursorIsFollowed() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(1000));
+
+        for (Constants.SUPPORTED_SORT_BY sortBy : PARALLEL_SORT_ORDERS) {
+            SearchDTO fullSearch = new SearchDTO();
+            fullSearch.setMaxAwards(5);
+            fullSearch.setSortBy(sortBy);
+            int[] expected = serviceUnderTest.search(filmIndex, fullSearch);
+
+            List<Integer> paged = new ArrayList<>();
+            SearchCursor cursor = SearchCursor.START;
+            int[] page;
+            do {
+                SearchDTO pageSearch = new SearchDTO();
+                pageSearch.setMaxAwards(5);
+                pageSearch.setSortBy(sortBy);
+                pageSearch.setLimit(PAGE_SIZE);
+                pageSearch.setCursor(SearchCursor.decode(cursor.encode()));
+                page = serviceUnderTest.search(filmIndex, pageSearch);
+                for (int ordinal : page) {
+                    paged.add(ordinal);
+                }
+                if (page.length > 0) {
+                    cursor = SearchCursor.after(filmIndex, SortOrder.of(sortBy), page[page.length - 1]);
+                }
+            } while (page.length == PAGE_SIZE);
+
+            assertArrayEquals(expected, paged.stream().mapToInt(Integer::intValue).toArray());
+            assertEquals(expected.length, serviceUnderTest.count(filmIndex, fullSearch));
+        }
+    }
+
+    @Test
+    public void shouldSkipOffsetFilms() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(1000));
+        SearchDTO fullSearch = new SearchDTO();
+        fullSearch.setIsBestPicture(true);
+        int[] expected = serviceUnderTest.search(filmIndex, fullSearch);
+
+        SearchDTO pageSearch = new SearchDTO();
+        pageSearch.setIsBestPicture(true);
+        pageSearch.setOffset(PAGE_SIZE);
+        pageSearch.setLimit(PAGE_SIZE);
+
+        assertArrayEquals(Arrays.copyOfRange(expected, PAGE_SIZE, 2 * PAGE_SIZE),
+                serviceUnderTest.search(filmIndex, pageSearch));
+    }
+
+    /** Tests for SearchManagerService.aggregate method */
+
+    @Test
+    public void shouldCountFacetsOfMatchingFilms() {
+        List<Film> films = createFilms(2000);
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, films);
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setMinYear(1990);
+        searchDTO.setMaxAwards(6);
+        searchDTO.setAggregations(EnumSet.allOf(Constants.SUPPORTED_AGGREGATE.class));
+
+        List<Film> matches = films.stream()
+                .filter(film -> film.getYear() >= 1990 && film.getAwards() <= 6)
+                .collect(Collectors.toList());
+        Map<Integer, Integer> decades = new TreeMap<>();
+        matches.forEach(film -> decades.merge(film.getYear() / 10 * 10, 1, Integer::sum));
+
+        FilmAggregation aggregation = serviceUnderTest.aggregate(filmIndex, searchDTO);
+
+        assertEquals(matches.size(), aggregation.getTotal());
+        assertEquals(matches.stream().collect(Collectors.groupingBy(Film::getYear, TreeMap::new,
+                Collectors.reducing(0, film -> 1, Integer::sum))), aggregation.getYears());
+        assertEquals(new ArrayList<>(decades.keySet()), new ArrayList<>(aggregation.getDecades().keySet()));
+        assertEquals(decades, aggregation.getDecades());
+        assertEquals(matches.stream().collect(Collectors.groupingBy(Film::getAwards, TreeMap::new,
+                Collectors.reducing(0, film -> 1, Integer::sum))), aggregation.getAwards());
+        assertEquals((int) matches.stream().filter(Film::isBestPicture).count(),
+                (int) aggregation.getBestPictureCount());
+        assertEquals(matches.stream().mapToLong(Film::getNumberOfReferences).sum(),
+                (long) aggregation.getReferencesSum());
+        assertEquals(matches.stream().mapToInt(Film::getNumberOfReferences).max().getAsInt(),
+                (int) aggregation.getReferencesMax());
+    }
+
+    @Test
+    public void shouldLeaveOutFacetsThatWereNotRequested() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(100));
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setMinYear(2000);
+        searchDTO.setMaxYear(1990);
+        searchDTO.setAggregations(EnumSet.of(Constants.SUPPORTED_AGGREGATE.NOMINATIONS,
+                Constants.SUPPORTED_AGGREGATE.NUMBER_OF_REFERENCES));
+
+        FilmAggregation aggregation = serviceUnderTest.aggregate(filmIndex, searchDTO);
+
+        assertEquals(0, aggregation.getTotal());
+        assertTrue(aggregation.getNominations().isEmpty());
+        assertEquals(0L, (long) aggregation.getReferencesSum());
+        assertNull(aggregation.getReferencesMax());
+        assertNull(aggregation.getReferencesAverage());
+        assertNull(aggregation.getYears());
+        assertNull(aggregation.getBestPictureCount());
+    }
+
+    /** Tests for SearchManagerService.explain method */
+
+    @Test
+    public void shouldExplainScanRangeAndExecutionOfSearch() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(50000));
+        SearchManagerServiceImpl parallelService = new SearchManagerServiceImpl();
+        parallelService.activate(createConfig(1000, 4));
+
+        try {
+            SearchDTO narrowSearch = new SearchDTO();
+            narrowSearch.setYear(2000);
+            SearchDTO broadSearch = new SearchDTO();
+            broadSearch.setMinYear(1950);
+            broadSearch.setLimit(25);
+            SearchDTO contradictingSearch = new SearchDTO();
+            contradictingSearch.setMinYear(2000);
+            contradictingSearch.setMaxYear(1990);
+            int narrowScanSize = serviceUnderTest.getScanSize(filmIndex, narrowSearch);
+
+            assertEquals("year index (" + narrowScanSize + " films), sequential",
+                    parallelService.explain(filmIndex, narrowSearch));
+            assertTrue(parallelService.explain(filmIndex, broadSearch)
+                    .endsWith("films), parallel top films on 4 threads"));
+            assertEquals("contradicting filter, no scan", parallelService.explain(filmIndex, contradictingSearch));
+        } finally {
+            parallelService.deactivate();
+        }
+    }
+
+    @Test
+    public void shouldExplainSharedScanOfBatch() {
+        FilmIndex filmIndex = FilmIndex.of(CONTAINER_PATH, createFilms(3000));
+        SearchDTO firstSearch = new SearchDTO();
+        firstSearch.setMinYear(1950);
+        SearchDTO secondSearch = new SearchDTO();
+        secondSearch.setMaxAwards(3);
+        SearchDTO narrowSearch = new SearchDTO();
+        narrowSearch.setYear(2000);
+
+        List<String> plans = serviceUnderTest.explainBatch(filmIndex,
+                Arrays.asList(firstSearch, secondSearch, narrowSearch));
+
+        assertEquals("shared scan of all films (3000 films) for 2 searches", plans.get(0));
+        assertEquals(plans.get(0), plans.get(1));
+        assertEquals(serviceUnderTest.explain(filmIndex, narrowSearch), plans.get(2));
+    }
+
+    private List<Film> createFilms(int count) {
+        Random random = new Random(count);
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Film film = new Film();
+            film.setTitle(FILM_TITLE_1 + random.nextInt(count / 2));
+            film.setYear(1927 + random.nextInt(94));
+            film.setAwards(random.nextInt(12));
+            film.setNominations(random.nextInt(15));
+            film.setBestPicture(random.nextInt(20) == 0);
+            film.setNumberOfReferences(i * 37 % 1000);
+            films.add(film);
+        }
+        return films;
+    }
+
+    private SearchManagerServiceImpl.Config createConfig(int parallelThreshold, int parallelism) {
+        return new SearchManagerServiceImpl.Config() {
+            @Override
+            public int parallelThreshold() {
+                return parallelThreshold;
+            }
+
+            @Override
+            public int parallelism() {
+                return parallelism;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return SearchManagerServiceImpl.Config.class;
+            }
+        };
+    }
+
     private void prepareFilmsCollectionForTest() {
         when(film1.getTitle()).thenReturn(FILM_TITLE_2);
         when(film2.getTitle()).thenReturn(FILM_TITLE_3);
@@ -0,0 +1,107 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.services.SearchMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class SearchMetricsImplTest {
+
+    private SearchMetricsImpl metricsUnderTest;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        metricsUnderTest = new SearchMetricsImpl();
+    }
+
+    @Test
+    public void shouldCountFilmsCacheLookupsAndSortOrders() {
+        metricsUnderTest.recordSearch(120, 10);
+        metricsUnderTest.recordSearch(30, 3);
+        metricsUnderTest.recordCacheLookup(true);
+        metricsUnderTest.recordCacheLookup(true);
+        metricsUnderTest.recordCacheLookup(true);
+        metricsUnderTest.recordCacheLookup(false);
+        metricsUnderTest.recordSortOrder(SortOrder.parse("year:desc,title"));
+        metricsUnderTest.recordSortOrder(SortOrder.parse("title"));
+        metricsUnderTest.recordSortOrder(SortOrder.parse("year:desc, title"));
+
+        assertEquals(150, metricsUnderTest.getFilmsScanned());
+        assertEquals(13, metricsUnderTest.getFilmsReturned());
+        assertEquals(0.75, metricsUnderTest.getCacheHitRatio(), 0.0001);
+        assertArrayEquals(new String[] { "year:desc,title: 2", "title: 1" }, metricsUnderTest.getSortByUsage());
+    }
+
+    @Test
+    public void shouldSummarizeLatenciesPerStage() {
+        metricsUnderTest.recordStage(SearchMetrics.Stage.SEARCH, TimeUnit.MILLISECONDS.toNanos(4));
+        metricsUnderTest.recordRequest(TimeUnit.MILLISECONDS.toNanos(6));
+
+        String[] latencies = metricsUnderTest.getLatencies();
+
+        assertEquals(SearchMetrics.Stage.values().length + 1, latencies.length);
+        assertTrue(latencies[SearchMetrics.Stage.SEARCH.ordinal()].startsWith("search: count=1 mean=4.000ms"));
+        assertTrue(latencies[SearchMetrics.Stage.INDEX.ordinal()].startsWith("index: count=0"));
+        assertTrue(latencies[latencies.length - 1].startsWith("request: count=1"));
+        assertEquals(1, metricsUnderTest.getRequestCount());
+    }
+
+    @Test
+    public void shouldKeepSlowRequestsAsJson() {
+        Map<SearchMetrics.Stage, Long> stageNanos = new EnumMap<>(SearchMetrics.Stage.class);
+        stageNanos.put(SearchMetrics.Stage.INDEX, TimeUnit.MICROSECONDS.toNanos(5));
+        stageNanos.put(SearchMetrics.Stage.SEARCH, TimeUnit.MILLISECONDS.toNanos(700));
+
+        assertFalse(metricsUnderTest.isSlow(TimeUnit.MILLISECONDS.toNanos(400)));
+        assertTrue(metricsUnderTest.isSlow(TimeUnit.MILLISECONDS.toNanos(700)));
+        metricsUnderTest.recordSlowRequest(new SlowRequest(0L, "/content/oscars", "minYear=2000;sortBy=title;",
+                "year index (4210 films), sequential", false, 4210, TimeUnit.MILLISECONDS.toNanos(700), stageNanos));
+
+        JsonArray slowRequests = new JsonParser().parse(metricsUnderTest.getSlowRequests()).getAsJsonArray();
+
+        assertEquals(1, slowRequests.size());
+        JsonObject slowRequest = slowRequests.get(0).getAsJsonObject();
+        assertEquals("1970-01-01T00:00:00Z", slowRequest.get("time").getAsString());
+        assertEquals("minYear=2000;sortBy=title;", slowRequest.get("query").getAsString());
+        assertEquals("year index (4210 films), sequential", slowRequest.get("plan").getAsString());
+        assertEquals("miss", slowRequest.get("cache").getAsString());
+        assertEquals(4210, slowRequest.get("scannedFilms").getAsInt());
+        assertEquals(700.0, slowRequest.get("durationMillis").getAsDouble(), 0.0001);
+        assertEquals(0.005, slowRequest.getAsJsonObject("stages").get("index").getAsDouble(), 0.0001);
+        assertFalse(slowRequest.getAsJsonObject("stages").has("parse"));
+
+        metricsUnderTest.reset();
+
+        assertEquals("[]", metricsUnderTest.getSlowRequests());
+    }
+
+    @Test
+    public void shouldBeReadableAndResettableOverJmx() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("de.cyberport.core:type=SearchMetrics,name=test");
+        metricsUnderTest.recordRequest(TimeUnit.MILLISECONDS.toNanos(2));
+        server.registerMBean(metricsUnderTest, name);
+        try {
+            assertEquals(1L, server.getAttribute(name, "RequestCount"));
+
+            server.invoke(name, "reset", null, null);
+
+            assertEquals(0L, server.getAttribute(name, "RequestCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
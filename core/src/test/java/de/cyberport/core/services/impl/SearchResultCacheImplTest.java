@@ -0,0 +1,135 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.lang.annotation.Annotation;
+
+class SearchResultCacheImplTest {
+
+    private static final String QUERY_KEY_1 = "/content/oscars@1f?year=2019;";
+    private static final String QUERY_KEY_2 = "/content/oscars@1f?year=2018;";
+    private static final String QUERY_KEY_3 = "/content/oscars@1f?year=2017;";
+    private static final String JSON = "{\"result\":[]}";
+
+    private SearchResultCacheImpl cacheUnderTest = new SearchResultCacheImpl();
+
+    @Test
+    public void shouldReturnCachedJson() {
+        cacheUnderTest.put(QUERY_KEY_1, JSON);
+
+        assertEquals(JSON, cacheUnderTest.get(QUERY_KEY_1));
+        assertNull(cacheUnderTest.get(QUERY_KEY_2));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntryWhenMaxEntriesIsReached() {
+        cacheUnderTest.activate(createConfig(2, 1024 * 1024, 60, 1));
+
+        cacheUnderTest.put(QUERY_KEY_1, JSON);
+        cacheUnderTest.put(QUERY_KEY_2, JSON);
+        cacheUnderTest.get(QUERY_KEY_1);
+        cacheUnderTest.put(QUERY_KEY_3, JSON);
+
+        assertEquals(JSON, cacheUnderTest.get(QUERY_KEY_1));
+        assertNull(cacheUnderTest.get(QUERY_KEY_2));
+        assertEquals(JSON, cacheUnderTest.get(QUERY_KEY_3));
+    }
+
+    @Test
+    public void shouldNotCacheJsonLargerThanMaxBytes() {
+        cacheUnderTest.activate(createConfig(10, 64, 60, 1));
+
+        cacheUnderTest.put(QUERY_KEY_1, JSON);
+
+        assertNull(cacheUnderTest.get(QUERY_KEY_1));
+    }
+
+    @Test
+    public void shouldKeepJsonUpToMaxJsonLength() {
+        cacheUnderTest.activate(createConfig(10, 1024, 60, 2));
+        final int maxJsonLength = cacheUnderTest.getMaxJsonLength(QUERY_KEY_1);
+        final String fitting = JSON + StringUtils.repeat(" ", maxJsonLength - JSON.length());
+
+        cacheUnderTest.put(QUERY_KEY_1, fitting);
+        cacheUnderTest.put(QUERY_KEY_2, fitting + " ");
+
+        assertEquals(fitting, cacheUnderTest.get(QUERY_KEY_1));
+        assertNull(cacheUnderTest.get(QUERY_KEY_2));
+
+        cacheUnderTest.activate(createConfig(10, 64, 60, 1));
+
+        assertEquals(-1, cacheUnderTest.getMaxJsonLength(QUERY_KEY_1));
+    }
+
+    @Test
+    public void shouldNotReturnExpiredJson() {
+        cacheUnderTest.activate(createConfig(10, 1024 * 1024, -1, 1));
+
+        cacheUnderTest.put(QUERY_KEY_1, JSON);
+
+        assertNull(cacheUnderTest.get(QUERY_KEY_1));
+    }
+
+    @Test
+    public void shouldCacheEntriesOfAllSegmentsWithinTheirShare() {
+        cacheUnderTest.activate(createConfig(100, 1024 * 1024, 60, 4));
+
+        for (int year = 2000; year < 2020; year++) {
+            cacheUnderTest.put("/content/oscars@1f?year=" + year + ";", JSON);
+        }
+
+        for (int year = 2000; year < 2020; year++) {
+            assertEquals(JSON, cacheUnderTest.get("/content/oscars@1f?year=" + year + ";"));
+        }
+    }
+
+    @Test
+    public void shouldStartOverEmptyWhenReconfigured() {
+        cacheUnderTest.put(QUERY_KEY_1, JSON);
+
+        cacheUnderTest.activate(createConfig(10, 1024 * 1024, 60, 2));
+
+        assertNull(cacheUnderTest.get(QUERY_KEY_1));
+    }
+
+    @Test
+    public void shouldRemoveAllEntriesOnClear() {
+        cacheUnderTest.put(QUERY_KEY_1, JSON);
+
+        cacheUnderTest.clear();
+
+        assertNull(cacheUnderTest.get(QUERY_KEY_1));
+    }
+
+    private SearchResultCacheImpl.Config createConfig(int maxEntries, long maxBytes, long ttlSeconds, int segments) {
+        return new SearchResultCacheImpl.Config() {
+            @Override
+            public int maxEntries() {
+                return maxEntries;
+            }
+
+            @Override
+            public long maxBytes() {
+                return maxBytes;
+            }
+
+            @Override
+            public long ttlSeconds() {
+                return ttlSeconds;
+            }
+
+            @Override
+            public int segments() {
+                return segments;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return SearchResultCacheImpl.Config.class;
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.services.SearchMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class SlowRequestLogTest {
+
+    @Test
+    public void shouldReturnLatestRequestsNewestFirst() {
+        SlowRequestLog log = new SlowRequestLog(3);
+
+        for (int i = 1; i <= 5; i++) {
+            log.add(createSlowRequest("q" + i));
+        }
+
+        assertEquals(Arrays.asList("q5", "q4", "q3"), queriesOf(log.getNewestFirst()));
+    }
+
+    @Test
+    public void shouldReturnFewerRequestsBeforeLogIsFull() {
+        SlowRequestLog log = new SlowRequestLog(3);
+
+        log.add(createSlowRequest("q1"));
+
+        assertEquals(Arrays.asList("q1"), queriesOf(log.getNewestFirst()));
+    }
+
+    @Test
+    public void shouldKeepNoRequestsWithoutCapacity() {
+        SlowRequestLog log = new SlowRequestLog(0);
+
+        log.add(createSlowRequest("q1"));
+
+        assertTrue(log.getNewestFirst().isEmpty());
+    }
+
+    @Test
+    public void shouldKeepLastRequestsOfConcurrentWriters() throws InterruptedException {
+        SlowRequestLog log = new SlowRequestLog(16);
+        List<Thread> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    log.add(createSlowRequest("q" + i));
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(16, log.getNewestFirst().size());
+
+        log.clear();
+
+        assertTrue(log.getNewestFirst().isEmpty());
+    }
+
+    private SlowRequest createSlowRequest(String query) {
+        return new SlowRequest(0L, "/content/oscars", query, null, null, 0L, 1L,
+                new EnumMap<>(SearchMetrics.Stage.class));
+    }
+
+    private List<String> queriesOf(List<SlowRequest> slowRequests) {
+        return slowRequests.stream().map(SlowRequest::getQuery).collect(Collectors.toList());
+    }
+}
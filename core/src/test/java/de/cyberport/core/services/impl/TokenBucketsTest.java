@@ -0,0 +1,47 @@
+package de.cyberport.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class TokenBucketsTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final String CLIENT = "192.0.2.1";
+
+    @Test
+    public void shouldTakeBurstAtOnceAndRefillWithRate() {
+        TokenBuckets buckets = TokenBuckets.of(2, 3, 10);
+        long now = System.nanoTime();
+
+        assertEquals(0, buckets.acquire(CLIENT, now));
+        assertEquals(0, buckets.acquire(CLIENT, now));
+        assertEquals(0, buckets.acquire(CLIENT, now));
+        assertEquals(SECOND / 2, buckets.acquire(CLIENT, now));
+        assertEquals(SECOND / 4, buckets.acquire(CLIENT, now + SECOND / 4));
+
+        assertEquals(0, buckets.acquire(CLIENT, now + SECOND / 2));
+        assertEquals(SECOND / 2, buckets.acquire(CLIENT, now + SECOND / 2));
+        assertEquals(0, buckets.acquire(CLIENT, now + 10 * SECOND));
+    }
+
+    @Test
+    public void shouldForgetIdleClientsBeyondMaxClients() {
+        TokenBuckets buckets = TokenBuckets.of(1, 1, 2);
+        long now = System.nanoTime();
+
+        buckets.acquire("192.0.2.1", now);
+        buckets.acquire("192.0.2.2", now);
+        buckets.acquire("192.0.2.3", now + 2 * SECOND);
+
+        assertEquals(1, buckets.size());
+        assertEquals(0, buckets.acquire("192.0.2.1", now + 2 * SECOND));
+    }
+
+    @Test
+    public void shouldNotLimitWithoutRate() {
+        assertNull(TokenBuckets.of(0, 10, 10));
+    }
+}
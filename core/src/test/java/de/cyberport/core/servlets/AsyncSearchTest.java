@@ -0,0 +1,131 @@
+package de.cyberport.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.cyberport.core.services.AdmissionControl;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+class AsyncSearchTest {
+
+    private static final long TIMEOUT_MILLIS = 1000;
+
+    private SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+    private SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+    private AsyncContext asyncContext = mock(AsyncContext.class);
+    private AdmissionControl.Admission admission = mock(AdmissionControl.Admission.class);
+    private List<Runnable> queued = new ArrayList<>();
+    private AtomicInteger searches = new AtomicInteger();
+    private AtomicInteger timeouts = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(asyncContext.getResponse()).thenReturn(response);
+    }
+
+    @Test
+    public void shouldSearchOnExecutorAndCompleteRequest() {
+        AsyncSearch.start(request, queued::add, TIMEOUT_MILLIS, this::search, timeouts::incrementAndGet,
+                admission);
+
+        verify(asyncContext).setTimeout(TIMEOUT_MILLIS);
+        assertEquals(0, searches.get());
+        verify(asyncContext, never()).complete();
+
+        queued.get(0).run();
+
+        assertEquals(1, searches.get());
+        verify(asyncContext).complete();
+        verify(admission).close();
+    }
+
+    @Test
+    public void shouldSearchOnRequestThreadWhenExecutorRejectsSearch() {
+        AsyncSearch.start(request, search -> {
+            throw new RejectedExecutionException();
+        }, TIMEOUT_MILLIS, this::search, timeouts::incrementAndGet, admission);
+
+        assertEquals(1, searches.get());
+        verify(asyncContext).complete();
+        verify(admission).close();
+    }
+
+    @Test
+    public void shouldAnswerTimeoutInsteadOfQueuedSearch() throws IOException {
+        AsyncSearch.start(request, queued::add, TIMEOUT_MILLIS, this::search, timeouts::incrementAndGet,
+                null);
+
+        ((AsyncListener) queued.get(0)).onTimeout(null);
+        queued.get(0).run();
+
+        assertEquals(1, timeouts.get());
+        assertEquals(0, searches.get());
+        verify(asyncContext, times(1)).complete();
+    }
+
+    @Test
+    public void shouldNotAnswerTimeoutOfSearchedRequest() throws IOException {
+        AsyncSearch.start(request, queued::add, TIMEOUT_MILLIS, this::search, timeouts::incrementAndGet,
+                admission);
+
+        queued.get(0).run();
+        ((AsyncListener) queued.get(0)).onTimeout(null);
+
+        assertEquals(1, searches.get());
+        assertEquals(0, timeouts.get());
+        verify(asyncContext, times(1)).complete();
+        verify(admission, times(1)).close();
+    }
+
+    @Test
+    public void shouldAnswerTimeoutOfRunningSearchWithoutWaitingForIt() {
+        AsyncSearch.start(request, queued::add, TIMEOUT_MILLIS, claimResponse -> {
+            ((AsyncListener) queued.get(0)).onTimeout(null);
+            search(claimResponse);
+        }, timeouts::incrementAndGet, admission);
+
+        queued.get(0).run();
+
+        assertEquals(1, timeouts.get());
+        assertEquals(0, searches.get());
+        verify(asyncContext, times(1)).complete();
+        verify(admission, times(1)).close();
+    }
+
+    @Test
+    public void shouldAnswerServerErrorWhenSearchFails() {
+        AsyncSearch.start(request, queued::add, TIMEOUT_MILLIS, claimResponse -> {
+            throw new IOException("Client went away");
+        }, timeouts::incrementAndGet, admission);
+
+        queued.get(0).run();
+
+        verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        verify(asyncContext).complete();
+        verify(admission).close();
+    }
+
+    private void search(BooleanSupplier claimResponse) {
+        if (claimResponse.getAsBoolean()) {
+            searches.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package de.cyberport.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+class CopyingWriterTest {
+
+    private static final String JSON = "{\"result\":[]}";
+
+    private StringWriter out = new StringWriter();
+
+    @Test
+    public void shouldCopyTextUpToMaxLength() throws IOException {
+        CopyingWriter writerUnderTest = new CopyingWriter(out, JSON.length());
+
+        writerUnderTest.write(JSON.substring(0, 3));
+        writerUnderTest.write(JSON.toCharArray(), 3, JSON.length() - 4);
+        writerUnderTest.write(JSON.charAt(JSON.length() - 1));
+
+        assertEquals(JSON, out.toString());
+        assertEquals(JSON, writerUnderTest.getCopy());
+    }
+
+    @Test
+    public void shouldDropCopyOfLongerTextButPassItOn() throws IOException {
+        CopyingWriter writerUnderTest = new CopyingWriter(out, JSON.length() - 1);
+
+        writerUnderTest.write(JSON);
+        writerUnderTest.write(" ");
+
+        assertEquals(JSON + " ", out.toString());
+        assertNull(writerUnderTest.getCopy());
+    }
+
+    @Test
+    public void shouldNotCopyForNegativeMaxLength() throws IOException {
+        CopyingWriter writerUnderTest = new CopyingWriter(out, -1);
+
+        writerUnderTest.write(JSON);
+
+        assertEquals(JSON, out.toString());
+        assertNull(writerUnderTest.getCopy());
+    }
+}
@@ -1,26 +1,56 @@
 package de.cyberport.core.servlets;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import de.cyberport.core.dto.Film;
 import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.dto.SlowRequest;
+import de.cyberport.core.index.FilmIndex;
+import de.cyberport.core.index.SortOrder;
+import de.cyberport.core.services.AdmissionControl;
+import de.cyberport.core.services.SearchMetrics;
+import de.cyberport.core.services.SearchResultCache;
+import de.cyberport.core.services.impl.FilmIndexServiceImpl;
 import de.cyberport.core.services.impl.SearchManagerServiceImpl;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.http.HttpServletResponse;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 /**
  * @author Vitalii Afonin
@@ -33,6 +63,18 @@ class OscarFilmContainerServletTest {
     @Mock
     private SearchManagerServiceImpl searchManagerService;
 
+    @Spy
+    private FilmIndexServiceImpl filmIndexService = new FilmIndexServiceImpl();
+
+    @Mock
+    private SearchMetrics searchMetrics;
+
+    @Mock
+    private AdmissionControl admissionControl;
+
+    @Mock
+    private SearchResultCache searchResultCache;
+
     @InjectMocks
     private OscarFilmContainerServlet underTest = new OscarFilmContainerServlet();
 
@@ -50,6 +92,14 @@ class OscarFilmContainerServletTest {
 
         doCallRealMethod().when(searchManagerService).getFilmComparator(any());
         doCallRealMethod().when(searchManagerService).isFilmMatchedToSearchParams(any(Film.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).search(any(FilmIndex.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).searchBatch(any(FilmIndex.class), any());
+        doCallRealMethod().when(searchManagerService).count(any(FilmIndex.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).getScanSize(any(FilmIndex.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).aggregate(any(FilmIndex.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).explain(any(FilmIndex.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).findMatchingFilms(any(FilmIndex.class), any(SearchDTO.class));
+        doCallRealMethod().when(searchManagerService).sortFilms(any(FilmIndex.class), any(BitSet.class), any(), any());
     }
 
     @Test
@@ -413,7 +463,258 @@ class OscarFilmContainerServletTest {
     }
 
     @Test
-    void shouldThrowIllegalArgumentExceptionWhenFilterParameterValueIsInvalid(AemContext context) {
+    void shouldReturnFilmsWhenTitlePrefixFilterIsProvided(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("titlePrefix", "TITAN");
+
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertEquals("{\"result\":[{\"title\":\"Titanic\",\"year\":1953,\"awards\":1,\"nominations\":2," +
+                "\"isBestPicture\":false,\"numberOfReferences\":1264},{\"title\":\"Titanic\",\"year\":1997," +
+                "\"awards\":11,\"nominations\":14,\"isBestPicture\":true,\"numberOfReferences\":6335}]}",
+                response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnFilmsWhenTitleContainsFilterIsProvided(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("titleContains", "lord of the");
+        params.put("sortBy", "year");
+        params.put("limit", "2");
+
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertTrue(response.getOutputAsString().startsWith("{\"result\":[{\"title\":" +
+                "\"The Lord of the Rings: The Fellowship of the Ring\",\"year\":2001"));
+        assertTrue(response.getOutputAsString().contains("\"title\":\"The Lord of the Rings: The Two Towers\""));
+    }
+
+    @Test
+    void shouldReturnOnlyRequestedFieldsWhenFieldsAreSent(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "Parasite");
+        params.put("fields", "year,title");
+
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertEquals("{\"result\":[{\"title\":\"Parasite\",\"year\":2019}]}", response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnFacetCountsWhenAggregateIsSent(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("minYear", "2018");
+        params.put("aggregate", "year,isBestPicture");
+
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertEquals("{\"total\":31,\"aggregations\":{\"year\":{\"2018\":15,\"2019\":16}," +
+                "\"isBestPicture\":{\"true\":2,\"false\":29}}}", response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnResultsKeyedByQueryIdWhenBatchIsPosted(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        request.setMethod("POST");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent(("{\"queries\":[" +
+                "{\"id\":\"winners\",\"year\":2019,\"minAwards\":4}," +
+                "{\"id\":\"mostNominated\",\"sortBy\":\"nominations:desc\",\"limit\":1}," +
+                "{\"id\":\"facets\",\"minYear\":2018,\"aggregate\":\"isBestPicture\"}]}")
+                .getBytes(StandardCharsets.UTF_8));
+
+        underTest.doPost(request, response);
+
+        JsonObject results = new JsonParser().parse(response.getOutputAsString()).getAsJsonObject()
+                .getAsJsonObject("results");
+        assertEquals("application/json", response.getContentType());
+        assertEquals(3, results.size());
+        assertEquals("Parasite", results.getAsJsonObject("winners").getAsJsonArray("result").get(0)
+                .getAsJsonObject().get("title").getAsString());
+        assertEquals(1, results.getAsJsonObject("mostNominated").getAsJsonArray("result").size());
+        assertEquals(2, results.getAsJsonObject("facets").getAsJsonObject("aggregations")
+                .getAsJsonObject("isBestPicture").get("true").getAsInt());
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenBatchQueryHasNoId(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        request.setMethod("POST");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent("{\"queries\":[{\"year\":2019}]}".getBytes(StandardCharsets.UTF_8));
+
+        underTest.doPost(request, response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("{\"error\":{\"status\":400,\"message\":\"Batch query must have an id\"}}",
+                response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnBadRequestWithQueryIdWhenBatchQueryIsInvalid(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        request.setMethod("POST");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent("{\"queries\":[{\"id\":\"winners\",\"sortBy\":\"rating\"}]}"
+                .getBytes(StandardCharsets.UTF_8));
+
+        underTest.doPost(request, response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("{\"error\":{\"status\":400,\"message\":\"Unsupported sort order rating\","
+                + "\"query\":\"winners\",\"parameter\":\"sortBy\",\"value\":\"rating\"}}",
+                response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnNextPageWhenCursorIsSent(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("year", "1998");
+        params.put("limit", "2");
+        params.put("cursor", "");
+        params.put("total", "true");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        JsonObject firstPage = new JsonParser().parse(response.getOutputAsString()).getAsJsonObject();
+        assertEquals(2, firstPage.getAsJsonArray("result").size());
+        assertEquals("Bunny", firstPage.getAsJsonArray("result").get(1).getAsJsonObject().get("title").getAsString());
+        assertEquals(12, firstPage.get("total").getAsInt());
+
+        MockSlingHttpServletRequest nextRequest = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        MockSlingHttpServletResponse nextResponse = new MockSlingHttpServletResponse();
+        nextRequest.setResource(context.currentResource());
+        params.put("cursor", firstPage.get("nextCursor").getAsString());
+        params.remove("total");
+        nextRequest.setParameterMap(params);
+
+        underTest.doGet(nextRequest, nextResponse);
+
+        JsonObject secondPage = new JsonParser().parse(nextResponse.getOutputAsString()).getAsJsonObject();
+        assertEquals("Election Night",
+                secondPage.getAsJsonArray("result").get(0).getAsJsonObject().get("title").getAsString());
+        assertFalse(secondPage.has("total"));
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenETagMatches(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("year", "1998");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        String eTag = response.getHeader("ETag");
+        assertNotNull(eTag);
+        assertNotNull(response.getHeader("Last-Modified"));
+
+        MockSlingHttpServletRequest conditionalRequest = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        MockSlingHttpServletResponse conditionalResponse = new MockSlingHttpServletResponse();
+        conditionalRequest.setResource(context.currentResource());
+        conditionalRequest.setParameterMap(params);
+        conditionalRequest.addHeader("If-None-Match", eTag);
+
+        underTest.doGet(conditionalRequest, conditionalResponse);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, conditionalResponse.getStatus());
+        assertEquals("", conditionalResponse.getOutputAsString());
+        assertEquals(eTag, conditionalResponse.getHeader("ETag"));
+    }
+
+    @Test
+    void shouldReturnCborWhenCborExtensionIsRequested(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        context.requestPathInfo().setExtension("cbor");
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "Parasite");
+        params.put("fields", "year");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertTrue(response.getContentType().startsWith("application/cbor"));
+        // {"result":[{"year":2019}]} with indefinite length map and arrays
+        assertArrayEquals(new byte[] { (byte) 0xbf, 0x66, 'r', 'e', 's', 'u', 'l', 't', (byte) 0x9f, (byte) 0xbf,
+                0x64, 'y', 'e', 'a', 'r', 0x19, 0x07, (byte) 0xe3, (byte) 0xff, (byte) 0xff, (byte) 0xff },
+                response.getOutput());
+        assertTrue(response.getHeader("ETag").endsWith("-cbor\""));
+    }
+
+    @Test
+    void shouldReturnGzipEncodedResponseWhenClientAcceptsGzip(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("minYear", "2010");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertTrue(response.getHeader("ETag").endsWith("-gzip\""));
+        String json = new String(gunzip(response.getOutput()), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"result\":[{\"title\":"));
+        assertTrue(json.contains("\"title\":\"Parasite\""));
+    }
+
+    @Test
+    void shouldNotCompressResponseBelowMinimumSize(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        request.addHeader("Accept-Encoding", "gzip");
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "nonExisting");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("{\"result\":[]}", response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenFilterParameterValueIsInvalid(AemContext context) throws IOException {
         MockSlingHttpServletRequest request = context.request();
         MockSlingHttpServletResponse response = context.response();
 
@@ -421,6 +722,251 @@ class OscarFilmContainerServletTest {
         params.put("year", "abcd");
         request.setParameterMap(params);
 
-        assertThrows(IllegalArgumentException.class, () -> underTest.doGet(request, response));
+        underTest.doGet(request, response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        final JsonObject error = new JsonParser().parse(response.getOutputAsString()).getAsJsonObject()
+                .getAsJsonObject("error");
+        assertEquals(400, error.get("status").getAsInt());
+        assertEquals("Parameter year must be an integer", error.get("message").getAsString());
+        assertEquals("year", error.get("parameter").getAsString());
+        assertEquals("abcd", error.get("value").getAsString());
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenSortOrderIsUnsupported(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        request.setQueryString("sortBy=rating%3Adesc&year=2019");
+
+        underTest.doGet(request, response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("{\"error\":{\"status\":400,\"message\":\"Unsupported sort order rating:desc\","
+                + "\"parameter\":\"sortBy\",\"value\":\"rating:desc\"}}", response.getOutputAsString());
+    }
+
+    @Test
+    void shouldReturnTooManyRequestsWhenAdmissionIsRejected(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        AdmissionControl.Admission rejected = mock(AdmissionControl.Admission.class);
+        when(rejected.getRetryAfterSeconds()).thenReturn(2L);
+        when(admissionControl.admit(any(), any())).thenReturn(rejected);
+
+        underTest.doGet(request, response);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+        assertEquals("{\"error\":{\"status\":429,\"message\":\"Too many requests\"}}", response.getOutputAsString());
+        verify(searchManagerService, never()).search(any(FilmIndex.class), any(SearchDTO.class));
+    }
+
+    @Test
+    void shouldCloseAdmissionWhenRequestIsAnswered(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        AdmissionControl.Admission admitted = mock(AdmissionControl.Admission.class);
+        when(admitted.isAdmitted()).thenReturn(true);
+        when(admissionControl.admit(any(), any())).thenReturn(admitted);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "Parasite");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertTrue(response.getOutputAsString().contains("Parasite"));
+        verify(admitted).close();
+    }
+
+    @Test
+    void shouldSearchOnRequestThreadWhenRequestIsNotAsyncSupported(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = spy(context.request());
+        doReturn(false).when(request).isAsyncSupported();
+
+        assertSearchOnRequestThread(request, context.response());
+        verify(request, never()).startAsync();
+    }
+
+    @Test
+    void shouldSearchOnRequestThreadWhenRequestCannotTellIfAsyncIsSupported(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = spy(context.request());
+        doThrow(new UnsupportedOperationException()).when(request).isAsyncSupported();
+
+        assertSearchOnRequestThread(request, context.response());
+        verify(request, never()).startAsync();
+    }
+
+    private void assertSearchOnRequestThread(MockSlingHttpServletRequest request,
+            MockSlingHttpServletResponse response) throws IOException {
+        OscarFilmContainerServlet.Config config = mock(OscarFilmContainerServlet.Config.class);
+        when(config.asyncEnabled()).thenReturn(true);
+        when(config.asyncThreads()).thenReturn(1);
+        when(config.asyncQueueSize()).thenReturn(1);
+        underTest.activate(config);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("year", "2019");
+        request.setParameterMap(params);
+
+        try {
+            underTest.doGet(request, response);
+        } finally {
+            underTest.deactivate();
+        }
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertTrue(response.getOutputAsString().contains("Parasite"));
+    }
+
+    @Test
+    void shouldRecordStagesAndSendServerTimingWhenMetricsAreEnabled(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        when(searchMetrics.isEnabled()).thenReturn(true);
+        when(searchMetrics.isServerTimingEnabled()).thenReturn(true);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("year", "2019");
+        params.put("minAwards", "4");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        assertTrue(response.getHeader("Server-Timing").matches(
+                "parse;dur=[0-9.]+, admission;dur=[0-9.]+, index;dur=[0-9.]+, cache;desc=miss;dur=[0-9.]+, "
+                        + "search;dur=[0-9.]+"));
+        verify(searchMetrics).recordStage(eq(SearchMetrics.Stage.SERIALIZE), anyLong());
+        verify(searchMetrics).recordSortOrder(SortOrder.DEFAULT);
+        verify(searchMetrics).recordSearch(anyInt(), eq(1));
+        verify(searchMetrics).recordRequest(anyLong());
+    }
+
+    @Test
+    void shouldCacheStreamedResponseWithinMaxJsonLength(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        when(searchResultCache.getMaxJsonLength(any())).thenReturn(1024);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "Parasite");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, response);
+
+        verify(searchResultCache).put(any(), eq(response.getOutputAsString()));
+    }
+
+    @Test
+    void shouldAnswerIdenticalSearchWaitingForTheFirstOneWithItsJson(AemContext context) throws Exception {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        when(searchResultCache.getMaxJsonLength(any())).thenReturn(1024);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "Parasite");
+        request.setParameterMap(params);
+        MockSlingHttpServletRequest waitingRequest =
+                new MockSlingHttpServletRequest(context.resourceResolver(), context.bundleContext());
+        waitingRequest.setResource(context.currentResource());
+        waitingRequest.setParameterMap(params);
+        MockSlingHttpServletResponse waitingResponse = new MockSlingHttpServletResponse();
+
+        // the identical search starts while the first one searches and waits for it
+        final Thread waiting = new Thread(() -> {
+            try {
+                underTest.doGet(waitingRequest, waitingResponse);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        doAnswer(invocation -> {
+            waiting.start();
+            while (waiting.getState() != Thread.State.WAITING && waiting.getState() != Thread.State.TERMINATED) {
+                Thread.sleep(1);
+            }
+            return invocation.callRealMethod();
+        }).when(searchManagerService).search(any(FilmIndex.class), any(SearchDTO.class));
+
+        underTest.doGet(request, response);
+        waiting.join();
+
+        verify(searchManagerService).search(any(FilmIndex.class), any(SearchDTO.class));
+        assertTrue(response.getOutputAsString().contains("Parasite"));
+        assertEquals(response.getOutputAsString(), waitingResponse.getOutputAsString());
+    }
+
+    @Test
+    void shouldStreamResponseBeyondMaxJsonLengthWithoutCachingIt(AemContext context) throws IOException {
+        MockSlingHttpServletResponse response = context.response();
+        when(searchResultCache.getMaxJsonLength(any())).thenReturn(1024);
+
+        underTest.doGet(context.request(), response);
+
+        assertTrue(response.getOutputAsString().length() > 1024);
+        assertTrue(response.getOutputAsString().contains("Zorba the Greek"));
+        verify(searchResultCache, never()).put(any(), any());
+    }
+
+    @Test
+    void shouldTimeCacheLookupOfCachedResponse(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        when(searchMetrics.isEnabled()).thenReturn(true);
+        when(searchMetrics.isServerTimingEnabled()).thenReturn(true);
+        when(searchResultCache.get(any())).thenReturn("{\"result\":[]}");
+
+        underTest.doGet(request, response);
+
+        assertEquals("{\"result\":[]}", response.getOutputAsString());
+        assertTrue(response.getHeader("Server-Timing").matches(
+                "parse;dur=[0-9.]+, admission;dur=[0-9.]+, index;dur=[0-9.]+, cache;desc=hit;dur=[0-9.]+"));
+        verify(searchMetrics).recordStage(eq(SearchMetrics.Stage.CACHE), anyLong());
+        verify(searchMetrics).recordCacheLookup(true);
+        verify(searchManagerService, never()).search(any(FilmIndex.class), any(SearchDTO.class));
+    }
+
+    @Test
+    void shouldNotMeasureRequestWhenMetricsAreDisabled(AemContext context) throws IOException {
+        underTest.doGet(context.request(), context.response());
+
+        assertNull(context.response().getHeader("Server-Timing"));
+        verify(searchMetrics, never()).recordRequest(anyLong());
+    }
+
+    @Test
+    void shouldRecordSlowRequestWithPlanOfItsSearch(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        when(searchMetrics.isEnabled()).thenReturn(true);
+        when(searchMetrics.isSlow(anyLong())).thenReturn(true);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("year", "2019");
+        request.setParameterMap(params);
+
+        underTest.doGet(request, context.response());
+
+        ArgumentCaptor<SlowRequest> slowRequest = ArgumentCaptor.forClass(SlowRequest.class);
+        verify(searchMetrics).recordSlowRequest(slowRequest.capture());
+        assertEquals("/content/oscars", slowRequest.getValue().getPath());
+        assertEquals("year=2019;sortBy=title;", slowRequest.getValue().getQuery());
+        assertTrue(slowRequest.getValue().getPlan().startsWith("year index ("));
+        assertFalse(slowRequest.getValue().getCacheHit());
+        assertTrue(slowRequest.getValue().getStageNanos().containsKey(SearchMetrics.Stage.SEARCH));
+    }
+
+    private byte[] gunzip(byte[] gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+        return out.toByteArray();
     }
 }
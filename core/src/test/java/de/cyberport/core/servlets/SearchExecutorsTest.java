@@ -0,0 +1,85 @@
+package de.cyberport.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SearchExecutorsTest {
+
+    @Test
+    public void shouldRejectSearchesBeyondThreadsAndQueue() throws InterruptedException {
+        ExecutorService executor = SearchExecutors.newExecutor(false, 1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                running.countDown();
+                awaitQuietly(release);
+            });
+            running.await();
+            executor.execute(() -> awaitQuietly(release));
+
+            assertTrue(executor instanceof ThreadPoolExecutor);
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRunBoundedNumberOfSearchesAtOnceAndRejectBeyondQueue() throws InterruptedException {
+        ExecutorService executor = new SearchExecutors.BoundedExecutor(Executors.newCachedThreadPool(), 1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(2);
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger runningNow = new AtomicInteger();
+        Runnable search = () -> {
+            maxRunning.accumulateAndGet(runningNow.incrementAndGet(), Math::max);
+            running.countDown();
+            awaitQuietly(release);
+            runningNow.decrementAndGet();
+            ended.countDown();
+        };
+        try {
+            executor.execute(search);
+            running.await();
+            executor.execute(search);
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+            release.countDown();
+            assertTrue(ended.await(10, TimeUnit.SECONDS));
+            assertEquals(1, maxRunning.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldUseVirtualThreadsWhereRuntimeHasThem() {
+        ExecutorService executor = SearchExecutors.newExecutor(true, 1, 1);
+        try {
+            assertEquals(SearchExecutors.newVirtualThreadExecutor() == null, executor instanceof ThreadPoolExecutor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package de.cyberport.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    private static final String QUERY_KEY = "/content/oscars@1f?year=2019;";
+    private static final String JSON = "{\"result\":[]}";
+
+    private SingleFlight<String, String> flightsUnderTest = new SingleFlight<>();
+
+    @Test
+    public void shouldComputeOnceForCallsWaitingMeanwhile() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CompletableFuture<String> follower = new CompletableFuture<>();
+
+        String value = flightsUnderTest.execute(QUERY_KEY, () -> {
+            computations.incrementAndGet();
+            Thread waiting = new Thread(() -> {
+                try {
+                    follower.complete(flightsUnderTest.execute(QUERY_KEY, () -> {
+                        computations.incrementAndGet();
+                        return "{}";
+                    }));
+                } catch (IOException ex) {
+                    follower.completeExceptionally(ex);
+                }
+            });
+            waiting.start();
+            while (waiting.getState() != Thread.State.WAITING) {
+                Thread.yield();
+            }
+            return JSON;
+        });
+
+        assertEquals(JSON, value);
+        assertEquals(JSON, follower.get());
+        assertEquals(1, computations.get());
+        assertEquals(0, flightsUnderTest.size());
+    }
+
+    @Test
+    public void shouldComputeAgainOnceValueIsComputed() throws IOException {
+        AtomicInteger computations = new AtomicInteger();
+
+        flightsUnderTest.execute(QUERY_KEY, () -> JSON + computations.incrementAndGet());
+        String value = flightsUnderTest.execute(QUERY_KEY, () -> JSON + computations.incrementAndGet());
+
+        assertEquals(JSON + 2, value);
+    }
+
+    @Test
+    public void shouldPassExceptionToWaitingCalls() throws Exception {
+        CompletableFuture<Throwable> follower = new CompletableFuture<>();
+
+        assertThrows(IllegalStateException.class, () -> flightsUnderTest.execute(QUERY_KEY, () -> {
+            Thread waiting = new Thread(() -> {
+                try {
+                    flightsUnderTest.execute(QUERY_KEY, () -> JSON);
+                    follower.complete(null);
+                } catch (IOException | RuntimeException ex) {
+                    follower.complete(ex);
+                }
+            });
+            waiting.start();
+            while (waiting.getState() != Thread.State.WAITING) {
+                Thread.yield();
+            }
+            throw new IllegalStateException("Search failed");
+        }));
+
+        assertTrue(follower.get() instanceof IllegalStateException);
+        assertEquals(JSON, flightsUnderTest.execute(QUERY_KEY, () -> JSON));
+    }
+}
@@ -0,0 +1,86 @@
+package de.cyberport.core.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.stream.JsonWriter;
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+
+class CborWriterTest {
+
+    @Test
+    public void shouldEncodeIntegersInShortestForm() throws IOException {
+        assertEquals("00", encode(jsonWriter -> jsonWriter.value(0)));
+        assertEquals("17", encode(jsonWriter -> jsonWriter.value(23)));
+        assertEquals("1818", encode(jsonWriter -> jsonWriter.value(24)));
+        assertEquals("1903e8", encode(jsonWriter -> jsonWriter.value(1000)));
+        assertEquals("1a000f4240", encode(jsonWriter -> jsonWriter.value(1000000)));
+        assertEquals("1b000000e8d4a51000", encode(jsonWriter -> jsonWriter.value(1000000000000L)));
+        assertEquals("20", encode(jsonWriter -> jsonWriter.value(-1)));
+        assertEquals("3903e7", encode(jsonWriter -> jsonWriter.value(-1000)));
+        assertEquals("3b7fffffffffffffff", encode(jsonWriter -> jsonWriter.value(Long.MIN_VALUE)));
+    }
+
+    @Test
+    public void shouldEncodeStringsAsUtf8() throws IOException {
+        assertEquals("60", encode(jsonWriter -> jsonWriter.value("")));
+        assertEquals("6161", encode(jsonWriter -> jsonWriter.value("a")));
+        assertEquals("62c3bc", encode(jsonWriter -> jsonWriter.value("ü")));
+        assertEquals("63e6b0b4", encode(jsonWriter -> jsonWriter.value("水")));
+        assertEquals("64f0908591", encode(jsonWriter -> jsonWriter.value("𐅑")));
+    }
+
+    @Test
+    public void shouldEncodeSimpleValuesAndDoubles() throws IOException {
+        assertEquals("f5", encode(jsonWriter -> jsonWriter.value(true)));
+        assertEquals("f4", encode(jsonWriter -> jsonWriter.value(false)));
+        assertEquals("f6", encode(jsonWriter -> jsonWriter.value((String) null)));
+        assertEquals("fb3ff199999999999a", encode(jsonWriter -> jsonWriter.value(1.1)));
+    }
+
+    @Test
+    public void shouldEncodeObjectsAndArraysWithIndefiniteLength() throws IOException {
+        assertEquals("bf61619f0102ff6162bfffff", encode(jsonWriter -> {
+            jsonWriter.beginObject();
+            jsonWriter.name("a").beginArray().value(1).value(2).endArray();
+            jsonWriter.name("b").beginObject().endObject();
+            jsonWriter.endObject();
+        }));
+    }
+
+    @Test
+    public void shouldEncodeSearchResultWithJsonWriterOfResponse() throws IOException {
+        Film film = new Film();
+        film.setTitle("Up");
+        film.setYear(2009);
+        SearchResult searchResult = new SearchResult(Collections.singletonList(film), null, null,
+                EnumSet.of(Constants.SUPPORTED_FIELD.TITLE, Constants.SUPPORTED_FIELD.YEAR));
+
+        assertEquals("bf66726573756c749fbf657469746c6562557064796561721907d9ffffff",
+                encode(jsonWriter -> SearchResultJsonWriter.write(searchResult, jsonWriter)));
+    }
+
+    private String encode(Content content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CborWriter cborWriter = new CborWriter(out)) {
+            content.write(cborWriter);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : out.toByteArray()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private interface Content {
+
+        void write(JsonWriter jsonWriter) throws IOException;
+    }
+}
@@ -0,0 +1,93 @@
+package de.cyberport.core.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+class PooledGzipOutputStreamTest {
+
+    @Test
+    public void shouldWriteGzipReadableByJdk() throws IOException {
+        byte[] content = createContent(100000);
+
+        assertArrayEquals(content, gunzip(gzip(content)));
+    }
+
+    @Test
+    public void shouldReuseDeflaterForNextStream() throws IOException {
+        byte[] first = createContent(50000);
+        byte[] second = "{\"result\":[]}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] firstGzip = gzip(first);
+        byte[] secondGzip = gzip(second);
+
+        assertArrayEquals(first, gunzip(firstGzip));
+        assertArrayEquals(second, gunzip(secondGzip));
+        assertArrayEquals(firstGzip, gzip(first));
+    }
+
+    @Test
+    public void shouldWriteEmptyGzipWhenNothingIsWritten() throws IOException {
+        assertEquals(0, gunzip(gzip(new byte[0])).length);
+    }
+
+    @Test
+    public void shouldCompressWithNewDeflaterAfterPooledOnesAreEnded() throws IOException {
+        byte[] content = createContent(50000);
+        byte[] contentGzip = gzip(content);
+
+        PooledGzipOutputStream.endPooledDeflaters();
+
+        assertArrayEquals(contentGzip, gzip(content));
+    }
+
+    @Test
+    public void shouldRejectWritesAfterClose() throws IOException {
+        PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(new ByteArrayOutputStream(), 6);
+        gzipStream.close();
+
+        assertThrows(IOException.class, () -> gzipStream.write(1));
+    }
+
+    private byte[] createContent(int length) {
+        Random random = new Random(length);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(out, 6)) {
+            // the first half at once, the rest byte by byte
+            int half = content.length / 2;
+            gzipStream.write(content, 0, half);
+            for (int i = half; i < content.length; i++) {
+                gzipStream.write(content[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,146 @@
+package de.cyberport.core.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.cyberport.core.dto.ParameterError;
+import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.SortOrder;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class SearchParameterParserTest {
+
+    @Test
+    public void shouldParseEscapedQueryString() {
+        SearchDTO searchDTO = new SearchDTO();
+
+        ParameterError error = SearchParameterParser.parseQueryString(
+                "title=Am%C3%A9lie+Poulain&minYear=-5&maxAwards=11&sortBy=awards%3Adesc%2Cyear&limit=3&isBestPicture=",
+                searchDTO);
+
+        assertNull(error);
+        assertEquals("Amélie Poulain", searchDTO.getTitle());
+        assertEquals(Integer.valueOf(-5), searchDTO.getMinYear());
+        assertEquals(Integer.valueOf(11), searchDTO.getMaxAwards());
+        assertEquals(SortOrder.parse("awards:desc,year"), searchDTO.getSortOrder());
+        assertEquals(Integer.valueOf(3), searchDTO.getLimit());
+    }
+
+    @Test
+    public void shouldIgnoreUnknownParameters() {
+        SearchDTO searchDTO = new SearchDTO();
+
+        ParameterError error = SearchParameterParser.parseQueryString("rating=%%%&&year=2019&_=1", searchDTO);
+
+        assertNull(error);
+        assertEquals(Integer.valueOf(2019), searchDTO.getYear());
+    }
+
+    @Test
+    public void shouldUseLastValueOfParameter() {
+        SearchDTO searchDTO = new SearchDTO();
+
+        ParameterError error = SearchParameterParser.parseQueryString("year=abc&year=1997&year=2019", searchDTO);
+
+        assertNull(error);
+        assertEquals(Integer.valueOf(2019), searchDTO.getYear());
+    }
+
+    @Test
+    public void shouldReturnErrorWhenLastValueIsInvalid() {
+        ParameterError error = SearchParameterParser.parseQueryString("year=2019&year=20x9", new SearchDTO());
+
+        assertEquals("year", error.getParameter());
+        assertEquals("20x9", error.getValue());
+        assertEquals("Parameter year must be an integer", error.getMessage());
+    }
+
+    @Test
+    public void shouldReturnErrorWhenValueIsOutOfRange() {
+        assertEquals("Parameter limit must be an integer",
+                SearchParameterParser.parseQueryString("limit=2147483648", new SearchDTO()).getMessage());
+        assertEquals("Parameter minAwards cannot be less than 0",
+                SearchParameterParser.parseQueryString("minAwards=-1", new SearchDTO()).getMessage());
+    }
+
+    @Test
+    public void shouldReturnErrorWhenValueIsNotUrlEncoded() {
+        ParameterError error = SearchParameterParser.parseQueryString("title=100%25+%ZZ", new SearchDTO());
+
+        assertEquals("title", error.getParameter());
+        assertEquals("Parameter title is not URL encoded", error.getMessage());
+    }
+
+    @Test
+    public void shouldReturnErrorWhenParameterNameIsEmpty() {
+        assertEquals("Parameter name cannot be empty",
+                SearchParameterParser.parseQueryString("year=2019&=1", new SearchDTO()).getMessage());
+    }
+
+    @Test
+    public void shouldReturnErrorWhenSortOrderOrFacetIsUnsupported() {
+        ParameterError error = SearchParameterParser.parseQueryString("sortBy=rating", new SearchDTO());
+
+        assertEquals("sortBy", error.getParameter());
+        assertEquals("Unsupported sort order rating", error.getMessage());
+        assertEquals("aggregate",
+                SearchParameterParser.parseQueryString("aggregate=year,rating", new SearchDTO()).getParameter());
+    }
+
+    @Test
+    public void shouldParseParameterMapLikeQueryString() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("title", "Parasite");
+        parameters.put("sortBy", "year:desc");
+        parameters.put("offset", "2");
+        SearchDTO fromMap = new SearchDTO();
+        SearchDTO fromQueryString = new SearchDTO();
+
+        assertNull(SearchParameterParser.parse(parameters, fromMap));
+        assertNull(SearchParameterParser.parseQueryString("title=Parasite&sortBy=year%3Adesc&offset=2",
+                fromQueryString));
+        assertEquals(fromQueryString.getQueryKey(), fromMap.getQueryKey());
+    }
+
+    @Test
+    public void shouldParseBatchQueriesInOrder() {
+        Map<String, SearchDTO> searchDTOs = new LinkedHashMap<>();
+
+        ParameterError error = SearchParameterParser.parseBatch(new StringReader("{\"queries\":["
+                + "{\"id\":\"winners\",\"isBestPicture\":true,\"limit\":5},"
+                + "{\"id\":\"recent\",\"minYear\":2018,\"title\":null}]}"), 2, searchDTOs);
+
+        assertNull(error);
+        assertArrayEquals(new String[] { "winners", "recent" }, searchDTOs.keySet().toArray());
+        assertTrue(searchDTOs.get("winners").isBestPicture());
+        assertEquals(Integer.valueOf(2018), searchDTOs.get("recent").getMinYear());
+    }
+
+    @Test
+    public void shouldReturnErrorWithIdOfInvalidBatchQuery() {
+        ParameterError error = SearchParameterParser.parseBatch(new StringReader("{\"queries\":["
+                + "{\"id\":\"winners\",\"isBestPicture\":true},{\"id\":\"recent\",\"minYear\":\"20x8\"}]}"),
+                2, new LinkedHashMap<>());
+
+        assertEquals("recent", error.getQuery());
+        assertEquals("minYear", error.getParameter());
+        assertEquals("20x8", error.getValue());
+        assertEquals("Parameter minYear must be an integer", error.getMessage());
+    }
+
+    @Test
+    public void shouldReturnErrorWhenBatchIsInvalid() {
+        assertEquals("Batch request is not valid JSON",
+                SearchParameterParser.parseBatch(new StringReader("{"), 2, new LinkedHashMap<>()).getMessage());
+        assertEquals("Batch request cannot contain more than 1 queries", SearchParameterParser.parseBatch(
+                new StringReader("{\"queries\":[{\"id\":\"a\"},{\"id\":\"b\"}]}"), 1, new LinkedHashMap<>())
+                .getMessage());
+        assertEquals("a", SearchParameterParser.parseBatch(
+                new StringReader("{\"queries\":[{\"id\":\"a\"},{\"id\":\"a\"}]}"), 2, new LinkedHashMap<>())
+                .getQuery());
+    }
+}
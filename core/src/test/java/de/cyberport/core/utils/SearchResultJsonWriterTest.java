@@ -0,0 +1,87 @@
+package de.cyberport.core.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.Gson;
+import de.cyberport.core.dto.Film;
+import de.cyberport.core.dto.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+class SearchResultJsonWriterTest {
+
+    private static final String EMPTY_RESULT = "{\"result\":[]}";
+
+    @Test
+    public void shouldWriteEmptyArrayWhenThereAreNoFilms() throws IOException {
+        StringWriter writer = new StringWriter();
+
+        SearchResultJsonWriter.write(new SearchResult(new ArrayList<>()), writer);
+
+        assertEquals(EMPTY_RESULT, writer.toString());
+    }
+
+    @Test
+    public void shouldWriteSameJsonAsGson() throws IOException {
+        SearchResult searchResult = new SearchResult(Arrays.asList(
+                createFilm("You Can't Take It with You", 1938, true),
+                createFilm("<Ben & Hur>", 1959, false)));
+        StringWriter writer = new StringWriter();
+
+        SearchResultJsonWriter.write(searchResult, writer);
+
+        assertEquals(new Gson().toJson(searchResult), writer.toString());
+    }
+
+    @Test
+    public void shouldSkipTitleWhenItIsNull() throws IOException {
+        SearchResult searchResult = new SearchResult(Collections.singletonList(createFilm(null, 2019, false)));
+        StringWriter writer = new StringWriter();
+
+        SearchResultJsonWriter.write(searchResult, writer);
+
+        assertEquals(new Gson().toJson(searchResult), writer.toString());
+        assertFalse(writer.toString().contains("title"));
+    }
+
+    @Test
+    public void shouldWriteOnlyRequestedFieldsInOrderOfFilmProperties() throws IOException {
+        SearchResult searchResult = new SearchResult(Arrays.asList(createFilm("<Ben & Hur>", 1959, true),
+                createFilm(null, 2019, false)), null, 2,
+                EnumSet.of(Constants.SUPPORTED_FIELD.IS_BEST_PICTURE, Constants.SUPPORTED_FIELD.TITLE));
+        StringWriter writer = new StringWriter();
+
+        SearchResultJsonWriter.write(searchResult, writer);
+
+        assertEquals("{\"result\":[{\"title\":\"\\u003cBen \\u0026 Hur\\u003e\",\"isBestPicture\":true},"
+                + "{\"isBestPicture\":false}],\"total\":2}", writer.toString());
+    }
+
+    @Test
+    public void shouldWriteAllFieldsLikeGsonWhenNoFieldsAreRequested() throws IOException {
+        SearchResult searchResult = new SearchResult(Collections.singletonList(createFilm("Parasite", 2019, true)),
+                null, null, null);
+        StringWriter writer = new StringWriter();
+
+        SearchResultJsonWriter.write(searchResult, writer);
+
+        assertEquals(new Gson().toJson(searchResult), writer.toString());
+    }
+
+    private Film createFilm(String title, int year, boolean isBestPicture) {
+        Film film = new Film();
+        film.setTitle(title);
+        film.setYear(year);
+        film.setAwards(2);
+        film.setNominations(7);
+        film.setBestPicture(isBestPicture);
+        film.setNumberOfReferences(9671);
+        return film;
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import de.cyberport.core.dto.Film;
 import de.cyberport.core.dto.SearchDTO;
+import de.cyberport.core.index.FilmIndex;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import org.apache.sling.api.resource.Resource;
@@ -11,6 +12,11 @@ import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -78,7 +84,7 @@ class UtilsTest {
 
         SearchDTO searchDTO = Utils.createSearchDTO(request);
 
-        assertEquals(0, searchDTO.getSearchFilters().size());
+        assertTrue(searchDTO.getCompiledSearchFilter().isUnrestricted());
         assertNull(searchDTO.getTitle());
         assertNull(searchDTO.getYear());
         assertNull(searchDTO.getMinYear());
@@ -110,7 +116,7 @@ class UtilsTest {
 
         SearchDTO searchDTO = Utils.createSearchDTO(request);
 
-        assertEquals(8, searchDTO.getSearchFilters().size());
+        assertFalse(searchDTO.getCompiledSearchFilter().isUnrestricted());
         assertEquals(EXPECTED_FILM_TITLE1, searchDTO.getTitle());
         assertEquals(EXPECTED_YEAR, searchDTO.getYear());
         assertEquals(EXPECTED_MIN_YEAR, searchDTO.getMinYear());
@@ -135,6 +141,60 @@ class UtilsTest {
         assertEquals(Constants.SUPPORTED_SORT_BY.TITLE, searchDTO.getSortBy());
     }
 
+    @Test
+    public void shouldParseAggregateFacetsWrittenLikeFilmProperties(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("aggregate", "decade, isBestPicture,numberOfReferences");
+        request.setParameterMap(params);
+
+        SearchDTO searchDTO = Utils.createSearchDTO(request);
+
+        assertTrue(searchDTO.isAggregate());
+        assertEquals(EnumSet.of(Constants.SUPPORTED_AGGREGATE.DECADE, Constants.SUPPORTED_AGGREGATE.IS_BEST_PICTURE,
+                Constants.SUPPORTED_AGGREGATE.NUMBER_OF_REFERENCES), searchDTO.getAggregations());
+    }
+
+    @Test
+    public void shouldAggregateAllFacetsWhenAggregateIsEmpty(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("aggregate", EMPTY_STRING);
+        request.setParameterMap(params);
+
+        SearchDTO searchDTO = Utils.createSearchDTO(request);
+
+        assertEquals(EnumSet.allOf(Constants.SUPPORTED_AGGREGATE.class), searchDTO.getAggregations());
+    }
+
+    @Test
+    public void shouldParseFieldsInOrderOfFilmProperties(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("fields", "numberOfReferences, title");
+        request.setParameterMap(params);
+
+        SearchDTO searchDTO = Utils.createSearchDTO(request);
+
+        assertEquals(EnumSet.of(Constants.SUPPORTED_FIELD.TITLE, Constants.SUPPORTED_FIELD.NUMBER_OF_REFERENCES),
+                searchDTO.getFields());
+        assertTrue(searchDTO.getQueryKey().contains("fields=[TITLE, NUMBER_OF_REFERENCES];"));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionWhenFieldIsNotFilmProperty(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("fields", "title,jcr:primaryType");
+        request.setParameterMap(params);
+
+        assertThrows(IllegalArgumentException.class, () -> Utils.createSearchDTO(request));
+    }
+
     @Test
     public void shouldSetLastRequestParameterValue(AemContext context) {
         MockSlingHttpServletRequest request = context.request();
@@ -147,7 +207,7 @@ class UtilsTest {
 
         SearchDTO searchDTO = Utils.createSearchDTO(request);
 
-        assertEquals(1, searchDTO.getSearchFilters().size());
+        assertFalse(searchDTO.getCompiledSearchFilter().isUnrestricted());
         assertEquals(EXPECTED_FILM_TITLE3, searchDTO.getTitle());
     }
 
@@ -162,7 +222,7 @@ class UtilsTest {
 
         SearchDTO searchDTO = Utils.createSearchDTO(request);
 
-        assertEquals(0, searchDTO.getSearchFilters().size());
+        assertTrue(searchDTO.getCompiledSearchFilter().isUnrestricted());
         assertNull(searchDTO.getTitle());
         assertNull(searchDTO.getYear());
         assertNull(searchDTO.getMinYear());
@@ -197,4 +257,122 @@ class UtilsTest {
         assertThrows(IllegalArgumentException.class, () -> Utils.createSearchDTO(request));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldCreateSameQueryKeyForSameSearch(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("year", "1960");
+        params.put("sortBy", "year");
+        params.put("lang", "en");
+        request.setParameterMap(params);
+        SearchDTO searchDTO = Utils.createSearchDTO(request);
+
+        SearchDTO sameSearchDTO = new SearchDTO();
+        sameSearchDTO.setSortBy(Constants.SUPPORTED_SORT_BY.YEAR);
+        sameSearchDTO.setYear(EXPECTED_YEAR);
+
+        assertEquals(sameSearchDTO.getQueryKey(), searchDTO.getQueryKey());
+    }
+
+    @Test
+    public void shouldCreateDifferentQueryKeysWhenTitleContainsSeparators() {
+        SearchDTO searchDTO = new SearchDTO();
+        searchDTO.setTitle("Film;year=1960");
+
+        SearchDTO otherSearchDTO = new SearchDTO();
+        otherSearchDTO.setTitle("Film");
+        otherSearchDTO.setYear(EXPECTED_YEAR);
+
+        assertNotEquals(searchDTO.getQueryKey(), otherSearchDTO.getQueryKey());
+    }
+
+
+    /** Tests for Utils.createETag and Utils.isNotModified methods*/
+
+    @Test
+    public void shouldCreateSameETagForSameSearch() {
+        FilmIndex filmIndex = FilmIndex.of(RESOURCE_PATH, new ArrayList<>());
+
+        SearchDTO first = new SearchDTO();
+        first.setMinYear(EXPECTED_MIN_YEAR);
+        first.setLimit(EXPECTED_LIMIT);
+        SearchDTO second = new SearchDTO();
+        second.setLimit(EXPECTED_LIMIT);
+        second.setMinYear(EXPECTED_MIN_YEAR);
+        SearchDTO other = new SearchDTO();
+        other.setMinYear(EXPECTED_MAX_YEAR);
+
+        String eTag = Utils.createETag(filmIndex, first);
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        assertEquals(eTag, Utils.createETag(filmIndex, second));
+        assertNotEquals(eTag, Utils.createETag(filmIndex, other));
+    }
+
+    @Test
+    public void shouldBeNotModifiedWhenETagOrDateMatches(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+        request.addHeader("If-None-Match", "\"other\", W/\"etag\"");
+        assertTrue(Utils.isNotModified(request, "\"etag\"", 0L));
+        assertFalse(Utils.isNotModified(request, "\"changed\"", 0L));
+
+        MockSlingHttpServletRequest dateRequest = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        dateRequest.addHeader("If-Modified-Since",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+        assertTrue(Utils.isNotModified(dateRequest, "\"etag\"", System.currentTimeMillis() - 60000L));
+        assertFalse(Utils.isNotModified(dateRequest, "\"etag\"", System.currentTimeMillis() + 60000L));
+    }
+
+    @Test
+    public void shouldMatchGzipVariantOfETag(AemContext context) {
+        MockSlingHttpServletRequest request = context.request();
+        request.addHeader("If-None-Match", Utils.createGzipETag("\"etag\""));
+
+        assertEquals("\"etag-gzip\"", Utils.createGzipETag("\"etag\""));
+        assertTrue(Utils.isNotModified(request, "\"etag\"", 0L));
+    }
+
+    @Test
+    public void shouldCreateOtherETagForOtherFormat() {
+        FilmIndex filmIndex = FilmIndex.of(RESOURCE_PATH, new ArrayList<>());
+        SearchDTO searchDTO = new SearchDTO();
+
+        assertNotEquals(Utils.createETag(filmIndex, searchDTO), Utils.createETag(filmIndex, searchDTO, "cbor"));
+    }
+
+    /** Tests for Utils.acceptsGzip method */
+
+    @Test
+    public void shouldAcceptGzipWhenListedOrCoveredByWildcard(AemContext context) {
+        assertTrue(Utils.acceptsGzip(createRequest(context, "gzip, deflate, br")));
+        assertTrue(Utils.acceptsGzip(createRequest(context, "br;q=1.0, GZIP;q=0.5")));
+        assertTrue(Utils.acceptsGzip(createRequest(context, "*")));
+    }
+
+    @Test
+    public void shouldNotAcceptGzipWhenMissingOrRefused(AemContext context) {
+        assertFalse(Utils.acceptsGzip(createRequest(context, null)));
+        assertFalse(Utils.acceptsGzip(createRequest(context, "identity")));
+        assertFalse(Utils.acceptsGzip(createRequest(context, "gzip;q=0")));
+        assertFalse(Utils.acceptsGzip(createRequest(context, "*, gzip;q=0")));
+    }
+
+    private MockSlingHttpServletRequest createRequest(AemContext context, String acceptEncoding) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        return request;
+    }
+
+    @Test
+    public void shouldParseIntWithoutException() {
+        assertEquals(2019, Utils.parseInt("year=2019", 5, 9));
+        assertEquals(-2147483648L, Utils.parseInt("-2147483648", 0, 11));
+        assertEquals(Utils.NOT_AN_INT, Utils.parseInt("2147483648", 0, 10));
+        assertEquals(Utils.NOT_AN_INT, Utils.parseInt("-", 0, 1));
+        assertEquals(Utils.NOT_AN_INT, Utils.parseInt("12a", 0, 3));
+    }
+}